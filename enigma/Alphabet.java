@@ -1,7 +1,13 @@
 package enigma;
+
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may contain supplementary characters and may
+ *  have tens of thousands of members.
  *  @author yuxinye
  */
 class Alphabet {
@@ -9,7 +15,14 @@ class Alphabet {
     /** A new alphabet containing CHARS. The K-th character has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _chars = chars;
+        this(chars.codePoints().toArray());
+    }
+
+    /** A new alphabet whose K-th character is the code point
+     *  CODEPOINTS[K].  No code point may be duplicated. */
+    Alphabet(int[] codePoints) {
+        _codePoints = codePoints.clone();
+        buildIndex();
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -19,38 +32,140 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _codePoints.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (_chars.charAt(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return containsCodePoint(ch);
+    }
+
+    /** Returns true if the code point CP is in this alphabet. */
+    boolean containsCodePoint(int cp) {
+        return find(cp) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  That character must not be a
+     *  supplementary code point. */
     char toChar(int index) {
+        int cp = toCodePoint(index);
+        if (Character.isSupplementaryCodePoint(cp)) {
+            throw error("Character is not a single char");
+        }
+        return (char) cp;
+    }
+
+    /** Returns the code point numbered INDEX in the alphabet, where
+     *  0 <= INDEX < size(). */
+    int toCodePoint(int index) {
         if (index < 0 || index >= size()) {
             throw error("Index out of range");
         }
-        return _chars.charAt(index);
+        return _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (_chars.charAt(i) == ch) {
-                return i;
+        return toIndex(ch);
+    }
+
+    /** Returns the index of code point CP, which must be in the
+     *  alphabet. This is the inverse of toCodePoint(). */
+    int toIndex(int cp) {
+        int result = find(cp);
+        if (result < 0) {
+            throw error("Character is not in the alphabet");
+        }
+        return result;
+    }
+
+    /** Return the code points of this alphabet, in index order, as a
+     *  String. */
+    @Override
+    public String toString() {
+        return new String(_codePoints, 0, _codePoints.length);
+    }
+
+    /** Return the index of CP, or -1 if it is not in the alphabet. */
+    private int find(int cp) {
+        if (_dense != null) {
+            int k = cp - _min;
+            if (k < 0 || k >= _dense.length()) {
+                return -1;
             }
+            int index = _dense.get(k);
+            return _codePoints[index] == cp ? index : -1;
         }
-        throw error("Character is not in the alphabet");
+        int k = Arrays.binarySearch(_sorted, cp);
+        return k < 0 ? -1 : _sortedIndex.get(k);
     }
-    /** A String stores the elements in an alphabet. */
-    private String _chars;
+
+    /** Set up the reverse mapping from code points to indices.  When the
+     *  code points are clustered (as for any ordinary script), this is a
+     *  direct table covering _min .. max code point, holding candidate
+     *  indices that find() confirms against _codePoints (so no sentinel
+     *  value is needed and the table stays as narrow as the alphabet).
+     *  Sparse alphabets use binary search over the sorted code points. */
+    private void buildIndex() {
+        int n = size();
+        int min = Integer.MAX_VALUE, max = -1;
+        for (int cp : _codePoints) {
+            if (!Character.isValidCodePoint(cp)) {
+                throw error("Invalid character in alphabet");
+            }
+            min = Math.min(min, cp);
+            max = Math.max(max, cp);
+        }
+        _min = n == 0 ? 0 : min;
+        long range = (long) max - _min + 1;
+        if (range <= Math.max(DENSE_MINIMUM, (long) n * DENSE_FACTOR)) {
+            _dense = IndexTable.create((int) range, n);
+            boolean[] present = new boolean[(int) range];
+            for (int i = 0; i < n; i += 1) {
+                int k = _codePoints[i] - _min;
+                if (present[k]) {
+                    throw error("Duplicate character in alphabet");
+                }
+                present[k] = true;
+                _dense.set(k, i);
+            }
+        } else {
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i += 1) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) ->
+                        Integer.compare(_codePoints[a], _codePoints[b]));
+            _sorted = new int[n];
+            _sortedIndex = IndexTable.create(n, n);
+            for (int k = 0; k < n; k += 1) {
+                _sorted[k] = _codePoints[order[k]];
+                _sortedIndex.set(k, order[k]);
+                if (k > 0 && _sorted[k] == _sorted[k - 1]) {
+                    throw error("Duplicate character in alphabet");
+                }
+            }
+        }
+    }
+
+    /** Direct index tables are always used for code point ranges at
+     *  most this large. */
+    private static final int DENSE_MINIMUM = 1 << 12;
+    /** Direct index tables are used when the code point range is at
+     *  most this many times the alphabet size. */
+    private static final int DENSE_FACTOR = 8;
+
+    /** The characters of the alphabet, in index order. */
+    private final int[] _codePoints;
+    /** Smallest code point in the alphabet. */
+    private int _min;
+    /** Maps code point - _min to a candidate index, or null if the
+     *  alphabet is too sparse for direct indexing. */
+    private IndexTable _dense;
+    /** The code points in increasing order, when _dense is null. */
+    private int[] _sorted;
+    /** _sortedIndex.get(K) is the index of _sorted[K]. */
+    private IndexTable _sortedIndex;
 }
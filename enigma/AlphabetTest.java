@@ -0,0 +1,111 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet and IndexTable classes.
+ *  @author yuxinye
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkUpper() {
+        assertEquals(26, UPPER.size());
+        for (int i = 0; i < UPPER_STRING.length(); i += 1) {
+            char c = UPPER_STRING.charAt(i);
+            assertTrue(UPPER.contains(c));
+            assertEquals(i, UPPER.toInt(c));
+            assertEquals(c, UPPER.toChar(i));
+        }
+        assertFalse(UPPER.contains('a'));
+        assertFalse(UPPER.contains('('));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNotInAlphabet() {
+        UPPER.toInt('a');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkIndexOutOfRange() {
+        UPPER.toChar(26);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test
+    public void checkSupplementary() {
+        String chars = "A\uD83D\uDE00B\uD83D\uDE01";
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(4, alpha.size());
+        assertEquals(0x1F600, alpha.toCodePoint(1));
+        assertEquals(3, alpha.toIndex(0x1F601));
+        assertEquals(2, alpha.toInt('B'));
+        assertTrue(alpha.containsCodePoint(0x1F600));
+        assertFalse(alpha.containsCodePoint(0x1F602));
+        assertEquals(chars, alpha.toString());
+    }
+
+    @Test
+    public void checkSparse() {
+        int[] cps = { 0x10FFFF, 'Z', 0x1F600, 0x4E00, 'A' };
+        Alphabet alpha = new Alphabet(cps);
+        for (int i = 0; i < cps.length; i += 1) {
+            assertEquals(i, alpha.toIndex(cps[i]));
+            assertEquals(cps[i], alpha.toCodePoint(i));
+        }
+        assertFalse(alpha.containsCodePoint('B'));
+    }
+
+    @Test
+    public void checkLarge() {
+        Alphabet alpha = Benchmark.alphabet(65536);
+        assertEquals(65536, alpha.size());
+        for (int i = 0; i < alpha.size(); i += 4099) {
+            assertEquals(i, alpha.toIndex(alpha.toCodePoint(i)));
+        }
+        int[] map = Benchmark.randomMap(alpha.size(),
+                                        new java.util.Random(1));
+        Permutation perm = new Permutation(map, alpha);
+        for (int i = 0; i < alpha.size(); i += 1) {
+            assertEquals(map[i], perm.permute(i));
+            assertEquals(i, perm.invert(map[i]));
+        }
+    }
+
+    @Test
+    public void checkSupplementaryMachine() {
+        Alphabet alpha = Benchmark.alphabet(30000);
+        Machine m1 = Benchmark.randomMachine(alpha, 5, 3, 7);
+        Machine m2 = Benchmark.randomMachine(alpha, 5, 3, 7);
+        String msg = Benchmark.randomMessage(alpha, 1000, 3);
+        String cipher = m1.convert(msg);
+        assertEquals(msg.codePointCount(0, msg.length()),
+                     cipher.codePointCount(0, cipher.length()));
+        assertEquals(msg, m2.convert(cipher));
+    }
+
+    @Test
+    public void checkTableWidths() {
+        assertEquals(1, IndexTable.create(4, 26).width());
+        assertEquals(1, IndexTable.create(4, 256).width());
+        assertEquals(2, IndexTable.create(4, 257).width());
+        assertEquals(2, IndexTable.create(4, 65536).width());
+        assertEquals(4, IndexTable.create(4, 65537).width());
+        IndexTable table = IndexTable.create(3, 65536);
+        table.set(1, 65535);
+        assertEquals(65535, table.get(1));
+        assertEquals(0, table.get(2));
+    }
+}
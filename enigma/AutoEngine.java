@@ -0,0 +1,53 @@
+package enigma;
+
+/** An engine that chooses between the reference and table engines by
+ *  alphabet size and message length.  Compiling tables costs about as
+ *  much as converting one character per alphabet entry with the
+ *  reference engine, so until that many characters have been converted
+ *  since the last reset, messages go to the reference engine, and after
+ *  that to the table engine.  Short messages over huge alphabets thus
+ *  never pay for compilation, while long ones quickly do.
+ *  @author yuxinye
+ */
+class AutoEngine implements Engine {
+
+    /** An engine that converts with MACHINE. */
+    AutoEngine(Machine machine) {
+        _reference = new ReferenceEngine(machine);
+        _table = new TableEngine(machine);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Machine machine() {
+        return _reference.machine();
+    }
+
+    @Override
+    public void reset() {
+        _table.reset();
+        _converted = 0;
+    }
+
+    @Override
+    public void convert(int[] msg, int n) {
+        _converted += n;
+        if (_converted >= machine().alphabet().size()) {
+            _table.convert(msg, n);
+        } else {
+            _reference.convert(msg, n);
+        }
+    }
+
+    /** My name. */
+    static final String NAME = "auto";
+
+    /** The engines I choose between. */
+    private final Engine _reference, _table;
+    /** Number of characters converted since the last reset. */
+    private long _converted;
+}
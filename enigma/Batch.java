@@ -0,0 +1,167 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Runs many jobs, each equivalent to one run of Main, concurrently in a
+ *  single JVM.  Jobs that name the same configuration file share one
+ *  parsed copy of it.
+ *  @author yuxinye
+ */
+public final class Batch {
+
+    /** Run the jobs listed in a manifest file, as specified by ARGS,
+     *  which are options followed by the name of the manifest.  Each
+     *  line of the manifest that is neither blank nor starts with "#"
+     *  describes one job: the whitespace-separated arguments to Main
+     *  (options, then configuration, input, and output files, all three
+     *  of which are required).  Jobs run concurrently, and for each, in
+     *  manifest order, prints its input file name followed by "OK" or
+     *  the error message Main would have reported.  Exits normally if
+     *  every job succeeds, and otherwise with code 1.
+     *
+     *  Options:
+     *    --threads=N   Run up to N jobs at once (default: one per
+     *                  processor). */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                if (args[k].startsWith("--threads=")) {
+                    threads = Integer.parseInt(args[k].substring(10));
+                } else {
+                    throw error("unknown option: %s", args[k]);
+                }
+            }
+            if (args.length - k != 1 || threads <= 0) {
+                throw error("usage: java enigma.Batch [--threads=N] "
+                            + "MANIFEST");
+            }
+            PrintStream report = new PrintStream(System.out, true,
+                                                 Main.CHARSET);
+            if (new Batch(threads).run(readManifest(args[k]), report) == 0) {
+                return;
+            }
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: --threads needs a positive integer");
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A batch runner that runs up to THREADS jobs at once. */
+    Batch(int threads) {
+        _threads = threads;
+    }
+
+    /** Return the jobs listed in the manifest file named NAME. */
+    static List<String[]> readManifest(String name) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(name),
+                                       Charset.forName(Main.CHARSET));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        ArrayList<String[]> jobs = new ArrayList<>();
+        for (String line : lines) {
+            Tokenizer tokens = new Tokenizer(line);
+            if (!tokens.hasNext() || line.trim().startsWith("#")) {
+                continue;
+            }
+            ArrayList<String> args = new ArrayList<>();
+            while (tokens.hasNext()) {
+                args.add(tokens.next());
+            }
+            jobs.add(args.toArray(new String[0]));
+        }
+        return jobs;
+    }
+
+    /** Run JOBS, each the arguments of one run of Main, printing the
+     *  outcome of each on REPORT in order.  Returns the number of jobs
+     *  that failed. */
+    int run(List<String[]> jobs, PrintStream report) {
+        ConfigCache configs = new ConfigCache();
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            ArrayList<Future<String>> outcomes = new ArrayList<>();
+            for (String[] job : jobs) {
+                outcomes.add(pool.submit(() -> runJob(job, configs)));
+            }
+            int failed = 0;
+            for (int i = 0; i < jobs.size(); i += 1) {
+                String outcome = outcomes.get(i).get();
+                if (outcome != null) {
+                    failed += 1;
+                }
+                report.printf("%s: %s%n", jobName(jobs.get(i)),
+                              outcome == null ? "OK" : outcome);
+            }
+            return failed;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Run one job with arguments ARGS, using CONFIGS for configuration
+     *  files.  Returns null if it succeeds, and otherwise what Main
+     *  would report. */
+    private static String runJob(String[] args, ConfigCache configs) {
+        Main main = null;
+        try {
+            if (countFiles(args) != 3) {
+                throw error("batch jobs need configuration, input, and "
+                            + "output files");
+            }
+            main = new Main(args, configs);
+            main.process();
+            return null;
+        } catch (EnigmaException excp) {
+            return "Error: " + excp.getMessage();
+        } catch (RuntimeException excp) {
+            return "Exception: " + excp;
+        } finally {
+            if (main != null) {
+                main.close();
+            }
+        }
+    }
+
+    /** Return the name by which the job with arguments ARGS is
+     *  reported: its input file, or all of ARGS if it is malformed. */
+    private static String jobName(String[] args) {
+        return countFiles(args) == 3 ? args[args.length - 2]
+            : String.join(" ", args);
+    }
+
+    /** Return the number of ARGS that are not options. */
+    private static int countFiles(String[] args) {
+        int k = 0;
+        while (k < args.length && args[k].startsWith("--")) {
+            k += 1;
+        }
+        return args.length - k;
+    }
+
+    /** Maximum number of jobs running at once. */
+    private final int _threads;
+}
@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author yuxinye
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A small configuration. */
+    private static final String CONFIG =
+        "ABCD 3 1\n R R (AB) (CD)\n F N (ABCD)\n M MA (AC) (BD)\n";
+
+    /** Return a file named NAME in DIR containing TEXT. */
+    private String write(Path dir, String name, String text)
+        throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file.toString();
+    }
+
+    /** Return the contents of the file named NAME, or null if it does not
+     *  exist. */
+    private String read(String name) throws IOException {
+        File file = new File(name);
+        if (!file.exists()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file.toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Return the outcome of running Main on ARGS as a single run would
+     *  report it: null for success, or the error message. */
+    private String runMain(String[] args) {
+        Main main = null;
+        try {
+            main = new Main(args);
+            main.process();
+            return null;
+        } catch (EnigmaException excp) {
+            return "Error: " + excp.getMessage();
+        } finally {
+            if (main != null) {
+                main.close();
+            }
+        }
+    }
+
+    @Test
+    public void checkMatchesSingleRuns() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        String conf = write(dir, "a.conf", CONFIG);
+        String same = dir.resolve(".").resolve("a.conf").toString();
+        String bad = write(dir, "bad.conf", "ABCD 3 1\n R X (AB)\n");
+        String good = write(dir, "good.in",
+                            "* R F M AA\nABCD ABCD DDD\n\n* R F M BC\nAAAAA\n");
+        String partial = write(dir, "partial.in",
+                               "* R F M AA\nABCD\nABXD\nABCD\n");
+        String unset = write(dir, "unset.in", "ABCD\n");
+        String missing = dir.resolve("missing.in").toString();
+
+        List<String[]> jobs = new ArrayList<>();
+        String[][] cases = {
+            { conf, good, "1" }, { same, good, "2" },
+            { "--parallel=2", conf, good, "3" }, { conf, partial, "4" },
+            { conf, unset, "5" }, { conf, missing, "6" },
+            { bad, good, "7" }, { "--pipelined", same, partial, "8" },
+        };
+        for (String[] c : cases) {
+            String[] job = c.clone();
+            job[job.length - 1] = dir.resolve("batch" + c[c.length - 1])
+                .toString();
+            jobs.add(job);
+        }
+        jobs.add(new String[] { conf, good });
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream report = new PrintStream(bytes, true, "UTF-8");
+        int failed = new Batch(3).run(jobs, report);
+
+        String[] lines = bytes.toString("UTF-8").split("\n");
+        assertEquals(jobs.size(), lines.length);
+        int expectedFailures = 0;
+        for (int i = 0; i < cases.length; i += 1) {
+            String[] single = cases[i].clone();
+            single[single.length - 1] =
+                dir.resolve("single" + cases[i][single.length - 1])
+                .toString();
+            String outcome = runMain(single);
+            if (outcome != null) {
+                expectedFailures += 1;
+            }
+            String[] job = jobs.get(i);
+            assertEquals(Arrays.toString(job),
+                         job[job.length - 2] + ": "
+                         + (outcome == null ? "OK" : outcome), lines[i]);
+            assertEquals(Arrays.toString(job),
+                         read(single[single.length - 1]),
+                         read(job[job.length - 1]));
+        }
+        assertTrue(lines[cases.length].contains("Error: batch jobs need"));
+        assertEquals(expectedFailures + 1, failed);
+        assertEquals(5, expectedFailures);
+    }
+
+    @Test
+    public void checkConfigShared() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        String conf = write(dir, "a.conf", CONFIG);
+        ConfigCache configs = new ConfigCache();
+        Config first = configs.open(conf).config();
+        assertSame(first, configs.open(dir.resolve("..")
+                                       .resolve(dir.getFileName())
+                                       .resolve("a.conf").toString())
+                   .config());
+    }
+}
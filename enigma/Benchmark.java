@@ -0,0 +1,311 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Throughput benchmarks for the enigma package.  These are not tests;
+ *  run them with "make bench" or "java enigma.Benchmark NAME ARGS...".
+ *  @author yuxinye
+ */
+public final class Benchmark {
+
+    /** Run the benchmark named ARGS[0] with the remaining ARGS as its
+     *  parameters.  With no ARGS, runs the alphabet benchmark. */
+    public static void main(String... args) {
+        String name = args.length == 0 ? "alphabet" : args[0];
+        String[] params = new String[Math.max(0, args.length - 1)];
+        System.arraycopy(args, Math.min(1, args.length), params, 0,
+                         params.length);
+        try {
+            switch (name) {
+            case "alphabet":
+                alphabet(params);
+                break;
+            case "bytes":
+                bytes();
+                break;
+            case "startup":
+                startup(params);
+                break;
+            default:
+                throw error("unknown benchmark: %s", name);
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Report Machine.convert(String) throughput for randomly wired
+     *  five-slot machines over alphabets with each of the sizes in
+     *  SIZES (default 26, 256, 4096, 65536). */
+    static void alphabet(String... sizes) {
+        if (sizes.length == 0) {
+            sizes = new String[] { "26", "256", "4096", "65536" };
+        }
+        for (String size : sizes) {
+            int n = Integer.parseInt(size);
+            Machine machine = randomMachine(alphabet(n), 5, 3, SEED);
+            String msg = randomMessage(machine.alphabet(), MESSAGE_LENGTH,
+                                       SEED);
+            double rate = measure(() -> machine.convert(msg),
+                                  MESSAGE_LENGTH);
+            System.out.printf("alphabet %6d  table %d byte(s)  "
+                              + "%8.2f Mchars/s%n", n,
+                              IndexTable.create(0, n).width(), rate / 1e6);
+        }
+    }
+
+    /** Report the rate at which a randomly wired five-slot machine over
+     *  a 256-character alphabet enciphers raw bytes between direct
+     *  buffers, both directly and through a ByteStreamCipher. */
+    static void bytes() {
+        Machine machine =
+            randomMachine(alphabet(Machine.BYTE_ALPHABET_SIZE), 5, 3, SEED);
+        ByteBuffer src = ByteBuffer.allocateDirect(MESSAGE_LENGTH);
+        ByteBuffer dst = ByteBuffer.allocateDirect(MESSAGE_LENGTH);
+        new Random(SEED).ints(MESSAGE_LENGTH).forEach(b -> src.put((byte) b));
+        double rate = measure(() -> {
+            src.clear();
+            dst.clear();
+            machine.convert(src, dst);
+        }, MESSAGE_LENGTH);
+        System.out.printf("bytes (Machine)           %8.2f MB/s%n",
+                          rate / 1e6);
+        ByteStreamCipher cipher = new ByteStreamCipher(machine);
+        rate = measure(() -> {
+            src.clear();
+            dst.clear();
+            cipher.convert(src, dst);
+        }, MESSAGE_LENGTH);
+        System.out.printf("bytes (ByteStreamCipher)  %8.2f MB/s%n",
+                          rate / 1e6);
+    }
+
+    /** Report the median times from launch to first output and to exit
+     *  of enigma.Main on each test case (F.in, with F.conf or
+     *  default.conf) in directory PARAMS[0], for a plain "java" command
+     *  and for each of the launch commands in the remaining PARAMS
+     *  (such as fast-enigma), which take Main's arguments. */
+    static void startup(String... params) {
+        if (params.length == 0) {
+            throw error("usage: startup DIRECTORY [COMMAND ...]");
+        }
+        File dir = new File(params[0]);
+        String[] names = dir.list((d, name) -> name.endsWith(".in"));
+        if (names == null || names.length == 0) {
+            throw error("no test cases in %s", dir);
+        }
+        Arrays.sort(names);
+        ArrayList<List<String>> commands = new ArrayList<>();
+        commands.add(List.of(Paths.get(System.getProperty("java.home"),
+                                       "bin", "java").toString(),
+                             "-cp", System.getProperty("java.class.path"),
+                             Main.class.getName()));
+        for (int i = 1; i < params.length; i += 1) {
+            commands.add(List.of(params[i]));
+        }
+        System.out.printf("%-22s %-14s %10s %10s%n", "case", "launcher",
+                          "first ms", "exit ms");
+        for (String name : names) {
+            File input = new File(dir, name);
+            File config =
+                new File(dir, name.substring(0, name.length() - 3)
+                         + ".conf");
+            if (!config.exists()) {
+                config = new File(dir, "default.conf");
+            }
+            for (List<String> command : commands) {
+                ArrayList<String> args = new ArrayList<>(command);
+                args.add(config.getPath());
+                args.add(input.getPath());
+                long[] first = new long[STARTUP_RUNS],
+                    exit = new long[STARTUP_RUNS];
+                launch(args);
+                for (int r = 0; r < STARTUP_RUNS; r += 1) {
+                    long[] times = launch(args);
+                    first[r] = times[0];
+                    exit[r] = times[1];
+                }
+                Arrays.sort(first);
+                Arrays.sort(exit);
+                System.out.printf("%-22s %-14s %10.1f %10.1f%n", name,
+                                  new File(command.get(0)).getName(),
+                                  first[STARTUP_RUNS / 2] / 1e6,
+                                  exit[STARTUP_RUNS / 2] / 1e6);
+            }
+        }
+    }
+
+    /** Run the command ARGS, discarding its output, and return the
+     *  nanoseconds from starting it to its first byte of output (or its
+     *  exit, if it prints nothing) and to its exit. */
+    private static long[] launch(List<String> args) {
+        try {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(args)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            InputStream out = process.getInputStream();
+            int b = out.read();
+            long first = System.nanoTime() - start;
+            while (b >= 0) {
+                b = out.read(new byte[BUFFER_SIZE]);
+            }
+            process.waitFor();
+            return new long[] { first, System.nanoTime() - start };
+        } catch (IOException excp) {
+            throw error("could not run %s: %s", args.get(0),
+                        excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Return an alphabet of N characters.  Small alphabets are upper-case
+     *  letters, larger ones are drawn from Latin Extended, CJK, and (for
+     *  more than 20000 characters) the supplementary planes. */
+    static Alphabet alphabet(int n) {
+        int first;
+        if (n <= 26) {
+            first = 'A';
+        } else if (n <= 0x100) {
+            first = 0x100;
+        } else if (n <= 20000) {
+            first = 0x4e00;
+        } else {
+            first = 0x10000;
+        }
+        int[] cps = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            cps[i] = first + i;
+        }
+        return new Alphabet(cps);
+    }
+
+    /** Return a machine over ALPHA with NUMROTORS slots and PAWLS
+     *  pawls, whose rotors are wired at random from SEED, inserted in
+     *  order, set to random positions, and given an identity
+     *  plugboard. */
+    static Machine randomMachine(Alphabet alpha, int numRotors, int pawls,
+                                 long seed) {
+        Random rand = new Random(seed);
+        int n = alpha.size();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        int[] posns = new int[numRotors - 1];
+        for (int i = 0; i < numRotors; i += 1) {
+            names[i] = "R" + i;
+            Rotor rotor;
+            if (i == 0) {
+                rotor = new Reflector(names[i],
+                                      new Permutation(randomInvolution(n,
+                                                                       rand),
+                                                      alpha));
+            } else if (i < numRotors - pawls) {
+                rotor = new FixedRotor(names[i],
+                                       new Permutation(randomMap(n, rand),
+                                                       alpha));
+            } else {
+                String notch = new String(Character.toChars(
+                        alpha.toCodePoint(rand.nextInt(n))));
+                rotor = new MovingRotor(names[i],
+                                        new Permutation(randomMap(n, rand),
+                                                        alpha),
+                                        notch);
+            }
+            rotors.add(rotor);
+            if (i > 0) {
+                posns[i - 1] = alpha.toCodePoint(rand.nextInt(n));
+            }
+        }
+        Machine machine = new Machine(alpha, numRotors, pawls, rotors);
+        machine.insertRotors(names);
+        machine.setRotors(new String(posns, 0, posns.length));
+        machine.setPlugboard(new Permutation("", alpha));
+        return machine;
+    }
+
+    /** Return a random message of LENGTH characters from ALPHA, chosen
+     *  using SEED. */
+    static String randomMessage(Alphabet alpha, int length, long seed) {
+        Random rand = new Random(seed);
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            msg.appendCodePoint(alpha.toCodePoint(rand.nextInt(alpha.size())));
+        }
+        return msg.toString();
+    }
+
+    /** Return a random permutation of 0 .. N-1 chosen using RAND. */
+    static int[] randomMap(int n, Random rand) {
+        int[] map = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            map[i] = i;
+        }
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = rand.nextInt(i + 1);
+            int t = map[i];
+            map[i] = map[j];
+            map[j] = t;
+        }
+        return map;
+    }
+
+    /** Return a random involution of 0 .. N-1 with as few fixed points
+     *  as possible, chosen using RAND. */
+    static int[] randomInvolution(int n, Random rand) {
+        int[] order = randomMap(n, rand);
+        int[] map = new int[n];
+        for (int i = 0; i + 1 < n; i += 2) {
+            map[order[i]] = order[i + 1];
+            map[order[i + 1]] = order[i];
+        }
+        if (n % 2 == 1) {
+            map[order[n - 1]] = order[n - 1];
+        }
+        return map;
+    }
+
+    /** Run WORK repeatedly for about MEASURE_NANOS after a warm-up of the
+     *  same length, and return the rate at which it processes items,
+     *  given that each run processes ITEMS of them. */
+    static double measure(Runnable work, long items) {
+        for (long start = System.nanoTime();
+             System.nanoTime() - start < MEASURE_NANOS; ) {
+            work.run();
+        }
+        long runs = 0;
+        long start = System.nanoTime(), elapsed;
+        do {
+            work.run();
+            runs += 1;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return (double) runs * items * 1e9 / elapsed;
+    }
+
+    /** Seed for all randomly generated benchmark data. */
+    static final long SEED = 61;
+
+    /** Length of benchmark messages. */
+    static final int MESSAGE_LENGTH = 1 << 16;
+
+    /** Number of timed launches of each startup case. */
+    static final int STARTUP_RUNS = 11;
+
+    /** Size of the buffer for discarding output. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Duration of each warm-up and measurement phase. */
+    static final long MEASURE_NANOS = 2_000_000_000L;
+}
@@ -0,0 +1,321 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** Enciphers arbitrary binary data with a machine whose alphabet has
+ *  256 characters, byte value K standing for the character with index K.
+ *  There is no line structure, whitespace removal, or grouping: every
+ *  input byte yields exactly one output byte.
+ *
+ *  For speed, the machine's wirings are copied into a single byte array,
+ *  one 256-entry segment for each pass of a character through a rotor or
+ *  the plugboard, in the order traversed.  Since the alphabet size is a
+ *  power of two, rotor offsets wrap with a mask rather than a division.
+ *  Only the rightmost rotor moves on most keypresses, so the segments for
+ *  all the other rotors are composed into a single core table, rebuilt
+ *  only when one of them moves, and runs of keypresses that move only the
+ *  rightmost rotor are converted without simulating the stepping of the
+ *  others.  The machine's rotors are updated to my positions after each call
+ *  to convert.
+ *  @author yuxinye
+ */
+class ByteStreamCipher {
+
+    /** A cipher that uses MACHINE, which must already be set up and
+     *  must have a 256-character alphabet. */
+    ByteStreamCipher(Machine machine) {
+        if (machine.alphabet().size() != SIZE) {
+            throw error("binary mode needs a %d-character alphabet", SIZE);
+        }
+        _machine = machine;
+        _numRotors = machine.numRotors();
+        int segments = 2 * _numRotors + 1;
+        _wiring = new byte[segments * SIZE];
+        _shift = new int[segments];
+        _posn = new int[_numRotors];
+        _ring = new int[_numRotors];
+        _rotates = new boolean[_numRotors];
+        _notches = new boolean[_numRotors * SIZE];
+        _core = new byte[SIZE];
+
+        Permutation plugboard = machine.plugboard();
+        for (int k = 0; k < SIZE; k += 1) {
+            _wiring[k] = (byte) plugboard.permute(k);
+            _wiring[(segments - 1) * SIZE + k] = (byte) plugboard.invert(k);
+        }
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor rotor = machine.rotor(i);
+            Permutation perm = rotor.permutation();
+            _posn[i] = rotor.setting();
+            _ring[i] = rotor.ringSetting();
+            _rotates[i] = rotor.rotates();
+            for (int k = 0; k < SIZE; k += 1) {
+                _wiring[forward(i) * SIZE + k] = (byte) perm.permute(k);
+                if (i > 0) {
+                    _wiring[backward(i) * SIZE + k] = (byte) perm.invert(k);
+                }
+                _notches[i * SIZE + k] = rotor.notchAt(k);
+            }
+            setShift(i);
+        }
+
+        int fast = _numRotors - 1;
+        _fastForward = forward(fast) * SIZE;
+        _fastBackward = backward(fast) * SIZE;
+        _plugInverse = (segments - 1) * SIZE;
+        _toNotch = new long[SIZE];
+        for (int p = 0; p < SIZE; p += 1) {
+            _toNotch[p] = Long.MAX_VALUE;
+            for (int j = 0; j < SIZE; j += 1) {
+                if (_notches[fast * SIZE + ((p + j) & MASK)]) {
+                    _toNotch[p] = j;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Converts the bytes remaining in SRC, writing the results to DST.
+     *  Stops early if DST fills up.  This has the same effect as
+     *  Machine.convert(SRC, DST) on my machine. */
+    void convert(ByteBuffer src, ByteBuffer dst) {
+        int n = Math.min(src.remaining(), dst.remaining());
+        int from = src.position(), to = dst.position();
+        int fast = _numRotors - 1, step = _rotates[fast] ? 1 : 0;
+        for (int k = 0; k < n; ) {
+            int run = (int) Math.min(n - k, quietRun());
+            if (run == 0) {
+                advance();
+                run = 1;
+                step = 0;
+            }
+            if (!_coreValid) {
+                buildCore();
+            }
+            int d = _shift[forward(fast)];
+            for (int j = k; j < k + run; j += 1) {
+                d = (d + step) & MASK;
+                int c = encipher(src.get(from + j) & MASK, d);
+                dst.put(to + j, (byte) c);
+            }
+            if (step != 0) {
+                _posn[fast] = (_posn[fast] + run) & MASK;
+                setShift(fast);
+            }
+            step = _rotates[fast] ? 1 : 0;
+            k += run;
+        }
+        src.position(from + n);
+        dst.position(to + n);
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (_rotates[i]) {
+                _machine.rotor(i).set(_posn[i]);
+            }
+        }
+    }
+
+    /** Encipher all of IN onto OUT, starting at the beginning of both.
+     *  Both files are memory-mapped a window at a time, so the data is
+     *  converted directly from the input pages to the output pages.
+     *  Returns the number of bytes converted. */
+    long convert(FileChannel in, FileChannel out) throws IOException {
+        long size = in.size();
+        out.truncate(0);
+        for (long posn = 0; posn < size; posn += MAP_WINDOW) {
+            long len = Math.min(MAP_WINDOW, size - posn);
+            MappedByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY,
+                                          posn, len);
+            MappedByteBuffer dst = out.map(FileChannel.MapMode.READ_WRITE,
+                                           posn, len);
+            convert(src, dst);
+        }
+        return size;
+    }
+
+    /** Encipher all of IN onto OUT, neither of which need support
+     *  mapping (e.g., pipes).  Returns the number of bytes converted. */
+    long convert(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        ByteBuffer src = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ByteBuffer dst = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long total = 0;
+        while (in.read(src) >= 0 || src.position() > 0) {
+            src.flip();
+            total += src.remaining();
+            convert(src, dst);
+            src.compact();
+            dst.flip();
+            while (dst.hasRemaining()) {
+                out.write(dst);
+            }
+            dst.clear();
+        }
+        return total;
+    }
+
+    /** Advance my rotors as for one keypress of my machine. */
+    private void advance() {
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (_rotates[i]) {
+                if (i == _numRotors - 1) {
+                    advance(i);
+                } else if (_notches[(i + 1) * SIZE + _posn[i + 1]]) {
+                    advance(i);
+                    advance(i + 1);
+                    i += 1;
+                }
+            }
+        }
+    }
+
+    /** Advance the rotor in slot I one position. */
+    private void advance(int i) {
+        _posn[i] = (_posn[i] + 1) & MASK;
+        setShift(i);
+        if (i < _numRotors - 1) {
+            _coreValid = false;
+        }
+    }
+
+    /** Return the number of keypresses, starting with the next, during
+     *  which only the rightmost rotor can move (as a long, since it is
+     *  unbounded if that rotor never reaches a notch). */
+    private long quietRun() {
+        int fast = _numRotors - 1;
+        for (int i = 0; i < fast - 1; i += 1) {
+            if (_rotates[i] && _notches[(i + 1) * SIZE + _posn[i + 1]]) {
+                return 0;
+            }
+        }
+        if (fast == 0 || !_rotates[fast - 1]) {
+            return Long.MAX_VALUE;
+        } else if (!_rotates[fast]) {
+            return _toNotch[_posn[fast]] == 0 ? 0 : Long.MAX_VALUE;
+        }
+        return _toNotch[_posn[fast]];
+    }
+
+    /** Return the encipherment of C when the rightmost rotor's offset
+     *  is D and _core is valid. */
+    private int encipher(int c, int d) {
+        c = _wiring[c] & MASK;
+        c = (_wiring[_fastForward + ((c + d) & MASK)] - d) & MASK;
+        c = _core[c] & MASK;
+        c = (_wiring[_fastBackward + ((c + d) & MASK)] - d) & MASK;
+        return _wiring[_plugInverse + c] & MASK;
+    }
+
+    /** Return the result of passing C through wiring segment S at its
+     *  current offset. */
+    private int pass(int s, int c) {
+        int d = _shift[s];
+        return (_wiring[s * SIZE + ((c + d) & MASK)] - d) & MASK;
+    }
+
+    /** Set _core to the composition of the segments between the two
+     *  passes through the rightmost rotor. */
+    private void buildCore() {
+        int first = forward(_numRotors - 1) + 1,
+            last = backward(_numRotors - 1) - 1;
+        for (int k = 0; k < SIZE; k += 1) {
+            int c = k;
+            for (int s = first; s <= last; s += 1) {
+                c = pass(s, c);
+            }
+            _core[k] = (byte) c;
+        }
+        _coreValid = true;
+    }
+
+    /** Update the offsets of the segments for slot I to its position
+     *  and ring setting. */
+    private void setShift(int i) {
+        int d = (_posn[i] - _ring[i]) & MASK;
+        _shift[forward(i)] = d;
+        if (i > 0) {
+            _shift[backward(i)] = d;
+        }
+    }
+
+    /** Return the segment used for the forward pass through slot I. */
+    private int forward(int i) {
+        return _numRotors - i;
+    }
+
+    /** Return the segment used for the backward pass through slot I,
+     *  where I > 0. */
+    private int backward(int i) {
+        return _numRotors + i;
+    }
+
+    /** Size of the windows in which files are mapped. */
+    static final long MAP_WINDOW = 1L << 26;
+
+    /** Size of the buffers used for unmappable channels. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Size of my alphabet. */
+    private static final int SIZE = Machine.BYTE_ALPHABET_SIZE;
+
+    /** Mask that reduces a value modulo SIZE. */
+    private static final int MASK = SIZE - 1;
+
+    /** The machine doing the enciphering. */
+    private final Machine _machine;
+
+    /** Number of rotor slots in _machine. */
+    private final int _numRotors;
+
+    /** Wiring segments, each of SIZE entries.  Segment 0 is the
+     *  plugboard, then come the forward passes through slots
+     *  _numRotors-1 .. 0, the backward passes through slots
+     *  1 .. _numRotors-1, and the inverse plugboard. */
+    private final byte[] _wiring;
+
+    /** The offset (position minus ring setting) applied around each
+     *  wiring segment. */
+    private final int[] _shift;
+
+    /** Current position of each slot's rotor. */
+    private final int[] _posn;
+
+    /** The composition of the wiring segments for all slots but the
+     *  rightmost, at their current offsets, when _coreValid. */
+    private final byte[] _core;
+
+    /** True iff _core is up to date. */
+    private boolean _coreValid;
+
+    /** Start of the segment for the forward pass through the rightmost
+     *  slot. */
+    private final int _fastForward;
+
+    /** Start of the segment for the backward pass through the rightmost
+     *  slot. */
+    private final int _fastBackward;
+
+    /** Start of the inverse plugboard segment. */
+    private final int _plugInverse;
+
+    /** _toNotch[P] is the number of keypresses before the rightmost rotor,
+     *  starting in position P, reaches a notch (Long.MAX_VALUE if
+     *  never). */
+    private final long[] _toNotch;
+
+    /** Ring setting of each slot's rotor. */
+    private final int[] _ring;
+
+    /** True for each slot whose rotor rotates. */
+    private final boolean[] _rotates;
+
+    /** _notches[I * SIZE + P] is true iff slot I's rotor is at a notch
+     *  in position P. */
+    private final boolean[] _notches;
+}
@@ -0,0 +1,116 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the ByteStreamCipher class.
+ *  @author yuxinye
+ */
+public class ByteStreamCipherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a 256-character machine with random wirings from SEED, in
+     *  which every moving rotor has NOTCHES notches, so that ordinary and
+     *  double stepping both happen often. */
+    private Machine machine(long seed, int notches) {
+        Random rand = new Random(seed);
+        Alphabet alpha = Benchmark.alphabet(Machine.BYTE_ALPHABET_SIZE);
+        Machine base = Benchmark.randomMachine(alpha, 5, 3, seed);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[base.numRotors()];
+        for (int i = 0; i < base.numRotors(); i += 1) {
+            Rotor rotor = base.rotor(i);
+            names[i] = rotor.name();
+            if (rotor.rotates()) {
+                StringBuilder notchChars = new StringBuilder();
+                for (int k = 0; k < notches; k += 1) {
+                    notchChars.appendCodePoint(
+                        alpha.toCodePoint(rand.nextInt(alpha.size())));
+                }
+                rotor = new MovingRotor(names[i], rotor.permutation(),
+                                        notchChars.toString());
+            }
+            rotors.add(rotor);
+        }
+        Machine result = new Machine(alpha, base.numRotors(),
+                                     base.numPawls(), rotors);
+        result.insertRotors(names);
+        int[] setting = new int[names.length - 1];
+        int[] ring = new int[names.length - 1];
+        for (int i = 0; i < setting.length; i += 1) {
+            setting[i] = alpha.toCodePoint(rand.nextInt(alpha.size()));
+            ring[i] = alpha.toCodePoint(rand.nextInt(alpha.size()));
+        }
+        result.setRotors(new String(setting, 0, setting.length));
+        result.setRingSetting(new String(ring, 0, ring.length));
+        int[] plug = Benchmark.randomInvolution(alpha.size(), rand);
+        result.setPlugboard(new Permutation(plug, alpha));
+        return result;
+    }
+
+    /** Check that a ByteStreamCipher agrees with Machine.convert on
+     *  machines from SEED with NOTCHES notches per moving rotor, when
+     *  fed in chunks of CHUNK bytes. */
+    private void checkAgainstMachine(long seed, int notches, int chunk) {
+        Machine reference = machine(seed, notches);
+        Machine fast = machine(seed, notches);
+        ByteStreamCipher cipher = new ByteStreamCipher(fast);
+        byte[] data = new byte[20000];
+        new Random(seed).nextBytes(data);
+
+        ByteBuffer expected = ByteBuffer.allocate(data.length);
+        reference.convert(ByteBuffer.wrap(data), expected);
+        ByteBuffer actual = ByteBuffer.allocate(data.length);
+        for (int k = 0; k < data.length; k += chunk) {
+            int len = Math.min(chunk, data.length - k);
+            cipher.convert(ByteBuffer.wrap(data, k, len), actual);
+        }
+        assertArrayEquals(expected.array(), actual.array());
+        for (int i = 0; i < reference.numRotors(); i += 1) {
+            assertEquals("position of slot " + i,
+                         reference.rotor(i).setting(),
+                         fast.rotor(i).setting());
+        }
+    }
+
+    @Test
+    public void checkSingleNotch() {
+        checkAgainstMachine(1, 1, 20000);
+        checkAgainstMachine(2, 1, 37);
+    }
+
+    @Test
+    public void checkManyNotches() {
+        checkAgainstMachine(3, 40, 20000);
+        checkAgainstMachine(4, 200, 1);
+    }
+
+    @Test
+    public void checkInvolution() {
+        Machine machine1 = machine(5, 2), machine2 = machine(5, 2);
+        byte[] data = new byte[5000];
+        new Random(6).nextBytes(data);
+        ByteBuffer cipherText = ByteBuffer.allocate(data.length);
+        new ByteStreamCipher(machine1).convert(ByteBuffer.wrap(data),
+                                               cipherText);
+        cipherText.flip();
+        ByteBuffer plainText = ByteBuffer.allocate(data.length);
+        new ByteStreamCipher(machine2).convert(cipherText, plainText);
+        assertArrayEquals(data, plainText.array());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkAlphabetSize() {
+        new ByteStreamCipher(Benchmark.randomMachine(new Alphabet(), 5, 3,
+                                                     1));
+    }
+}
@@ -0,0 +1,401 @@
+package enigma;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.LongStream;
+
+import static enigma.EnigmaException.*;
+
+/** Picks, from each class of keys of a Keyspace that encipher every
+ *  message of a given length in the same way, one representative, so
+ *  that a search can skip the rest.
+ *
+ *  A rotor's wiring at each keypress depends only on the difference
+ *  between its position and its ring setting (its offset), so keys that
+ *  differ only in ring settings, with the positions moved to match, have
+ *  the same offsets at the start.  They keep the same offsets, and so
+ *  encipher the same way, for as long as their rotors step at the same
+ *  keypresses.  Stepping depends only on where the moving rotors' notches
+ *  are, so which keypresses step which rotors is computed once for each
+ *  choice of moving rotors and each combination of their positions, and
+ *  two such keys are equivalent over the message length iff they agree.
+ *  For short messages the ring setting of every rotor but the rightmost
+ *  rarely matters, and that of the leftmost moving rotor never does.
+ *
+ *  The representative of a class is its lowest-numbered key, which is
+ *  the one with the lowest ring settings.  Searches test keys and list
+ *  representatives with a Table, which finds the classes of many keys
+ *  at once.  Canonicalizers may be used by several threads; Tables may
+ *  not.
+ *  @author yuxinye
+ */
+class Canonicalizer {
+
+    /** A canonicalizer for the keys of KEYSPACE, as used on messages of
+     *  LENGTH characters. */
+    Canonicalizer(Keyspace keyspace, int length) {
+        if (length < 0) {
+            throw error("negative message length");
+        }
+        Config config = keyspace.config();
+        _keyspace = keyspace;
+        _length = length;
+        _numRotors = config.numRotors();
+        _size = config.alphabet().size();
+        _firstMoving = _numRotors - config.numPawls();
+        _firstRing = _numRotors - keyspace.rings();
+        long states = 1;
+        for (int i = _firstMoving; i < _numRotors; i += 1) {
+            states *= _size;
+            if (states > MAX_STATES) {
+                throw error("too many rotor positions to canonicalize");
+            }
+        }
+        _states = (int) states;
+        long ringSettings = 1, groups = 1;
+        for (int i = _firstRing; i < _numRotors; i += 1) {
+            ringSettings *= _size;
+            if (ringSettings * ringSettings > MAX_TABLE_BITS) {
+                throw error("too many ring settings to canonicalize");
+            }
+        }
+        for (int i = _firstMoving; i < _firstRing; i += 1) {
+            groups *= _size;
+        }
+        if (groups * ringSettings * ringSettings > MAX_TABLE_BITS) {
+            throw error("too many rotor positions to canonicalize");
+        }
+        _ringSettings = (int) ringSettings;
+        _groups = (int) groups;
+        _byOrder = new AtomicReferenceArray<>(keyspace.orders());
+    }
+
+    /** Return the message length for which I find equivalent keys. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the representative of the class of KEY. */
+    long canonical(long key) {
+        int order = _keyspace.orderOf(key);
+        int ring = (int) _keyspace.ringSettings(key);
+        long positions = _keyspace.positions(key);
+        int posn = (int) (positions % _ringSettings);
+        int group = (int) (positions / _ringSettings % _groups);
+        int[] signatures = signatures(order);
+        int target = signatures[state(group, posn)];
+        int offset = minus(posn, ring);
+        for (int r = 0; r < ring; r += 1) {
+            int p = plus(offset, r);
+            if (signatures[state(group, p)] == target) {
+                return _keyspace.key(order, r, positions - posn + p);
+            }
+        }
+        return key;
+    }
+
+    /** Return true iff KEY represents its class. */
+    boolean isCanonical(long key) {
+        return canonical(key) == key;
+    }
+
+    /** Return the representatives among keys START .. END-1, in
+     *  order. */
+    LongStream representatives(long start, long end) {
+        Table table = new Table();
+        return LongStream.iterate(table.next(start, end), k -> k < end,
+                                  k -> table.next(k + 1, end));
+    }
+
+    /** Return the number of the combination of positions of the moving
+     *  rotors in which the rotors whose ring settings vary are at POSN
+     *  and the other moving rotors are at GROUP, both numbered as by
+     *  Keyspace.positions. */
+    private int state(int group, int posn) {
+        return (int) (((long) group * _ringSettings + posn) % _states);
+    }
+
+    /** Return the number whose digits are the sums, modulo the alphabet
+     *  size, of those of A and B, which are numbered as by
+     *  Keyspace.ringSettings. */
+    private int plus(int a, int b) {
+        int result = 0;
+        for (int w = 1; w < _ringSettings; w *= _size) {
+            int d = a / w % _size + b / w % _size;
+            result += (d >= _size ? d - _size : d) * w;
+        }
+        return result;
+    }
+
+    /** Return the number whose digits are the differences, modulo the
+     *  alphabet size, of those of A and B, numbered as for plus. */
+    private int minus(int a, int b) {
+        int result = 0;
+        for (int w = 1; w < _ringSettings; w *= _size) {
+            int d = a / w % _size - b / w % _size;
+            result += (d < 0 ? d + _size : d) * w;
+        }
+        return result;
+    }
+
+    /** Return an array whose element I, for FIRST <= I < my number of
+     *  slots, is the digit for slot I of VALUE, a number whose digits are
+     *  those of slots FIRST and beyond, the rightmost least
+     *  significant. */
+    private int[] digits(long value, int first) {
+        int[] result = new int[_numRotors];
+        for (int i = _numRotors - 1; i >= first; i -= 1) {
+            result[i] = (int) (value % _size);
+            value /= _size;
+        }
+        return result;
+    }
+
+    /** Return the signatures of the stepping of choice of rotors ORDER
+     *  (see Keyspace.order) from each combination of positions of its
+     *  moving rotors, numbered as by state: two combinations have the
+     *  same signature iff the same rotors step at each of the first
+     *  _length keypresses. */
+    private int[] signatures(int order) {
+        int[] result = _byOrder.get(order);
+        if (result == null) {
+            String[] names = _keyspace.order(order);
+            String moving = String.join(" ", Arrays.copyOfRange(
+                names, _firstMoving, _numRotors));
+            result = _signatures.computeIfAbsent(moving,
+                                                 m -> stepping(names));
+            _byOrder.set(order, result);
+        }
+        return result;
+    }
+
+    /** Return the signatures of the stepping of the rotors named NAMES,
+     *  as for signatures. */
+    private int[] stepping(String[] names) {
+        RotorCatalog catalog = _keyspace.config().catalog();
+        boolean[][] notches = new boolean[_numRotors][];
+        for (int i = _firstMoving; i < _numRotors; i += 1) {
+            Rotor rotor = catalog.get(names[i]);
+            notches[i] = new boolean[_size];
+            for (int p = 0; p < _size; p += 1) {
+                notches[i][p] = rotor.notchAt(p);
+            }
+        }
+        int[] result = new int[_states];
+        HashMap<LongBuffer, Integer> ids = new HashMap<>();
+        long[] events = new long[16];
+        int last = _numRotors - 1;
+        for (int s = 0; s < _states; s += 1) {
+            int[] posn = digits(s, _firstMoving);
+            int n = 0;
+            for (int t = 0; t < _length; t += 1) {
+                long stepped = 0;
+                for (int i = _firstMoving; i <= last; i += 1) {
+                    if (i == last) {
+                        posn[i] = (posn[i] + 1) % _size;
+                        stepped |= 1L << (i - _firstMoving);
+                    } else if (notches[i + 1][posn[i + 1]]) {
+                        posn[i] = (posn[i] + 1) % _size;
+                        posn[i + 1] = (posn[i + 1] + 1) % _size;
+                        stepped |= 3L << (i - _firstMoving);
+                        i += 1;
+                    }
+                }
+                if (stepped != 1L << (last - _firstMoving)) {
+                    if (n + 2 > events.length) {
+                        events = Arrays.copyOf(events, 2 * events.length);
+                    }
+                    events[n] = t;
+                    events[n + 1] = stepped;
+                    n += 2;
+                }
+            }
+            LongBuffer signature =
+                LongBuffer.wrap(Arrays.copyOf(events, n));
+            Integer id = ids.putIfAbsent(signature, ids.size());
+            result[s] = id == null ? ids.size() - 1 : id;
+        }
+        return result;
+    }
+
+    /** The representatives of the classes of the keys of one choice of
+     *  rotors at a time, for use by one thread.  Keys with the same
+     *  rotors, the same positions of the rotors whose ring settings do
+     *  not vary (a group), and the same offsets of those whose ring
+     *  settings do can differ only in their ring settings, so one pass
+     *  over the ring settings in increasing order finds the
+     *  representative of each class among them: the first key in it.
+     *  A table makes that pass for every offset of a group the first
+     *  time it needs one, and keeps a bit for each key of the group,
+     *  ordered as the keys are numbered, so that keys can be tested in
+     *  constant time and the representatives found by skipping over
+     *  zero bits. */
+    class Table {
+
+        /** An empty table. */
+        Table() {
+            long bits = (long) _groups * _ringSettings * _ringSettings;
+            _bits = new long[(int) ((bits + 63) >>> 6)];
+            _filled = new boolean[_groups];
+            _seen = new int[_states];
+            _ring = new int[_numRotors - _firstRing];
+            _posn = new int[_numRotors - _firstRing];
+        }
+
+        /** Return true iff KEY represents its class. */
+        boolean contains(long key) {
+            long positions = _keyspace.positions(key);
+            long bit = bit(_keyspace.orderOf(key),
+                           (int) (positions / _ringSettings % _groups),
+                           (int) _keyspace.ringSettings(key),
+                           (int) (positions % _ringSettings));
+            return (_bits[(int) (bit >>> 6)] & (1L << bit)) != 0;
+        }
+
+        /** Return the first representative among keys KEY .. END-1, or
+         *  END if there is none. */
+        long next(long key, long end) {
+            while (key < end) {
+                long positions = _keyspace.positions(key);
+                int posn = (int) (positions % _ringSettings);
+                long bit = bit(_keyspace.orderOf(key),
+                               (int) (positions / _ringSettings % _groups),
+                               (int) _keyspace.ringSettings(key), posn);
+                long found = nextBit(bit, bit - posn + _ringSettings);
+                if (found >= 0) {
+                    return Math.min(end, key + found - bit);
+                }
+                key += _ringSettings - posn;
+            }
+            return end;
+        }
+
+        /** Return the number of my bit for the key with choice of rotors
+         *  ORDER, the positions GROUP and POSN (see state), and ring
+         *  settings RING, first filling in the bits of the keys of
+         *  ORDER and GROUP if need be. */
+        private long bit(int order, int group, int ring, int posn) {
+            if (order != _order) {
+                Arrays.fill(_bits, 0);
+                Arrays.fill(_filled, false);
+                _signatures = signatures(order);
+                _order = order;
+            }
+            if (!_filled[group]) {
+                fill(group);
+                _filled[group] = true;
+            }
+            return ((long) group * _ringSettings + ring) * _ringSettings
+                + posn;
+        }
+
+        /** Set the bits of the representatives among the keys of my
+         *  current choice of rotors with positions GROUP.  Each offset
+         *  of the rotors whose ring settings vary takes one pass over
+         *  the ring settings, in which the positions of those rotors
+         *  are counted up along with their ring settings. */
+        private void fill(int group) {
+            int n = _ring.length;
+            long base = (long) group * _ringSettings * _ringSettings;
+            for (int offset = 0; offset < _ringSettings; offset += 1) {
+                if (_stamp == Integer.MAX_VALUE) {
+                    Arrays.fill(_seen, 0);
+                    _stamp = 0;
+                }
+                _stamp += 1;
+                for (int j = 0, w = 1; j < n; j += 1, w *= _size) {
+                    _ring[j] = 0;
+                    _posn[j] = offset / w % _size;
+                }
+                int posn = offset;
+                for (int r = 0; r < _ringSettings; r += 1) {
+                    int signature = _signatures[state(group, posn)];
+                    if (_seen[signature] != _stamp) {
+                        _seen[signature] = _stamp;
+                        long bit = base + (long) r * _ringSettings + posn;
+                        _bits[(int) (bit >>> 6)] |= 1L << bit;
+                    }
+                    for (int j = 0, w = 1; j < n; j += 1, w *= _size) {
+                        if (_posn[j] + 1 == _size) {
+                            _posn[j] = 0;
+                            posn -= (_size - 1) * w;
+                        } else {
+                            _posn[j] += 1;
+                            posn += w;
+                        }
+                        _ring[j] += 1;
+                        if (_ring[j] < _size) {
+                            break;
+                        }
+                        _ring[j] = 0;
+                    }
+                }
+            }
+        }
+
+        /** Return the number of my first set bit among bits FROM ..
+         *  TO-1, or -1 if there is none. */
+        private long nextBit(long from, long to) {
+            int i = (int) (from >>> 6);
+            long word = _bits[i] & (-1L << from);
+            while (word == 0) {
+                i += 1;
+                if ((long) i << 6 >= to) {
+                    return -1;
+                }
+                word = _bits[i];
+            }
+            long result = ((long) i << 6) + Long.numberOfTrailingZeros(word);
+            return result < to ? result : -1;
+        }
+
+        /** One bit per key of my current choice of rotors, numbered by
+         *  group, then ring settings, then positions of the rotors whose
+         *  ring settings vary, set for representatives. */
+        private final long[] _bits;
+        /** Whether the bits of each group have been filled in. */
+        private final boolean[] _filled;
+        /** The pass over the ring settings in which each signature was
+         *  last seen. */
+        private final int[] _seen;
+        /** The current pass. */
+        private int _stamp;
+        /** Digits of the ring settings and positions of the rotors whose
+         *  ring settings vary during a pass, rightmost first. */
+        private final int[] _ring, _posn;
+        /** My current choice of rotors, or -1 if none. */
+        private int _order = -1;
+        /** The signatures of my current choice of rotors. */
+        private int[] _signatures;
+    }
+
+    /** Largest number of keys with the same choice of rotors for which a
+     *  Table keeps bits. */
+    static final long MAX_TABLE_BITS = 1L << 30;
+
+    /** Largest number of combinations of positions of the moving rotors
+     *  for which I compute signatures. */
+    static final int MAX_STATES = 1 << 22;
+
+    /** The keyspace whose keys I map. */
+    private final Keyspace _keyspace;
+    /** The message length. */
+    private final int _length;
+    /** Number of slots, size of the alphabet, first slot with a pawl,
+     *  and first slot whose ring setting varies. */
+    private final int _numRotors, _size, _firstMoving, _firstRing;
+    /** Number of combinations of positions of the moving rotors. */
+    private final int _states;
+    /** Numbers of combinations of ring settings, and of positions of
+     *  the moving rotors whose ring settings do not vary. */
+    private final int _ringSettings, _groups;
+    /** Signatures for each choice of moving rotors, named in slot order
+     *  and separated by blanks. */
+    private final ConcurrentHashMap<String, int[]> _signatures =
+        new ConcurrentHashMap<>();
+    /** The signatures for each choice of rotors, once looked up. */
+    private final AtomicReferenceArray<int[]> _byOrder;
+}
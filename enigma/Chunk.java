@@ -0,0 +1,182 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** An item of a stream passing through a CipherProcessor: a chunk of
+ *  characters or of bytes, or a setting line that changes the machine's
+ *  settings for the chunks that follow.  Chunks emitted by a processor
+ *  come from a pool; a subscriber that is done with one should call
+ *  release, after which it must not use it, so that its buffer can be
+ *  reused.
+ *  @author yuxinye
+ */
+final class Chunk {
+
+    /** A chunk holding CHARS, BYTES, or SETTING, exactly one of which is
+     *  non-null, belonging to POOL (null if it is not pooled). */
+    private Chunk(CharBuffer chars, ByteBuffer bytes, String setting,
+                  Pool pool) {
+        _chars = chars;
+        _bytes = bytes;
+        _setting = setting;
+        _pool = pool;
+    }
+
+    /** Return a chunk of the characters remaining in CHARS. */
+    static Chunk of(CharBuffer chars) {
+        return new Chunk(chars, null, null, null);
+    }
+
+    /** Return a chunk of the characters of CHARS. */
+    static Chunk of(CharSequence chars) {
+        return of(CharBuffer.wrap(chars));
+    }
+
+    /** Return a chunk of the bytes remaining in BYTES. */
+    static Chunk of(ByteBuffer bytes) {
+        return new Chunk(null, bytes, null, null);
+    }
+
+    /** Return a chunk that sets up the machine according to SETTING, a
+     *  setting line (the leading "*" is optional). */
+    static Chunk setting(String setting) {
+        return new Chunk(null, null,
+                         setting.startsWith("*") ? setting.substring(1)
+                         : setting, null);
+    }
+
+    /** Return true iff I hold characters. */
+    boolean isChars() {
+        return _chars != null;
+    }
+
+    /** Return true iff I hold bytes. */
+    boolean isBytes() {
+        return _bytes != null;
+    }
+
+    /** Return true iff I am a setting line. */
+    boolean isSetting() {
+        return _setting != null;
+    }
+
+    /** Return my characters (null unless isChars()). */
+    CharBuffer chars() {
+        return _chars;
+    }
+
+    /** Return my bytes (null unless isBytes()). */
+    ByteBuffer bytes() {
+        return _bytes;
+    }
+
+    /** Return my setting line, without "*" (null unless isSetting()). */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return me to my pool, if I came from one. */
+    void release() {
+        if (_pool != null) {
+            _pool.release(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (isSetting()) {
+            return "*" + _setting;
+        } else if (isChars()) {
+            return _chars.toString();
+        } else {
+            return _bytes.toString();
+        }
+    }
+
+    /** A bounded pool of chunks of characters or of bytes, whose buffers
+     *  grow as needed. */
+    static final class Pool {
+
+        /** A pool of up to LIMIT free chunks of characters (if CHARS) or
+         *  bytes. */
+        Pool(boolean chars, int limit) {
+            _charPool = chars;
+            _limit = limit;
+        }
+
+        /** Return a chunk from the pool (or a new one) whose buffer is
+         *  cleared and has room for at least CAPACITY elements. */
+        Chunk acquire(int capacity) {
+            Chunk chunk = _free.poll();
+            if (chunk != null) {
+                _size.decrementAndGet();
+                if (chunk.capacity() >= capacity) {
+                    chunk.clear();
+                    return chunk;
+                }
+            }
+            capacity = Math.max(capacity, MIN_CAPACITY);
+            if (_charPool) {
+                return new Chunk(CharBuffer.allocate(capacity), null, null,
+                                 this);
+            } else {
+                return new Chunk(null, ByteBuffer.allocate(capacity), null,
+                                 this);
+            }
+        }
+
+        /** Return CHUNK, which came from me, to the pool, unless it is
+         *  full. */
+        void release(Chunk chunk) {
+            if (_size.incrementAndGet() <= _limit) {
+                _free.offer(chunk);
+            } else {
+                _size.decrementAndGet();
+            }
+        }
+
+        /** Return the number of free chunks. */
+        int size() {
+            return _size.get();
+        }
+
+        /** True iff my chunks hold characters. */
+        private final boolean _charPool;
+        /** Maximum number of free chunks. */
+        private final int _limit;
+        /** The free chunks. */
+        private final ConcurrentLinkedQueue<Chunk> _free =
+            new ConcurrentLinkedQueue<>();
+        /** Number of free chunks. */
+        private final AtomicInteger _size = new AtomicInteger();
+    }
+
+    /** Return the capacity of my buffer. */
+    private int capacity() {
+        return isChars() ? _chars.capacity() : _bytes.capacity();
+    }
+
+    /** Clear my buffer. */
+    private void clear() {
+        if (isChars()) {
+            _chars.clear();
+        } else {
+            _bytes.clear();
+        }
+    }
+
+    /** Smallest buffer allocated for a pooled chunk. */
+    static final int MIN_CAPACITY = 256;
+
+    /** My characters, or null. */
+    private final CharBuffer _chars;
+    /** My bytes, or null. */
+    private final ByteBuffer _bytes;
+    /** My setting line, or null. */
+    private final String _setting;
+    /** The pool I return to, or null. */
+    private final Pool _pool;
+}
@@ -0,0 +1,287 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.concurrent.Flow;
+
+import static enigma.EnigmaException.*;
+
+/** A reactive-streams stage that enciphers a stream of Chunks: chunks of
+ *  characters and of bytes are enciphered as they arrive, as if all the
+ *  chunks since the last setting line formed one message, and setting
+ *  lines set up the machine.  Each chunk of characters or bytes yields
+ *  one output chunk of the same kind, drawn from a pool (see
+ *  Chunk.release); setting lines yield nothing.
+ *
+ *  In character chunks, whitespace is ignored, as in messages, and a
+ *  character split between chunks (a surrogate pair) is put together.
+ *  Byte chunks require a 256-character alphabet, byte value K standing
+ *  for the character with index K, as in binary mode.
+ *
+ *  No more items are requested from upstream than have been requested
+ *  from downstream, so a slow subscriber slows the publisher rather
+ *  than causing items to pile up here.  Items are processed on the
+ *  thread that delivers them.  A processor has at most one subscriber.
+ *  @author yuxinye
+ */
+class CipherProcessor implements Flow.Processor<Chunk, Chunk> {
+
+    /** A processor that enciphers with ENGINE, whose machine must be set
+     *  up by a setting line before the first chunk of data. */
+    CipherProcessor(Engine engine) {
+        _engine = engine;
+        _machine = engine.machine();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Chunk> subscriber) {
+        synchronized (this) {
+            if (_downstream == null) {
+                _downstream = subscriber;
+                subscriber.onSubscribe(new Downstream());
+                connect();
+                if (_ended != null) {
+                    end(_ended);
+                }
+                return;
+            }
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException(
+                "CipherProcessor has a subscriber already"));
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (_upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+            connect();
+        }
+    }
+
+    @Override
+    public void onNext(Chunk item) {
+        if (_done) {
+            return;
+        }
+        Chunk result;
+        try {
+            result = convert(item);
+        } catch (RuntimeException excp) {
+            _upstream.cancel();
+            end(excp);
+            return;
+        }
+        if (result == null) {
+            request(1);
+        } else {
+            _downstream.onNext(result);
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        end(error);
+    }
+
+    @Override
+    public void onComplete() {
+        end(_highSurrogate != 0 ? error("input ends inside a character")
+            : COMPLETE);
+    }
+
+    /** End the stream with ERROR, or normally if ERROR is COMPLETE.  If
+     *  there is no subscriber yet, this happens when there is one. */
+    private synchronized void end(Throwable error) {
+        if (_done) {
+            return;
+        } else if (_downstream == null) {
+            _ended = error;
+        } else if (error == COMPLETE) {
+            _done = true;
+            _downstream.onComplete();
+        } else {
+            _done = true;
+            _downstream.onError(error);
+        }
+    }
+
+    /** Return the output for ITEM, or null if it produces none. */
+    private Chunk convert(Chunk item) {
+        if (item.isSetting()) {
+            if (_highSurrogate != 0) {
+                throw error("setting line inside a character");
+            }
+            Main.setUp(_machine, item.setting());
+            _engine.reset();
+            _bytes = null;
+            _ready = true;
+            return null;
+        } else if (!_ready) {
+            throw error("data before the first setting line");
+        } else if (item.isChars()) {
+            _bytes = null;
+            return convert(item.chars());
+        } else {
+            return convert(item.bytes());
+        }
+    }
+
+    /** Return a pooled chunk holding the encipherment of the characters
+     *  remaining in IN, which are consumed. */
+    private Chunk convert(CharBuffer in) {
+        Alphabet alphabet = _machine.alphabet();
+        int[] indices = scratch(in.remaining() + 1);
+        int n = 0;
+        while (in.hasRemaining()) {
+            char c = in.get();
+            int cp;
+            if (_highSurrogate != 0) {
+                if (!Character.isLowSurrogate(c)) {
+                    throw error("Character is not in the alphabet");
+                }
+                cp = Character.toCodePoint(_highSurrogate, c);
+                _highSurrogate = 0;
+            } else if (Character.isHighSurrogate(c)) {
+                _highSurrogate = c;
+                continue;
+            } else {
+                cp = c;
+            }
+            if (!Engine.isSpace(cp)) {
+                indices[n] = alphabet.toIndex(cp);
+                n += 1;
+            }
+        }
+        _engine.convert(indices, n);
+        Chunk out = _charChunks.acquire(2 * n);
+        CharBuffer chars = out.chars();
+        for (int i = 0; i < n; i += 1) {
+            int cp = alphabet.toCodePoint(indices[i]);
+            if (Character.isBmpCodePoint(cp)) {
+                chars.put((char) cp);
+            } else {
+                chars.put(Character.highSurrogate(cp));
+                chars.put(Character.lowSurrogate(cp));
+            }
+        }
+        chars.flip();
+        return out;
+    }
+
+    /** Return a pooled chunk holding the encipherment of the bytes
+     *  remaining in IN, which are consumed. */
+    private Chunk convert(ByteBuffer in) {
+        if (_bytes == null) {
+            _bytes = new ByteStreamCipher(_machine);
+        }
+        Chunk out = _byteChunks.acquire(in.remaining());
+        ByteBuffer bytes = out.bytes();
+        bytes.limit(in.remaining());
+        _bytes.convert(in, bytes);
+        bytes.flip();
+        return out;
+    }
+
+    /** Return a scratch array of at least N ints. */
+    private int[] scratch(int n) {
+        if (_scratch.length < n) {
+            _scratch = new int[Math.max(n, 2 * _scratch.length)];
+        }
+        return _scratch;
+    }
+
+    /** Once both an upstream and a downstream exist, pass on any demand
+     *  that arrived before the upstream did. */
+    private synchronized void connect() {
+        if (_upstream != null && _downstream != null && _pending > 0) {
+            long n = _pending;
+            _pending = 0;
+            _upstream.request(n);
+        }
+    }
+
+    /** Request N more items from upstream, or record the demand if there
+     *  is no upstream yet. */
+    private synchronized void request(long n) {
+        if (_upstream == null) {
+            _pending = _pending + n < 0 ? Long.MAX_VALUE : _pending + n;
+        } else {
+            _upstream.request(n);
+        }
+    }
+
+    /** The subscription given to my subscriber. */
+    private class Downstream implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                synchronized (CipherProcessor.this) {
+                    if (_upstream != null) {
+                        _upstream.cancel();
+                    }
+                }
+                end(new IllegalArgumentException("non-positive request: "
+                                                 + n));
+            } else {
+                CipherProcessor.this.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            _done = true;
+            synchronized (CipherProcessor.this) {
+                if (_upstream != null) {
+                    _upstream.cancel();
+                }
+            }
+        }
+    }
+
+    /** Marks normal completion for end. */
+    private static final Throwable COMPLETE = new Throwable("complete");
+
+    /** Number of free output chunks of each kind kept for reuse. */
+    static final int POOL_LIMIT = 16;
+
+    /** The engine enciphering characters. */
+    private final Engine _engine;
+    /** Its machine. */
+    private final Machine _machine;
+    /** Cipher for byte chunks, valid until the next setting line or
+     *  character chunk, or null. */
+    private ByteStreamCipher _bytes;
+    /** True iff a setting line has been processed. */
+    private boolean _ready;
+    /** A high surrogate ending the last character chunk, or 0. */
+    private char _highSurrogate;
+    /** Scratch space for character indices. */
+    private int[] _scratch = new int[0];
+    /** Free output chunks. */
+    private final Chunk.Pool _charChunks = new Chunk.Pool(true, POOL_LIMIT),
+        _byteChunks = new Chunk.Pool(false, POOL_LIMIT);
+
+    /** The subscription to the publisher, once known. */
+    private Flow.Subscription _upstream;
+    /** The subscriber, once known. */
+    private Flow.Subscriber<? super Chunk> _downstream;
+    /** Demand received before the upstream subscription. */
+    private long _pending;
+    /** How the stream ended before there was a subscriber, or null. */
+    private Throwable _ended;
+    /** True once the stream has ended, failed, or been cancelled. */
+    private volatile boolean _done;
+}
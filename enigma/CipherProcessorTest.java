@@ -0,0 +1,335 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CipherProcessor class.
+ *  @author yuxinye
+ */
+public class CipherProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** A subscriber that requests one item at a time, records what it
+     *  receives, and releases each chunk. */
+    private static class Collector implements Flow.Subscriber<Chunk> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Chunk item) {
+            _outstanding.decrementAndGet();
+            if (item.isChars()) {
+                _text.append(item.chars());
+            } else {
+                ByteBuffer bytes = item.bytes();
+                while (bytes.hasRemaining()) {
+                    _bytes.add(bytes.get() & 0xff);
+                }
+            }
+            _buffers.add(item.isChars() ? item.chars() : item.bytes());
+            item.release();
+            _outstanding.incrementAndGet();
+            _subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            _error = error;
+            _done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            _done.countDown();
+        }
+
+        /** Wait for the end of the stream. */
+        void await() throws InterruptedException {
+            assertTrue(_done.await(10, TimeUnit.SECONDS));
+        }
+
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+        /** Characters received. */
+        private final StringBuilder _text = new StringBuilder();
+        /** Bytes received. */
+        private final List<Integer> _bytes =
+            Collections.synchronizedList(new ArrayList<>());
+        /** Distinct buffers received. */
+        private final Set<Object> _buffers =
+            Collections.synchronizedSet(Collections.newSetFromMap(
+                    new IdentityHashMap<>()));
+        /** Items requested and not yet received (at most 1). */
+        private final AtomicInteger _outstanding = new AtomicInteger(1);
+        /** The error that ended the stream, if any. */
+        private volatile Throwable _error;
+        /** Released at the end of the stream. */
+        private final CountDownLatch _done = new CountDownLatch(1);
+    }
+
+    /** The setting of the example in the assignment. */
+    private static final String SETTING =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    @Test
+    public void checkChunksAcrossBoundaries() throws InterruptedException {
+        String msg = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF "
+            + "ROSEWOOD MADE OF SLIDING FOLDING ROSEWOOD";
+        Machine reference = navalMachine(SETTING.substring(1));
+        String expected = reference.convert(msg.replace(" ", ""))
+            + navalMachine("B Beta I II III ZZZZ").convert("HELLOWORLD");
+
+        CipherProcessor processor = new CipherProcessor(
+            new AutoEngine(navalMachine(SETTING.substring(1))));
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+        try (SubmissionPublisher<Chunk> publisher =
+             new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            publisher.submit(Chunk.setting(SETTING));
+            Random rand = new Random(3);
+            for (int i = 0; i < msg.length(); ) {
+                int len = Math.min(msg.length() - i, rand.nextInt(7));
+                publisher.submit(Chunk.of(msg.substring(i, i + len)));
+                i += len;
+            }
+            publisher.submit(Chunk.setting("B Beta I II III ZZZZ"));
+            publisher.submit(Chunk.of("HELLO"));
+            publisher.submit(Chunk.of("WORLD"));
+        }
+        collector.await();
+        assertNull(collector._error);
+        assertEquals(expected, collector._text.toString());
+        assertTrue(collector._buffers.size() <= 2);
+    }
+
+    @Test
+    public void checkSurrogatesAndBytes() throws InterruptedException {
+        Config config = EngineFuzzer.randomConfig(new Random(7));
+        while (config.alphabet().size() != Machine.BYTE_ALPHABET_SIZE) {
+            config = EngineFuzzer.randomConfig(new Random(config.hashCode()));
+        }
+        Random rand = new Random(11);
+        String setting = EngineFuzzer.randomSetting(config, rand);
+        Machine reference = config.newMachine();
+        Main.setUp(reference, setting);
+        int[] data = new int[300];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = rand.nextInt(Machine.BYTE_ALPHABET_SIZE);
+        }
+        int[] expected = data.clone();
+        new ReferenceEngine(reference).convert(expected, expected.length);
+
+        Machine machine = config.newMachine();
+        CipherProcessor processor =
+            new CipherProcessor(new TableEngine(machine));
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+        try (SubmissionPublisher<Chunk> publisher =
+             new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            publisher.submit(Chunk.setting(setting));
+            ByteBuffer bytes = ByteBuffer.allocate(100);
+            for (int i = 0; i < 100; i += 1) {
+                bytes.put((byte) data[i]);
+            }
+            bytes.flip();
+            publisher.submit(Chunk.of(bytes));
+            StringBuilder text = new StringBuilder();
+            for (int i = 100; i < 200; i += 1) {
+                text.appendCodePoint(config.alphabet().toCodePoint(data[i]));
+            }
+            publisher.submit(Chunk.of(text.substring(0, 51)));
+            publisher.submit(Chunk.of(text.substring(51)));
+            bytes = ByteBuffer.allocate(100);
+            for (int i = 200; i < 300; i += 1) {
+                bytes.put((byte) data[i]);
+            }
+            bytes.flip();
+            publisher.submit(Chunk.of(bytes));
+        }
+        collector.await();
+        assertNull(collector._error);
+        for (int i = 0; i < 100; i += 1) {
+            assertEquals(expected[i], (int) collector._bytes.get(i));
+            assertEquals(expected[i + 200],
+                         (int) collector._bytes.get(i + 100));
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 100; i < 200; i += 1) {
+            text.appendCodePoint(config.alphabet().toCodePoint(expected[i]));
+        }
+        assertEquals(text.toString(), collector._text.toString());
+    }
+
+    @Test
+    public void checkBytesWithKeystream() throws InterruptedException {
+        Config config = EngineFuzzer.randomConfig(new Random(7));
+        while (config.alphabet().size() != Machine.BYTE_ALPHABET_SIZE) {
+            config = EngineFuzzer.randomConfig(new Random(config.hashCode()));
+        }
+        Random rand = new Random(13);
+        String setting = EngineFuzzer.randomSetting(config, rand);
+        Machine reference = config.newMachine();
+        Main.setUp(reference, setting);
+        int[] data = new int[400];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = rand.nextInt(Machine.BYTE_ALPHABET_SIZE);
+        }
+        int[] expected = data.clone();
+        new ReferenceEngine(reference).convert(expected, expected.length);
+
+        Machine machine = config.newMachine();
+        KeystreamCache cache = new KeystreamCache(2, 1000);
+        Main.setUp(machine, setting);
+        cache.get(machine);
+        assertNotNull(cache.get(machine));
+        CipherProcessor processor = new CipherProcessor(
+            new KeystreamEngine(new TableEngine(machine), cache));
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+        try (SubmissionPublisher<Chunk> publisher =
+             new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            publisher.submit(Chunk.setting(setting));
+            for (int start = 0; start < data.length; start += 100) {
+                if (start % 200 == 0) {
+                    StringBuilder text = new StringBuilder();
+                    for (int i = start; i < start + 100; i += 1) {
+                        text.appendCodePoint(
+                            config.alphabet().toCodePoint(data[i]));
+                    }
+                    publisher.submit(Chunk.of(text.toString()));
+                } else {
+                    ByteBuffer bytes = ByteBuffer.allocate(100);
+                    for (int i = start; i < start + 100; i += 1) {
+                        bytes.put((byte) data[i]);
+                    }
+                    bytes.flip();
+                    publisher.submit(Chunk.of(bytes));
+                }
+            }
+        }
+        collector.await();
+        assertNull(collector._error);
+        StringBuilder text = new StringBuilder();
+        for (int start = 0; start < data.length; start += 100) {
+            for (int i = start; i < start + 100; i += 1) {
+                if (start % 200 == 0) {
+                    text.appendCodePoint(
+                        config.alphabet().toCodePoint(expected[i]));
+                } else {
+                    assertEquals(expected[i],
+                                 (int) collector._bytes.get(i / 200 * 100
+                                                            + i % 100));
+                }
+            }
+        }
+        assertEquals(text.toString(), collector._text.toString());
+    }
+
+    @Test
+    public void checkBackpressure() throws InterruptedException {
+        CipherProcessor processor = new CipherProcessor(
+            new AutoEngine(navalMachine(SETTING.substring(1))));
+        List<Chunk> received = Collections.synchronizedList(new ArrayList<>());
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        processor.subscribe(new Flow.Subscriber<Chunk>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+                s.request(2);
+            }
+
+            @Override
+            public void onNext(Chunk item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        SubmissionPublisher<Chunk> publisher = new SubmissionPublisher<>();
+        publisher.subscribe(processor);
+        publisher.submit(Chunk.setting(SETTING));
+        for (int i = 0; i < 10; i += 1) {
+            publisher.submit(Chunk.of("ABCDE"));
+        }
+        Thread.sleep(200);
+        assertEquals(2, received.size());
+        assertTrue(publisher.estimateMaximumLag() >= 7);
+        subscription[0].request(3);
+        Thread.sleep(200);
+        assertEquals(5, received.size());
+        subscription[0].cancel();
+        publisher.close();
+    }
+
+    @Test
+    public void checkErrors() throws InterruptedException {
+        Collector collector = new Collector();
+        new CipherProcessorOnList(Chunk.of("ABC")).subscribe(collector);
+        collector.await();
+        assertTrue(collector._error instanceof EnigmaException);
+
+        collector = new Collector();
+        new CipherProcessorOnList(Chunk.setting(SETTING), Chunk.of("AB1"))
+            .subscribe(collector);
+        collector.await();
+        assertTrue(collector._error instanceof EnigmaException);
+    }
+
+    /** A CipherProcessor fed from a fixed list of chunks. */
+    private static class CipherProcessorOnList
+        implements Flow.Publisher<Chunk> {
+        /** A publisher of the output for ITEMS. */
+        CipherProcessorOnList(Chunk... items) {
+            _items = items;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Chunk> subscriber) {
+            CipherProcessor processor = new CipherProcessor(
+                new AutoEngine(navalMachine(SETTING.substring(1))));
+            processor.subscribe(subscriber);
+            SubmissionPublisher<Chunk> publisher =
+                new SubmissionPublisher<>();
+            publisher.subscribe(processor);
+            for (Chunk item : _items) {
+                publisher.submit(item);
+            }
+            publisher.close();
+        }
+
+        /** The input. */
+        private final Chunk[] _items;
+    }
+}
@@ -0,0 +1,161 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** The suite of all JUnit tests for the InflatingInputStream and
+ *  DeflatingOutputStream classes and their use by Main.
+ *  @author yuxinye
+ */
+public class CompressionTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return lines of random text from RAND, in all about SIZE
+     *  bytes. */
+    private static byte[] lines(Random rand, int size) {
+        StringBuilder text = new StringBuilder(size + 100);
+        while (text.length() < size) {
+            int n = rand.nextInt(80);
+            for (int i = 0; i < n; i += 1) {
+                text.append((char) ('A' + rand.nextInt(26)));
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return DATA compressed as a single gzip member. */
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(result)) {
+            out.write(data);
+        }
+        return result.toByteArray();
+    }
+
+    /** Return the contents of IN. */
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[7919];
+            for (int n = input.read(buffer); n >= 0;
+                 n = input.read(buffer)) {
+                result.write(buffer, 0, n);
+            }
+            return result.toByteArray();
+        }
+    }
+
+    @Test
+    public void checkMembers() throws IOException {
+        byte[] data =
+            lines(new Random(1), 3 * DeflatingOutputStream.MEMBER_SIZE
+                  + 12345);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflatingOutputStream out = new DeflatingOutputStream(bytes, 3);
+        for (int i = 0; i < data.length; i += 1000) {
+            out.write(data, i, Math.min(1000, data.length - i));
+            out.flush();
+        }
+        out.close();
+        assertEquals(4, out.members());
+        byte[] compressed = bytes.toByteArray();
+        assertArrayEquals(data, readAll(new GZIPInputStream(
+            new ByteArrayInputStream(compressed))));
+        assertArrayEquals(data, readAll(InflatingInputStream.open(
+            new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void checkEmpty() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflatingOutputStream out = new DeflatingOutputStream(bytes, 1);
+        out.close();
+        assertEquals(1, out.members());
+        assertEquals(0, readAll(new GZIPInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()))).length);
+    }
+
+    @Test
+    public void checkInflating() throws IOException {
+        byte[] data = lines(new Random(2), 300000);
+        assertArrayEquals(data, readAll(InflatingInputStream.open(
+            new ByteArrayInputStream(data))));
+        byte[] twice = Arrays.copyOf(data, 2 * data.length);
+        System.arraycopy(data, 0, twice, data.length, data.length);
+        byte[] member = gzip(data);
+        byte[] members = Arrays.copyOf(member, 2 * member.length);
+        System.arraycopy(member, 0, members, member.length, member.length);
+        InputStream in =
+            InflatingInputStream.open(new ByteArrayInputStream(members));
+        assertTrue(in instanceof InflatingInputStream);
+        assertArrayEquals(twice, readAll(in));
+        byte[] truncated = Arrays.copyOf(member, member.length / 2);
+        try {
+            readAll(InflatingInputStream.open(
+                new ByteArrayInputStream(truncated)));
+            fail("truncated data accepted");
+        } catch (IOException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkMain() throws IOException {
+        Path dir = Files.createTempDirectory("gzip");
+        Path conf = dir.resolve("a.conf"), in = dir.resolve("a.in.gz"),
+            plain = dir.resolve("a.out"), packed = dir.resolve("a.out.gz");
+        Files.write(conf, ("ABCD 3 1\n R R (AB) (CD)\n F N (ABCD)\n"
+                           + " M MA (AC) (BD)\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        StringBuilder text = new StringBuilder();
+        Random rand = new Random(3);
+        for (int i = 0; i < 20000; i += 1) {
+            text.append("* R F M ").append((char) ('A' + rand.nextInt(4)))
+                .append((char) ('A' + rand.nextInt(4))).append('\n');
+            for (int j = rand.nextInt(40); j > 0; j -= 1) {
+                text.append((char) ('A' + rand.nextInt(4)));
+            }
+            text.append('\n');
+        }
+        byte[] input = text.toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(in, gzip(input));
+        for (String option : new String[] { "--pipelined", "--parallel=3" }) {
+            Files.write(dir.resolve("plain.in"), input);
+            run(option, conf, dir.resolve("plain.in"), plain);
+            run(option, conf, in, packed);
+            assertArrayEquals(Files.readAllBytes(plain),
+                              readAll(new GZIPInputStream(
+                                  Files.newInputStream(packed))));
+        }
+    }
+
+    /** Run Main with OPTION on configuration CONF, input IN, and output
+     *  OUT. */
+    private static void run(String option, Path conf, Path in, Path out) {
+        Main main = new Main(new String[] {
+                option, conf.toString(), in.toString(), out.toString() });
+        try {
+            main.process();
+        } finally {
+            main.close();
+        }
+    }
+}
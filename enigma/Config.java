@@ -0,0 +1,91 @@
+package enigma;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** The contents of a machine configuration file: an alphabet, the
+ *  numbers of rotor slots and pawls, and a catalog of the available
+ *  rotors, which are built only when first used.  A Config may be shared
+ *  between threads, each of which gets its own Machine (with its own
+ *  rotors) from newMachine().
+ *  @author yuxinye
+ */
+class Config {
+
+    /** A configuration with alphabet ALPHABET, NUMROTORS slots, PAWLS
+     *  pawls, and available rotors ROTORS, which serve only as
+     *  prototypes for the rotors of new machines. */
+    Config(Alphabet alphabet, int numRotors, int pawls, List<Rotor> rotors) {
+        this(alphabet, numRotors, pawls, new RotorCatalog(rotors));
+    }
+
+    /** A configuration with alphabet ALPHABET, NUMROTORS slots, PAWLS
+     *  pawls, and the rotors in CATALOG. */
+    Config(Alphabet alphabet, int numRotors, int pawls,
+           RotorCatalog catalog) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _catalog = catalog;
+    }
+
+    /** Return a configuration read from CONFIG, which contains a
+     *  configuration file in the format specified in the assignment.
+     *  Errors in the cycles of a rotor are reported when it is first
+     *  used. */
+    static Config read(Tokenizer config) {
+        try {
+            Alphabet alphabet = new Alphabet(config.next());
+            int numRotors = config.nextInt();
+            int pawls = config.nextInt();
+            return new Config(alphabet, numRotors, pawls,
+                              RotorCatalog.read(config, alphabet));
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Return a new machine with this configuration, which uses fresh
+     *  copies of the rotors in my catalog, made as it first needs
+     *  them. */
+    Machine newMachine() {
+        return new Machine(_alphabet, _numRotors, _pawls, _catalog);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return my available rotors, in the order of the configuration
+     *  file, building any not yet used.  They must not be modified. */
+    List<Rotor> rotors() {
+        return _catalog.rotors();
+    }
+
+    /** Return the catalog of my available rotors. */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _pawls;
+    /** Prototypes of all available rotors. */
+    private final RotorCatalog _catalog;
+}
@@ -0,0 +1,82 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The configuration files read by a set of runs of Main, each read and
+ *  parsed at most once however many runs (possibly concurrent) use it.
+ *  Files are identified by their canonical paths, so different names
+ *  for the same file share an entry.
+ *  @author yuxinye
+ */
+class ConfigCache {
+
+    /** Return the entry for the configuration file named NAME, reading
+     *  the file if this is its first use.  Its contents are parsed only
+     *  when first needed. */
+    Entry open(String name) {
+        File file = new File(name);
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException excp) {
+            key = file.getAbsolutePath();
+        }
+        Entry entry = _entries.get(key);
+        if (entry == null) {
+            try {
+                byte[] contents = Files.readAllBytes(file.toPath());
+                entry = new Entry(new String(contents, Main.CHARSET));
+            } catch (IOException excp) {
+                throw error("could not open %s", name);
+            }
+            Entry previous = _entries.putIfAbsent(key, entry);
+            if (previous != null) {
+                entry = previous;
+            }
+        }
+        return entry;
+    }
+
+    /** The contents of one configuration file. */
+    static class Entry {
+
+        /** An entry for a file containing TEXT. */
+        Entry(String text) {
+            _text = text;
+        }
+
+        /** Return the configuration in my file, parsing it if this is
+         *  the first request.  If it is malformed, every request throws
+         *  the same exception. */
+        synchronized Config config() {
+            if (_config == null && _error == null) {
+                try {
+                    _config = Config.read(new Tokenizer(_text));
+                } catch (RuntimeException excp) {
+                    _error = excp;
+                }
+                _text = null;
+            }
+            if (_error != null) {
+                throw _error;
+            }
+            return _config;
+        }
+
+        /** Contents of the file, until parsed. */
+        private String _text;
+        /** The parsed configuration, or null. */
+        private Config _config;
+        /** The exception thrown by parsing, or null. */
+        private RuntimeException _error;
+    }
+
+    /** Entries by canonical path. */
+    private final ConcurrentHashMap<String, Entry> _entries =
+        new ConcurrentHashMap<>();
+}
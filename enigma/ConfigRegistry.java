@@ -0,0 +1,248 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** The current configurations of a set of configuration files that may
+ *  be replaced while a long-running program uses them.  A daemon thread
+ *  watches the files' directories, and when a file changes and then
+ *  stays unchanged for a quiet period (so that a file caught partway
+ *  through being written, which may still parse, is not taken for the
+ *  new version), re-reads and parses it and then replaces its spec in a
+ *  single write.  Getting a
+ *  spec never waits for a reload, and a reload never waits for users of
+ *  a spec: a stream that took a spec keeps using it (its Config is
+ *  immutable) until it asks again.  A file that no longer parses keeps
+ *  its previous spec, and the error is recorded.
+ *  @author yuxinye
+ */
+class ConfigRegistry implements AutoCloseable {
+
+    /** A registry watching no files. */
+    ConfigRegistry() throws IOException {
+        this(QUIET_MILLIS);
+    }
+
+    /** A registry watching no files, which reloads a file once it has
+     *  gone QUIETMILLIS milliseconds without changing. */
+    ConfigRegistry(long quietMillis) throws IOException {
+        _quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+        _watcher = FileSystems.getDefault().newWatchService();
+        _thread = new Thread(this::watch, "enigma-config-watcher");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /** Start watching the configuration file FILE, if not already
+     *  watched, and return its current spec.  Reads and parses it
+     *  on this thread the first time, throwing EnigmaException if it
+     *  cannot. */
+    Spec register(Path file) {
+        Path key = key(file);
+        Spec spec = _specs.get(key);
+        if (spec != null) {
+            return spec;
+        }
+        synchronized (this) {
+            spec = _specs.get(key);
+            if (spec == null) {
+                try {
+                    key.getParent().register(
+                        _watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                } catch (IOException | ClosedWatchServiceException excp) {
+                    throw error("could not watch %s", file);
+                }
+                spec = load(key, 1);
+                _specs.put(key, spec);
+            }
+            return spec;
+        }
+    }
+
+    /** Return the current spec of the registered file FILE.  Never
+     *  waits for a reload in progress. */
+    Spec get(Path file) {
+        Spec spec = _specs.get(key(file));
+        if (spec == null) {
+            throw error("%s is not registered", file);
+        }
+        return spec;
+    }
+
+    /** Return the message of the error that prevented the last reload
+     *  of the registered file FILE, or null if it succeeded. */
+    String lastError(Path file) {
+        get(file);
+        return _errors.get(key(file));
+    }
+
+    /** Re-read and parse the registered file FILE now, replacing its spec
+     *  if it parses and has changed.  Returns the current spec. */
+    Spec reload(Path file) {
+        Path key = key(file);
+        Spec old = get(key);
+        try {
+            Spec spec = load(key, old.version() + 1);
+            _errors.remove(key);
+            if (!spec._text.equals(old._text)) {
+                _specs.replace(key, old, spec);
+            }
+        } catch (EnigmaException excp) {
+            _errors.put(key, excp.getMessage());
+        }
+        return _specs.get(key);
+    }
+
+    /** Stop watching. */
+    @Override
+    public void close() {
+        try {
+            _watcher.close();
+        } catch (IOException excp) {
+            /* Nothing more can be done. */
+        }
+    }
+
+    /** Return the key under which FILE is registered: its absolute,
+     *  normalized path. */
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    /** Return a spec with version VERSION read from FILE.  Every rotor
+     *  is built here, although catalogs otherwise build them when first
+     *  used, so that a bad wiring is reported by the load rather than by
+     *  a later setting line on a request's thread. */
+    private static Spec load(Path file, long version) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file), Main.CHARSET);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        Config config = Config.read(new Tokenizer(text));
+        config.rotors();
+        return new Spec(file, version, text, config);
+    }
+
+    /** The body of the watcher thread: reload registered files once
+     *  their directories have reported changes to them and then none for
+     *  _quietNanos, until closed. */
+    private void watch() {
+        HashMap<Path, Long> pending = new HashMap<>();
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = _watcher.take();
+                } else {
+                    long wait = Collections.min(pending.values())
+                        - System.nanoTime();
+                    key = _watcher.poll(Math.max(0, wait),
+                                        TimeUnit.NANOSECONDS);
+                }
+                if (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path) {
+                            Path file =
+                                dir.resolve((Path) event.context());
+                            if (_specs.containsKey(file)) {
+                                pending.put(file, System.nanoTime()
+                                            + _quietNanos);
+                            }
+                        }
+                    }
+                    key.reset();
+                }
+                long now = System.nanoTime();
+                Iterator<Map.Entry<Path, Long>> due =
+                    pending.entrySet().iterator();
+                while (due.hasNext()) {
+                    Map.Entry<Path, Long> entry = due.next();
+                    if (entry.getValue() - now <= 0) {
+                        due.remove();
+                        reload(entry.getKey());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            /* Closed. */
+        }
+    }
+
+    /** The configuration of one version of a file. */
+    static final class Spec {
+        /** The spec with version VERSION of FILE, which contained TEXT,
+         *  parsed as CONFIG. */
+        private Spec(Path file, long version, String text, Config config) {
+            _file = file;
+            _version = version;
+            _text = text;
+            _config = config;
+        }
+
+        /** Return the file I was read from. */
+        Path file() {
+            return _file;
+        }
+
+        /** Return my version: 1 for the spec read at registration,
+         *  increasing with each reload that changed the spec. */
+        long version() {
+            return _version;
+        }
+
+        /** Return my configuration. */
+        Config config() {
+            return _config;
+        }
+
+        /** Return a new machine with my configuration. */
+        Machine newMachine() {
+            return _config.newMachine();
+        }
+
+        /** The file. */
+        private final Path _file;
+        /** The version. */
+        private final long _version;
+        /** The contents of the file. */
+        private final String _text;
+        /** The parsed contents. */
+        private final Config _config;
+    }
+
+    /** Default time, in milliseconds, that a file must go without
+     *  changing before it is reloaded. */
+    static final long QUIET_MILLIS = 250;
+
+    /** Current specs by file. */
+    private final ConcurrentHashMap<Path, Spec> _specs =
+        new ConcurrentHashMap<>();
+    /** Messages of errors in the last reloads by file. */
+    private final ConcurrentHashMap<Path, String> _errors =
+        new ConcurrentHashMap<>();
+    /** Reports changes in the directories of registered files. */
+    private final WatchService _watcher;
+    /** Thread reloading changed files. */
+    private final Thread _thread;
+    /** Time a file must go without changing before it is reloaded. */
+    private final long _quietNanos;
+}
@@ -0,0 +1,147 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/** The suite of all JUnit tests for the ConfigRegistry class.
+ *  @author yuxinye
+ */
+public class ConfigRegistryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** A two-slot configuration over a four-letter alphabet. */
+    private static final String SMALL =
+        "ABCD 2 1\n M MA (ABCD)\n R R (AB) (CD)\n";
+
+    /** The same with a different reflector. */
+    private static final String SMALL2 =
+        "ABCD 2 1\n M MA (ABCD)\n R R (AC) (BD)\n";
+
+    /** Replace the contents of FILE by TEXT in a single step, as a
+     *  deployment would. */
+    private static void replace(Path file, String text) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), "new", ".conf");
+        Files.write(temp, text.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Return the conversion of MSG by a machine from SPEC. */
+    private static String convert(ConfigRegistry.Spec spec, String msg) {
+        Machine machine = spec.newMachine();
+        Main.setUp(machine, "R M A");
+        return machine.convert(msg);
+    }
+
+    @Test
+    public void checkReload() throws IOException {
+        Path dir = Files.createTempDirectory("registry");
+        Path file = dir.resolve("small.conf");
+        Files.write(file, SMALL.getBytes(StandardCharsets.UTF_8));
+        try (ConfigRegistry registry = new ConfigRegistry()) {
+            ConfigRegistry.Spec first = registry.register(file);
+            assertSame(first, registry.register(dir.resolve(".")
+                                                .resolve("small.conf")));
+            assertEquals(1, first.version());
+            String before = convert(first, "AAAA");
+
+            assertSame(first, registry.reload(file));
+            replace(file, "ABCD 2 1\n M MA (AB\n");
+            assertSame(first, registry.reload(file));
+            assertNotNull(registry.lastError(file));
+
+            replace(file, "ABCD 2 1\n M MA (ABCZ)\n R R (AB) (CD)\n");
+            assertSame(first, registry.reload(file));
+            assertEquals("Character is not in the alphabet",
+                         registry.lastError(file));
+
+            replace(file, SMALL2);
+            ConfigRegistry.Spec second = registry.reload(file);
+            assertNull(registry.lastError(file));
+            assertEquals(2, second.version());
+            assertFalse(before.equals(convert(second, "AAAA")));
+            assertEquals(before, convert(first, "AAAA"));
+            assertSame(second, registry.get(file));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void checkWatch() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("registry");
+        Path file = dir.resolve("small.conf");
+        Files.write(file, SMALL.getBytes(StandardCharsets.UTF_8));
+        try (ConfigRegistry registry = new ConfigRegistry()) {
+            ConfigRegistry.Spec first = registry.register(file);
+            String expected = convert(first, "ABCDABCD");
+            replace(file, SMALL2);
+            while (registry.get(file) == first) {
+                assertEquals(expected, convert(first, "ABCDABCD"));
+                Thread.sleep(10);
+            }
+            assertEquals(convert(registry.reload(file), "ABCDABCD"),
+                         convert(registry.get(file), "ABCDABCD"));
+            assertFalse(expected.equals(convert(registry.get(file),
+                                                "ABCDABCD")));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void checkPartialWrite()
+        throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("registry");
+        Path file = dir.resolve("small.conf");
+        Files.write(file, SMALL.getBytes(StandardCharsets.UTF_8));
+        try (ConfigRegistry registry = new ConfigRegistry(1000)) {
+            ConfigRegistry.Spec first = registry.register(file);
+            Files.write(file, SMALL2.substring(0, SMALL2.indexOf(" R"))
+                        .getBytes(StandardCharsets.UTF_8));
+            Thread.sleep(100);
+            Files.write(file, SMALL2.getBytes(StandardCharsets.UTF_8));
+            while (registry.get(file) == first) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, registry.get(file).version());
+            assertEquals(convert(registry.reload(file), "ABCDABCD"),
+                         convert(registry.get(file), "ABCDABCD"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkUnregistered() throws IOException {
+        try (ConfigRegistry registry = new ConfigRegistry()) {
+            Path file = Files.createTempFile("none", ".conf");
+            file.toFile().deleteOnExit();
+            registry.get(file);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadFirstVersion() throws IOException {
+        Path file = Files.createTempFile("bad", ".conf");
+        file.toFile().deleteOnExit();
+        Files.write(file, "ABCD 2".getBytes(StandardCharsets.UTF_8));
+        try (ConfigRegistry registry = new ConfigRegistry()) {
+            registry.register(file);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the places in a ciphertext where a crib (a guessed piece of the
+ *  plaintext) could be.  A machine's conversion is its reflector's
+ *  permutation conjugated by the plugboard and the other rotors, so it
+ *  has a fixed point only if the reflector does.  With reflectors that
+ *  have none (which checkReflectors insists on), no character ever
+ *  enciphers to itself, so the crib cannot be at any offset where one of
+ *  its characters lines up with the same ciphertext character.  The
+ *  offsets that survive are where a setting search would try the crib;
+ *  neither KeySearch nor PlugboardClimber accepts a crib, so for now
+ *  they are only printed.
+ *
+ *  Offsets count the characters of the ciphertext other than
+ *  whitespace (as Engine.isSpace defines it), which is how KeySearch
+ *  and PlugboardClimber number the characters of a ciphertext.
+ *  The ciphertext is scanned in chunks, which overlap by one less than
+ *  the crib's length, so that it need not fit in memory.  Within a chunk,
+ *  the positions of each character of the crib are a bitset, and the
+ *  offsets ruled out are the union of those bitsets, each shifted down
+ *  by that character's place in the crib, so 64 offsets are tested at
+ *  a time.  Chunks are scanned concurrently and their offsets reported
+ *  in order.
+ *  @author yuxinye
+ */
+public final class CribScanner {
+
+    /** Print the possible offsets of a crib in a ciphertext, one per
+     *  line, in increasing order, as specified by ARGS: options, then a
+     *  configuration file (giving the alphabet), the crib, and
+     *  optionally a file containing the ciphertext, which otherwise comes
+     *  from the standard input.  The options are --threads=N, the number
+     *  of threads scanning chunks (default: one per processor), and
+     *  --chunk=N, the number of offsets in each chunk. */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int chunk = DEFAULT_CHUNK;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k],
+                    value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(value);
+                } else if (arg.startsWith("--chunk=")) {
+                    chunk = Integer.parseInt(value);
+                } else {
+                    throw error("unknown option: %s", arg);
+                }
+            }
+            if (args.length - k < 2 || args.length - k > 3 || threads <= 0
+                || chunk <= 0) {
+                throw error("usage: java enigma.CribScanner [OPTIONS] CONFIG "
+                            + "CRIB [CIPHERTEXT]");
+            }
+            Config config = new ConfigCache().open(args[k]).config();
+            checkReflectors(config);
+            Alphabet alphabet = config.alphabet();
+            CribScanner scanner =
+                new CribScanner(KeySearch.indices(args[k + 1], alphabet),
+                                alphabet.size());
+            InputStream in = args.length - k > 2
+                ? new FileInputStream(args[k + 2]) : System.in;
+            PrintStream out =
+                new PrintStream(new BufferedOutputStream(System.out), false,
+                                Main.CHARSET);
+            try (Reader text = new InputStreamReader(in, Main.CHARSET)) {
+                scanner.scan(text, alphabet, threads, chunk, out::println);
+            } finally {
+                out.flush();
+            }
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: options need integer values");
+            System.exit(1);
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Check that no reflector of CONFIG has a fixed point, without
+     *  which characters may encipher to themselves and offsets would be
+     *  wrongly ruled out. */
+    static void checkReflectors(Config config) {
+        for (Rotor rotor : config.rotors()) {
+            if (rotor.reflecting() && !rotor.permutation().derangement()) {
+                throw error("reflector %s has a fixed point, so characters "
+                            + "may encipher to themselves", rotor.name());
+            }
+        }
+    }
+
+    /** A scanner for CRIB, a non-empty sequence of indices into an
+     *  alphabet of ALPHABETSIZE characters. */
+    CribScanner(int[] crib, int alphabetSize) {
+        if (crib.length == 0) {
+            throw error("empty crib");
+        }
+        _crib = crib.clone();
+        _bitset = new int[crib.length];
+        int[] bitsetOf = new int[alphabetSize];
+        Arrays.fill(bitsetOf, -1);
+        int distinct = 0;
+        for (int j = 0; j < crib.length; j += 1) {
+            int c = crib[j];
+            if (c < 0 || c >= alphabetSize) {
+                throw error("crib character out of range");
+            }
+            if (bitsetOf[c] < 0) {
+                bitsetOf[c] = distinct;
+                distinct += 1;
+            }
+            _bitset[j] = bitsetOf[c];
+        }
+        _bitsetOf = bitsetOf;
+        _distinct = distinct;
+    }
+
+    /** Return my crib's length. */
+    int length() {
+        return _crib.length;
+    }
+
+    /** Return, in increasing order, the offsets K with 0 <= K < COUNT at
+     *  which my crib could be in TEXT, which must have at least COUNT +
+     *  length() - 1 characters. */
+    int[] offsets(int[] text, int count) {
+        int m = _crib.length;
+        if (count <= 0) {
+            return new int[0];
+        }
+        if (text.length < count + m - 1) {
+            throw error("text too short for %d offsets", count);
+        }
+        int span = count + m - 1;
+        int words = (count + WORD - 1) / WORD;
+        long[][] positions =
+            new long[_distinct][Math.max((span + WORD - 1) / WORD,
+                                         words + (m - 1) / WORD + 1) + 1];
+        for (int i = 0; i < span; i += 1) {
+            int s = _bitsetOf[text[i]];
+            if (s >= 0) {
+                positions[s][i / WORD] |= 1L << i;
+            }
+        }
+        long[] ruledOut = new long[words];
+        for (int j = 0; j < m; j += 1) {
+            long[] bits = positions[_bitset[j]];
+            int skip = j / WORD, shift = j % WORD;
+            if (shift == 0) {
+                for (int w = 0; w < words; w += 1) {
+                    ruledOut[w] |= bits[w + skip];
+                }
+            } else {
+                for (int w = 0; w < words; w += 1) {
+                    ruledOut[w] |= (bits[w + skip] >>> shift)
+                        | (bits[w + skip + 1] << (WORD - shift));
+                }
+            }
+        }
+        int survivors = 0;
+        for (int w = 0; w < words; w += 1) {
+            ruledOut[w] = ~ruledOut[w] & mask(w, count);
+            survivors += Long.bitCount(ruledOut[w]);
+        }
+        int[] result = new int[survivors];
+        int n = 0;
+        for (int w = 0; w < words; w += 1) {
+            for (long bits = ruledOut[w]; bits != 0; bits &= bits - 1) {
+                result[n] = w * WORD + Long.numberOfTrailingZeros(bits);
+                n += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the mask of the bits of word W of a bitset that are below
+     *  COUNT. */
+    private static long mask(int w, int count) {
+        int bits = count - w * WORD;
+        return bits >= WORD ? -1L : (1L << bits) - 1;
+    }
+
+    /** Scan the ciphertext read from IN, whose characters other than
+     *  whitespace must be in ALPHABET, in chunks of CHUNK offsets on
+     *  THREADS threads, passing each offset at which my crib could be to
+     *  OUT, in increasing order, as soon as it and all before it are
+     *  known. */
+    void scan(Reader in, Alphabet alphabet, int threads, int chunk,
+              LongConsumer out) throws IOException {
+        int overlap = _crib.length - 1;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<long[]>> pending = new ArrayDeque<>();
+        try {
+            BufferedReader text = new BufferedReader(in);
+            int[] window = new int[chunk + overlap];
+            int filled = 0;
+            long base = 0;
+            for (int cp = next(text); cp >= 0; cp = next(text)) {
+                if (Engine.isSpace(cp)) {
+                    continue;
+                }
+                window[filled] = alphabet.toIndex(cp);
+                filled += 1;
+                if (filled == window.length) {
+                    pending.add(submit(pool, window, chunk, base));
+                    window = Arrays.copyOfRange(
+                        window, chunk, chunk + window.length);
+                    filled = overlap;
+                    base += chunk;
+                    report(pending, WINDOW_PER_THREAD * threads, out);
+                }
+            }
+            if (filled > overlap) {
+                pending.add(submit(pool, window, filled - overlap, base));
+            }
+            report(pending, 0, out);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the next code point from IN, or -1 at its end. */
+    private static int next(BufferedReader in) throws IOException {
+        int c = in.read();
+        if (c >= 0 && Character.isHighSurrogate((char) c)) {
+            in.mark(1);
+            int low = in.read();
+            if (low >= 0 && Character.isLowSurrogate((char) low)) {
+                return Character.toCodePoint((char) c, (char) low);
+            }
+            in.reset();
+        }
+        return c;
+    }
+
+    /** Return the future result of scanning the first COUNT offsets of
+     *  TEXT on POOL, as offsets from BASE. */
+    private Future<long[]> submit(ExecutorService pool, int[] text,
+                                  int count, long base) {
+        return pool.submit(() -> {
+            int[] offsets = offsets(text, count);
+            long[] result = new long[offsets.length];
+            for (int i = 0; i < offsets.length; i += 1) {
+                result[i] = base + offsets[i];
+            }
+            return result;
+        });
+    }
+
+    /** Remove results from the front of PENDING and pass their offsets
+     *  to OUT for as long as they are complete, and regardless of that
+     *  while more than LIMIT remain. */
+    private static void report(ArrayDeque<Future<long[]>> pending,
+                               int limit, LongConsumer out) {
+        while (!pending.isEmpty()
+               && (pending.size() > limit || pending.peek().isDone())) {
+            long[] offsets;
+            try {
+                offsets = pending.remove().get();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                } else if (excp.getCause() instanceof Error) {
+                    throw (Error) excp.getCause();
+                }
+                throw new IllegalStateException(excp.getCause());
+            }
+            for (long offset : offsets) {
+                out.accept(offset);
+            }
+        }
+    }
+
+    /** Number of offsets in each chunk scanned by main by default. */
+    static final int DEFAULT_CHUNK = 1 << 20;
+
+    /** Number of chunks that may be in progress or waiting to be
+     *  reported, per thread. */
+    static final int WINDOW_PER_THREAD = 4;
+
+    /** Number of bits in a bitset word. */
+    private static final int WORD = Long.SIZE;
+
+    /** The crib. */
+    private final int[] _crib;
+    /** _bitset[J] is the index of the bitset of the positions of crib
+     *  character J. */
+    private final int[] _bitset;
+    /** _bitsetOf[C] is the index of the bitset of the positions of
+     *  character C, or -1 if C is not in the crib. */
+    private final int[] _bitsetOf;
+    /** Number of distinct characters in the crib. */
+    private final int _distinct;
+}
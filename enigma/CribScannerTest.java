@@ -0,0 +1,139 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribScanner class.
+ *  @author yuxinye
+ */
+public class CribScannerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return the offsets K < COUNT at which no character of CRIB
+     *  matches the character of TEXT at K plus its place. */
+    private static List<Long> expected(int[] text, int[] crib, int count) {
+        List<Long> result = new ArrayList<>();
+        for (int k = 0; k < count; k += 1) {
+            boolean possible = true;
+            for (int j = 0; j < crib.length && possible; j += 1) {
+                possible = text[k + j] != crib[j];
+            }
+            if (possible) {
+                result.add((long) k);
+            }
+        }
+        return result;
+    }
+
+    /** Return N random indices below SIZE from RAND. */
+    private static int[] random(int n, int size, Random rand) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = rand.nextInt(size);
+        }
+        return result;
+    }
+
+    @Test
+    public void checkOffsets() {
+        Random rand = new Random(42);
+        for (int trial = 0; trial < 200; trial += 1) {
+            int size = 2 + rand.nextInt(30);
+            int[] crib = random(1 + rand.nextInt(150), size, rand);
+            int count = rand.nextInt(400);
+            int[] text = random(count + crib.length - 1, size, rand);
+            List<Long> actual = new ArrayList<>();
+            for (int k : new CribScanner(crib, size).offsets(text, count)) {
+                actual.add((long) k);
+            }
+            assertEquals(expected(text, crib, count), actual);
+        }
+    }
+
+    @Test
+    public void checkScan() throws IOException {
+        Random rand = new Random(7);
+        int[] crib = random(70, 26, rand);
+        int[] text = random(5000, 26, rand);
+        StringBuilder ciphertext = new StringBuilder();
+        for (int i = 0; i < text.length; i += 1) {
+            ciphertext.append(UPPER.toChar(text[i]));
+            if (i % 5 == 4) {
+                ciphertext.append(i % 50 == 49 ? '\n' : ' ');
+            }
+        }
+        CribScanner scanner = new CribScanner(crib, 26);
+        List<Long> want = expected(text, crib, text.length - 69);
+        for (int[] dims : new int[][] { {1, 5000}, {3, 100}, {4, 1} }) {
+            List<Long> actual = new ArrayList<>();
+            scanner.scan(new StringReader(ciphertext.toString()), UPPER,
+                         dims[0], dims[1], actual::add);
+            assertEquals(want, actual);
+        }
+        List<Long> none = new ArrayList<>();
+        scanner.scan(new StringReader("ABC"), UPPER, 2, 10, none::add);
+        assertTrue(none.isEmpty());
+    }
+
+    @Test
+    public void checkTrueOffsetSurvives() throws IOException {
+        Machine machine = navalMachine(
+            "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+        String plain = "WETTERVORHERSAGEBISKAYA";
+        Random rand = new Random(3);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i += 1) {
+            text.append(UPPER.toChar(rand.nextInt(26)));
+        }
+        text.insert(137, plain);
+        String cipher = machine.convert(text.toString());
+        CribScanner scanner =
+            new CribScanner(KeySearch.indices(plain, UPPER), 26);
+        List<Long> offsets = new ArrayList<>();
+        scanner.scan(new StringReader(cipher), UPPER, 2, 64, offsets::add);
+        assertTrue(offsets.contains(137L));
+        assertTrue(offsets.size() < cipher.length() - plain.length() + 1);
+    }
+
+    @Test
+    public void checkReflectors() {
+        CribScanner.checkReflectors(navalConfig());
+        Config config = Config.read(new Tokenizer(
+            "ABCD 2 1\n M MA (ABCD)\n R R (AB) (CD)\n S R (AB)\n"));
+        try {
+            CribScanner.checkReflectors(config);
+            fail("reflector with fixed points accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("reflector S "));
+        }
+    }
+
+    @Test
+    public void checkSpaces() throws IOException {
+        CribScanner scanner =
+            new CribScanner(KeySearch.indices("AB", UPPER), 26);
+        List<Long> offsets = new ArrayList<>();
+        scanner.scan(new StringReader("BA\tC\nD E"), UPPER, 1, 4,
+                     offsets::add);
+        assertEquals("[0, 2, 3]", offsets.toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadCharacter() throws IOException {
+        new CribScanner(new int[] { 1, 2 }, 26)
+            .scan(new StringReader("AB!CD"), UPPER, 1, 10, k -> { });
+    }
+}
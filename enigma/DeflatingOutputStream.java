@@ -0,0 +1,171 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** An output stream that compresses what is written to it as gzip data
+ *  made of independently compressed members, which are concatenated
+ *  as the gzip format allows.  Each member holds about MEMBER_SIZE bytes
+ *  of whole lines, and members are compressed concurrently and written in
+ *  order, so compression keeps up with several threads of enciphering,
+ *  and the result can be decompressed by any gzip reader, or member by
+ *  member in parallel.
+ *  @author yuxinye
+ */
+class DeflatingOutputStream extends OutputStream {
+
+    /** A stream writing the compressed data to OUT, compressing on
+     *  THREADS threads. */
+    DeflatingOutputStream(OutputStream out, int threads) {
+        _out = out;
+        _threads = threads;
+        _pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "enigma-deflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (_closed) {
+            throw new IOException("stream closed");
+        }
+        if (_count + len > _buffer.length) {
+            _buffer = Arrays.copyOf(
+                _buffer, Math.max(_count + len, 2 * _buffer.length));
+        }
+        System.arraycopy(b, off, _buffer, _count, len);
+        _count += len;
+        while (_count >= MEMBER_SIZE) {
+            int limit = Math.min(_count, 2 * MEMBER_SIZE), end = limit;
+            while (end > 0 && _buffer[end - 1] != '\n') {
+                end -= 1;
+            }
+            submit(end == 0 ? limit : end);
+        }
+    }
+
+    /** Write the members that are already compressed, and flush my
+     *  output.  The current member is not ended, so that flushing does
+     *  not make members small. */
+    @Override
+    public void flush() throws IOException {
+        drain(Integer.MAX_VALUE);
+        _out.flush();
+    }
+
+    /** Return the number of members started so far. */
+    long members() {
+        return _members;
+    }
+
+    /** Compress and write everything written so far, and close my
+     *  output. */
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            if (_count > 0 || _members == 0) {
+                submit(_count);
+            }
+            drain(0);
+        } finally {
+            _pool.shutdownNow();
+            _out.close();
+        }
+    }
+
+    /** Start compressing the first N buffered bytes as a member, and
+     *  write finished members. */
+    private void submit(int n) throws IOException {
+        byte[] data = Arrays.copyOf(_buffer, n);
+        System.arraycopy(_buffer, n, _buffer, 0, _count - n);
+        _count -= n;
+        _pending.add(_pool.submit(() -> compress(data)));
+        _members += 1;
+        drain(WINDOW_PER_THREAD * _threads);
+    }
+
+    /** Return DATA compressed as one gzip member. */
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream result =
+            new ByteArrayOutputStream(data.length / 2 + HEADER_SIZE);
+        try (GZIPOutputStream member = new GZIPOutputStream(result)) {
+            member.write(data);
+        }
+        return result.toByteArray();
+    }
+
+    /** Remove members from the front of _pending and write them for as
+     *  long as they are complete, and regardless of that while more than
+     *  LIMIT remain. */
+    private void drain(int limit) throws IOException {
+        while (!_pending.isEmpty()
+               && (_pending.size() > limit || _pending.peek().isDone())) {
+            byte[] member;
+            try {
+                member = _pending.remove().get();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof IOException) {
+                    throw (IOException) excp.getCause();
+                } else if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                } else if (excp.getCause() instanceof Error) {
+                    throw (Error) excp.getCause();
+                }
+                throw new IllegalStateException(excp.getCause());
+            }
+            _out.write(member);
+        }
+    }
+
+    /** Number of uncompressed bytes in each member but the last, not
+     *  counting the rest of the line at which it ends. */
+    static final int MEMBER_SIZE = 1 << 20;
+
+    /** Number of members that may be in progress or waiting to be
+     *  written, per thread. */
+    static final int WINDOW_PER_THREAD = 4;
+
+    /** Space allowed for a member's gzip header and trailer. */
+    private static final int HEADER_SIZE = 64;
+
+    /** Where the compressed data goes. */
+    private final OutputStream _out;
+    /** Number of compressing threads. */
+    private final int _threads;
+    /** The compressing threads. */
+    private final ExecutorService _pool;
+    /** Members being compressed or waiting to be written, in order. */
+    private final ArrayDeque<Future<byte[]>> _pending = new ArrayDeque<>();
+    /** Data not yet in a member: the first _count bytes of _buffer. */
+    private byte[] _buffer = new byte[MEMBER_SIZE];
+    /** Number of bytes in _buffer. */
+    private int _count;
+    /** Number of members started. */
+    private long _members;
+    /** True once I am closed. */
+    private boolean _closed;
+}
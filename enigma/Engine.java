@@ -0,0 +1,78 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A method of enciphering messages with the rotors and plugboard of a
+ *  Machine.  The machine itself is the reference engine; other engines
+ *  compile its wiring into faster forms, and must give exactly the same
+ *  results as the reference, stepping included.  An engine takes its
+ *  rotor positions from the machine at the start of each call to
+ *  convert and leaves the machine's rotors where the reference would,
+ *  so engines on the same machine may be used interchangeably.
+ *  @author yuxinye
+ */
+interface Engine {
+
+    /** Return my name, as accepted by create. */
+    String name();
+
+    /** Return the machine whose rotors and plugboard I use. */
+    Machine machine();
+
+    /** Note that my machine's rotors, ring settings, or plugboard have
+     *  been replaced (as by a setting line).  Must be called before
+     *  converting after any such change. */
+    void reset();
+
+    /** Convert the first N elements of MSG, which are indices of
+     *  characters in my machine's alphabet, in place, advancing my
+     *  machine's rotors as for N keypresses. */
+    void convert(int[] msg, int n);
+
+    /** Return the conversion of MSG, ignoring any whitespace in it, and
+     *  advance my machine's rotors accordingly. */
+    default String convert(String msg) {
+        Alphabet alphabet = machine().alphabet();
+        int[] indices = new int[msg.length()];
+        int n = 0;
+        for (int i = 0; i < msg.length(); ) {
+            int cp = msg.codePointAt(i);
+            if (!isSpace(cp)) {
+                indices[n] = alphabet.toIndex(cp);
+                n += 1;
+            }
+            i += Character.charCount(cp);
+        }
+        convert(indices, n);
+        StringBuilder result = new StringBuilder(msg.length());
+        for (int i = 0; i < n; i += 1) {
+            result.appendCodePoint(alphabet.toCodePoint(indices[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return true iff CP is one of the whitespace characters removed
+     *  from messages (those matched by the regular expression \s). */
+    static boolean isSpace(int cp) {
+        return cp == ' ' || (cp >= '\t' && cp <= '\r');
+    }
+
+    /** Return a new engine named NAME (one of NAMES) for MACHINE. */
+    static Engine create(String name, Machine machine) {
+        switch (name) {
+        case ReferenceEngine.NAME:
+            return new ReferenceEngine(machine);
+        case TableEngine.NAME:
+            return new TableEngine(machine);
+        case AutoEngine.NAME:
+            return new AutoEngine(machine);
+        default:
+            throw error("unknown engine: %s", name);
+        }
+    }
+
+    /** Names of all engines. */
+    String[] NAMES = {
+        ReferenceEngine.NAME, TableEngine.NAME, AutoEngine.NAME
+    };
+}
@@ -0,0 +1,179 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Differential testing of engines: random configurations, setting
+ *  lines, and messages are run through an engine and through the
+ *  reference engine on separate machines, which must agree on every
+ *  character and on the final rotor positions.  Configurations favor
+ *  small alphabets and many notches, so that double stepping, wrapping,
+ *  and ring settings are exercised often.  Run with "make fuzz" or
+ *  "java enigma.EngineFuzzer [TRIALS [SEED]]".
+ *  @author yuxinye
+ */
+public final class EngineFuzzer {
+
+    /** Fuzz every engine for ARGS[0] (default DEFAULT_TRIALS) trials
+     *  using seed ARGS[1] (default: the current time), reporting the
+     *  first divergence found. */
+    public static void main(String... args) {
+        try {
+            int trials = args.length > 0 ? Integer.parseInt(args[0])
+                : DEFAULT_TRIALS;
+            long seed = args.length > 1 ? Long.parseLong(args[1])
+                : System.nanoTime();
+            for (String name : Engine.NAMES) {
+                fuzz(name, trials, seed);
+                System.out.printf("%-10s %d trials from seed %d: OK%n",
+                                  name, trials, seed);
+            }
+        } catch (NumberFormatException excp) {
+            System.err.println("Usage: java enigma.EngineFuzzer "
+                               + "[TRIALS [SEED]]");
+            System.exit(1);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Run TRIALS random trials of the engine named NAME, using SEED.
+     *  Throws an EnigmaException describing the first divergence. */
+    static void fuzz(String name, int trials, long seed) {
+        Random rand = new Random(seed);
+        for (int t = 0; t < trials; t += 1) {
+            Config config = randomConfig(rand);
+            Machine tested = config.newMachine(),
+                reference = config.newMachine();
+            Engine engine = Engine.create(name, tested),
+                expected = new ReferenceEngine(reference);
+            for (int s = rand.nextInt(MAX_SETTINGS) + 1; s > 0; s -= 1) {
+                String setting = randomSetting(config, rand);
+                Main.setUp(tested, setting);
+                Main.setUp(reference, setting);
+                engine.reset();
+                expected.reset();
+                for (int m = rand.nextInt(MAX_MESSAGES); m >= 0; m -= 1) {
+                    int n = rand.nextInt(MAX_MESSAGE_LENGTH + 1);
+                    int[] msg = new int[n];
+                    for (int i = 0; i < n; i += 1) {
+                        msg[i] = rand.nextInt(config.alphabet().size());
+                    }
+                    int[] want = msg.clone();
+                    engine.convert(msg, n);
+                    expected.convert(want, n);
+                    int k = Arrays.mismatch(msg, want);
+                    if (k >= 0 || !samePositions(tested, reference)) {
+                        throw error("engine %s diverged in trial %d "
+                                    + "(seed %d, alphabet size %d, "
+                                    + "setting %s) at character %d",
+                                    name, t, seed, config.alphabet().size(),
+                                    setting, k < 0 ? n : k);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return true iff the rotors of machines A and B have the same
+     *  positions. */
+    private static boolean samePositions(Machine a, Machine b) {
+        for (int i = 0; i < a.numRotors(); i += 1) {
+            if (a.rotor(i).setting() != b.rotor(i).setting()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a random configuration chosen using RAND, with a reflector
+     *  named R0, fixed rotors F1 ..., and moving rotors M1 ..., each kind
+     *  with some spares. */
+    static Config randomConfig(Random rand) {
+        int n = SIZES[rand.nextInt(SIZES.length)];
+        Alphabet alpha = Benchmark.alphabet(n);
+        int numRotors = 2 + rand.nextInt(MAX_ROTORS - 1);
+        int pawls = rand.nextInt(numRotors);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (int i = 0; i < 2; i += 1) {
+            rotors.add(new Reflector("R" + i, new Permutation(
+                    Benchmark.randomInvolution(n, rand), alpha)));
+        }
+        for (int i = 0; i < numRotors - pawls + 1; i += 1) {
+            rotors.add(new FixedRotor("F" + i, new Permutation(
+                    Benchmark.randomMap(n, rand), alpha)));
+        }
+        for (int i = 0; i < pawls + 1; i += 1) {
+            StringBuilder notches = new StringBuilder();
+            int count = rand.nextInt(4) == 0 ? n : rand.nextInt(4);
+            for (int j = 0; j < count; j += 1) {
+                notches.appendCodePoint(alpha.toCodePoint(rand.nextInt(n)));
+            }
+            rotors.add(new MovingRotor("M" + i, new Permutation(
+                    Benchmark.randomMap(n, rand), alpha),
+                    notches.toString()));
+        }
+        return new Config(alpha, numRotors, pawls, rotors);
+    }
+
+    /** Return a random setting line (without its leading "*") for
+     *  CONFIG's machines, chosen using RAND. */
+    static String randomSetting(Config config, Random rand) {
+        Alphabet alpha = config.alphabet();
+        int numRotors = config.numRotors(), pawls = config.numPawls();
+        StringBuilder setting = new StringBuilder();
+        setting.append("R").append(rand.nextInt(2));
+        int[] fixed = Benchmark.randomMap(numRotors - pawls + 1, rand);
+        for (int i = 1; i < numRotors - pawls; i += 1) {
+            setting.append(" F").append(fixed[i]);
+        }
+        int[] moving = Benchmark.randomMap(pawls + 1, rand);
+        for (int i = 0; i < pawls; i += 1) {
+            setting.append(" M").append(moving[i]);
+        }
+        setting.append(' ').append(randomString(alpha, numRotors - 1, rand));
+        if (rand.nextBoolean()) {
+            setting.append(' ')
+                .append(randomString(alpha, numRotors - 1, rand));
+        }
+        if (rand.nextBoolean()) {
+            setting.append(' ').append(PermutationAlgebra.toCycles(
+                    Benchmark.randomMap(alpha.size(), rand), alpha));
+        }
+        return setting.toString();
+    }
+
+    /** Return a string of LENGTH random characters of ALPHA chosen using
+     *  RAND. */
+    private static String randomString(Alphabet alpha, int length,
+                                       Random rand) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.appendCodePoint(alpha.toCodePoint(
+                    rand.nextInt(alpha.size())));
+        }
+        return result.toString();
+    }
+
+    /** Alphabet sizes tried. */
+    private static final int[] SIZES = { 2, 3, 5, 26, 27, 256, 1000 };
+
+    /** Largest number of slots tried. */
+    private static final int MAX_ROTORS = 6;
+
+    /** Largest number of setting lines per trial. */
+    private static final int MAX_SETTINGS = 4;
+
+    /** Largest number of messages per setting line. */
+    private static final int MAX_MESSAGES = 4;
+
+    /** Longest message tried. */
+    private static final int MAX_MESSAGE_LENGTH = 3000;
+
+    /** Number of trials per engine when none is given. */
+    static final int DEFAULT_TRIALS = 1000;
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the engines.
+ *  @author yuxinye
+ */
+public class EngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return a set-up machine for the naval configuration in the
+     *  assignment, with its reflector B and rotors Beta, III, IV, I. */
+    private Machine navalMachine() {
+        return TestUtils.navalMachine(
+            "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+    }
+
+    @Test
+    public void checkNavalExample() {
+        for (String name : Engine.NAMES) {
+            Engine engine = Engine.create(name, navalMachine());
+            engine.reset();
+            assertEquals(name, "QVPQSOKOILPUBKJZPISFXDW",
+                         engine.convert("FROM HIS\tSHOULDER HIAWATHA"));
+        }
+    }
+
+    @Test
+    public void fuzzTable() {
+        EngineFuzzer.fuzz(TableEngine.NAME, 150, 61);
+    }
+
+    @Test
+    public void fuzzAuto() {
+        EngineFuzzer.fuzz(AutoEngine.NAME, 150, 62);
+    }
+
+    @Test
+    public void checkVerifyingAgrees() {
+        Engine engine = new VerifyingEngine(
+            new TableEngine(navalMachine()), 1, 0);
+        engine.reset();
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     engine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkVerifyingCatchesDivergence() {
+        Machine machine = navalMachine();
+        Engine broken = new ReferenceEngine(machine) {
+            @Override
+            public void convert(int[] msg, int n) {
+                super.convert(msg, n);
+                if (n > 3) {
+                    msg[3] = (msg[3] + 1) % 26;
+                }
+            }
+        };
+        Engine engine = new VerifyingEngine(broken, 1, 0);
+        engine.reset();
+        engine.convert("FROMHISSHOULDERHIAWATHA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkVerifyingCatchesStepping() {
+        Machine machine = navalMachine();
+        Engine broken = new ReferenceEngine(machine) {
+            @Override
+            public void convert(int[] msg, int n) {
+                super.convert(msg, n);
+                machine.rotor(4).advance();
+            }
+        };
+        Engine engine = new VerifyingEngine(broken, 1, 0);
+        engine.reset();
+        engine.convert("");
+    }
+}
@@ -12,6 +12,11 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+    @Override
+    Rotor copy() {
+        return new FixedRotor(name(), permutation());
+    }
+
     @Override
     public String toString() {
         return "FixedRotor " + name();
@@ -0,0 +1,170 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A walk through the keys of a Keyspace in which consecutive keys with
+ *  the same rotors differ in exactly one rotor position or ring setting,
+ *  and by exactly one step, and consecutive keys with different rotors
+ *  have the same positions and ring settings.  The walk moves a machine
+ *  along with it, touching only the rotor that changes, and reports
+ *  which one did, so that a searcher can keep tables that combine
+ *  several rotors and rebuild only those that involve it.
+ *
+ *  The order is a reflected mixed-radix Gray code.  The digits are the
+ *  rotor positions, rightmost (fastest-changing) first, then the
+ *  varying ring settings, again rightmost first, and, most significant,
+ *  the choice of rotors.  Steps are numbered by rank from 0 to the
+ *  keyspace's size() - 1, so ranges of ranks divide the walk into
+ *  shards, and a walk can start at any rank.
+ *  @author yuxinye
+ */
+class GrayWalk {
+
+    /** A walk through KEYSPACE, starting at rank RANK, that sets
+     *  MACHINE (which must have KEYSPACE's configuration) to each key it
+     *  visits, with an empty plugboard. */
+    GrayWalk(Keyspace keyspace, Machine machine, long rank) {
+        if (rank < 0 || rank >= keyspace.size()) {
+            throw error("rank %d out of range", rank);
+        }
+        _keyspace = keyspace;
+        _machine = machine;
+        _numRotors = machine.numRotors();
+        _size = machine.alphabet().size();
+        _posnDigits = _numRotors - 1;
+        int digits = _posnDigits + keyspace.rings();
+        _digit = new int[digits];
+        _dir = new int[digits];
+        _weight = new long[digits];
+        _rank = rank;
+
+        _order = (int) (rank / keyspace.keysPerOrder());
+        long scale = 1;
+        for (int i = 0; i < digits; i += 1) {
+            int b = (int) (rank / scale % _size);
+            boolean reflected = rank / scale / _size % 2 == 1;
+            _digit[i] = reflected ? _size - 1 - b : b;
+            _dir[i] = reflected ? -1 : 1;
+            scale *= _size;
+        }
+        long weight = 1;
+        for (int i = 0; i < digits; i += 1) {
+            if (i == _posnDigits) {
+                weight = 1;
+            }
+            _weight[i] = weight;
+            weight *= _size;
+            if (i < _posnDigits) {
+                _positions += _digit[i] * _weight[i];
+            } else {
+                _rings += _digit[i] * _weight[i];
+            }
+        }
+        setRotors();
+    }
+
+    /** Return the rank of the current key. */
+    long rank() {
+        return _rank;
+    }
+
+    /** Return the current key, as numbered by my keyspace. */
+    long key() {
+        return _keyspace.key(_order, _rings, _positions);
+    }
+
+    /** Return true iff there is a key after the current one. */
+    boolean hasNext() {
+        return _rank + 1 < _keyspace.size();
+    }
+
+    /** Move to the next key, and set my machine to it.  Returns the slot
+     *  of the one rotor whose position changed, or, if it was a ring
+     *  setting that changed, the negation of its slot, or NEW_ROTORS if
+     *  the rotors were replaced (their positions and ring settings
+     *  staying the same). */
+    int next() {
+        if (!hasNext()) {
+            throw error("no more keys");
+        }
+        _rank += 1;
+        int j = 0;
+        while (j < _digit.length) {
+            int d = _digit[j] + _dir[j];
+            if (d >= 0 && d < _size) {
+                break;
+            }
+            _dir[j] = -_dir[j];
+            j += 1;
+        }
+        if (j == _digit.length) {
+            _order += 1;
+            setRotors();
+            return NEW_ROTORS;
+        }
+        _digit[j] += _dir[j];
+        int slot = slot(j);
+        if (j < _posnDigits) {
+            _positions += _dir[j] * _weight[j];
+            _machine.rotor(slot).set(_digit[j]);
+            return slot;
+        } else {
+            _rings += _dir[j] * _weight[j];
+            _machine.rotor(slot).setRing(_digit[j]);
+            return -slot;
+        }
+    }
+
+    /** Return the current position of the rotor in SLOT. */
+    int position(int slot) {
+        return _digit[_numRotors - 1 - slot];
+    }
+
+    /** Return the current ring setting of the rotor in SLOT. */
+    int ring(int slot) {
+        int j = _posnDigits + _numRotors - 1 - slot;
+        return j < _digit.length ? _digit[j] : 0;
+    }
+
+    /** Return the slot of the rotor whose position or ring setting is
+     *  digit J. */
+    private int slot(int j) {
+        return _numRotors - 1 - (j < _posnDigits ? j : j - _posnDigits);
+    }
+
+    /** Put the current choice of rotors into my machine, with the
+     *  current positions and ring settings. */
+    private void setRotors() {
+        _machine.insertRotors(_keyspace.order(_order));
+        _machine.setPlugboard(new Permutation("", _machine.alphabet()));
+        for (int slot = 1; slot < _numRotors; slot += 1) {
+            _machine.rotor(slot).set(position(slot));
+            _machine.rotor(slot).setRing(ring(slot));
+        }
+    }
+
+    /** Returned by next when the rotors were replaced. */
+    static final int NEW_ROTORS = 0;
+
+    /** The keys walked. */
+    private final Keyspace _keyspace;
+    /** The machine set to each key. */
+    private final Machine _machine;
+    /** Number of slots, alphabet size, and number of digits that are
+     *  rotor positions. */
+    private final int _numRotors, _size, _posnDigits;
+    /** The current digits: positions, then ring settings. */
+    private final int[] _digit;
+    /** The direction (1 or -1) in which each digit moves next. */
+    private final int[] _dir;
+    /** The weight of each digit in the keyspace's position or ring
+     *  number. */
+    private final long[] _weight;
+    /** The rank of the current key. */
+    private long _rank;
+    /** The current choice of rotors. */
+    private int _order;
+    /** The current positions and ring settings, as numbered by the
+     *  keyspace. */
+    private long _positions, _rings;
+}
@@ -0,0 +1,223 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** A fixed-length table of small non-negative integers, stored in the
+ *  narrowest primitive array that can hold every value below a given
+ *  bound: byte[] for bounds up to 256, short[] up to 65536, and int[]
+ *  otherwise.  Keeping alphabet-sized tables this narrow lets the wirings
+ *  of a whole machine stay cache-resident even for large alphabets.
+ *  @author yuxinye
+ */
+abstract class IndexTable {
+
+    /** Largest bound representable in a byte-wide table. */
+    static final int BYTE_BOUND = 1 << 8;
+    /** Largest bound representable in a short-wide table. */
+    static final int SHORT_BOUND = 1 << 16;
+
+    /** Return a new table of LENGTH zero entries, each of which will hold
+     *  a value in the range 0 .. BOUND-1. */
+    static IndexTable create(int length, int bound) {
+        if (length < 0 || bound < 0) {
+            throw error("Invalid table dimensions");
+        }
+        if (bound <= BYTE_BOUND) {
+            return new ByteTable(length);
+        } else if (bound <= SHORT_BOUND) {
+            return new ShortTable(length);
+        } else {
+            return new IntTable(length);
+        }
+    }
+
+    /** Return a new table holding the identity mapping on 0 .. LENGTH-1. */
+    static IndexTable identity(int length) {
+        IndexTable result = create(length, length);
+        for (int k = 0; k < length; k += 1) {
+            result.set(k, k);
+        }
+        return result;
+    }
+
+    /** Return a table of LENGTH entries, each holding a value in the
+     *  range 0 .. BOUND-1, stored in BUFFER from its position 0 onward,
+     *  as narrow as create would make them, in BUFFER's byte order.
+     *  BUFFER may be a read-only or memory-mapped buffer, in which case
+     *  the table's entries live outside the heap. */
+    static IndexTable wrap(ByteBuffer buffer, int length, int bound) {
+        if (length < 0 || bound < 0) {
+            throw error("Invalid table dimensions");
+        }
+        int width = width(bound);
+        if ((long) length * width > buffer.capacity()) {
+            throw error("Buffer too small for table");
+        }
+        return new BufferTable(buffer, length, width);
+    }
+
+    /** Return the number of bytes used by each entry of a table whose
+     *  values are below BOUND. */
+    static int width(int bound) {
+        return bound <= BYTE_BOUND ? Byte.BYTES
+            : bound <= SHORT_BOUND ? Short.BYTES : Integer.BYTES;
+    }
+
+    /** Return entry K. */
+    abstract int get(int k);
+
+    /** Set entry K to V, which must be below my bound. */
+    abstract void set(int k, int v);
+
+    /** Return my number of entries. */
+    abstract int length();
+
+    /** Return the number of bytes used by each entry. */
+    abstract int width();
+
+    /** A table stored as unsigned bytes. */
+    private static final class ByteTable extends IndexTable {
+        /** A table of LENGTH entries. */
+        ByteTable(int length) {
+            _data = new byte[length];
+        }
+
+        @Override
+        int get(int k) {
+            return _data[k] & 0xff;
+        }
+
+        @Override
+        void set(int k, int v) {
+            _data[k] = (byte) v;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        @Override
+        int width() {
+            return Byte.BYTES;
+        }
+
+        /** My entries. */
+        private final byte[] _data;
+    }
+
+    /** A table stored as unsigned shorts. */
+    private static final class ShortTable extends IndexTable {
+        /** A table of LENGTH entries. */
+        ShortTable(int length) {
+            _data = new short[length];
+        }
+
+        @Override
+        int get(int k) {
+            return _data[k] & 0xffff;
+        }
+
+        @Override
+        void set(int k, int v) {
+            _data[k] = (short) v;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        @Override
+        int width() {
+            return Short.BYTES;
+        }
+
+        /** My entries. */
+        private final short[] _data;
+    }
+
+    /** A table stored as ints. */
+    private static final class IntTable extends IndexTable {
+        /** A table of LENGTH entries. */
+        IntTable(int length) {
+            _data = new int[length];
+        }
+
+        @Override
+        int get(int k) {
+            return _data[k];
+        }
+
+        @Override
+        void set(int k, int v) {
+            _data[k] = v;
+        }
+
+        @Override
+        int length() {
+            return _data.length;
+        }
+
+        @Override
+        int width() {
+            return Integer.BYTES;
+        }
+
+        /** My entries. */
+        private final int[] _data;
+    }
+
+    /** A table stored in a ByteBuffer. */
+    private static final class BufferTable extends IndexTable {
+        /** A table of LENGTH entries of WIDTH bytes in BUFFER. */
+        BufferTable(ByteBuffer buffer, int length, int width) {
+            _buffer = buffer;
+            _length = length;
+            _width = width;
+        }
+
+        @Override
+        int get(int k) {
+            switch (_width) {
+            case Byte.BYTES:
+                return _buffer.get(k) & 0xff;
+            case Short.BYTES:
+                return _buffer.getShort(k * Short.BYTES) & 0xffff;
+            default:
+                return _buffer.getInt(k * Integer.BYTES);
+            }
+        }
+
+        @Override
+        void set(int k, int v) {
+            switch (_width) {
+            case Byte.BYTES:
+                _buffer.put(k, (byte) v);
+                break;
+            case Short.BYTES:
+                _buffer.putShort(k * Short.BYTES, (short) v);
+                break;
+            default:
+                _buffer.putInt(k * Integer.BYTES, v);
+            }
+        }
+
+        @Override
+        int length() {
+            return _length;
+        }
+
+        @Override
+        int width() {
+            return _width;
+        }
+
+        /** My entries. */
+        private final ByteBuffer _buffer;
+        /** Number of entries, and the bytes in each. */
+        private final int _length, _width;
+    }
+}
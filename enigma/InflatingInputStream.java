@@ -0,0 +1,172 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.zip.GZIPInputStream;
+
+/** An input stream that decompresses a gzip stream, which may consist of
+ *  several members, on a thread of its own, so that inflating overlaps
+ *  with whatever the reader does with the data.  The inflater fills
+ *  chunks that circulate through a fixed pool, going to the reader
+ *  through one ring buffer and back through another, as the batches of
+ *  a PipelinedProcessor do.
+ *  @author yuxinye
+ */
+class InflatingInputStream extends InputStream {
+
+    /** Return IN, or, if its contents start as gzip data does, a stream
+     *  of their decompressed contents. */
+    static InputStream open(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        int b0 = buffered.read(), b1 = buffered.read();
+        buffered.reset();
+        if (b0 == (GZIPInputStream.GZIP_MAGIC & 0xff)
+            && b1 == GZIPInputStream.GZIP_MAGIC >>> 8) {
+            return new InflatingInputStream(buffered);
+        }
+        return buffered;
+    }
+
+    /** A stream of the decompressed contents of IN, which holds gzip
+     *  data. */
+    InflatingInputStream(InputStream in) {
+        _in = in;
+        for (int i = 0; i < POOL_SIZE; i += 1) {
+            put(_empty, new Chunk());
+        }
+        _inflater = new Thread(this::inflate, "enigma-inflater");
+        _inflater.setDaemon(true);
+        _inflater.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        int result = _chunk._data[_posn] & 0xff;
+        _posn += 1;
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        } else if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, _chunk._length - _posn);
+        System.arraycopy(_chunk._data, _posn, b, off, n);
+        _posn += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _inflater.interrupt();
+        _in.close();
+    }
+
+    /** Make sure that _chunk has unread data, taking the next chunk from
+     *  the inflater if need be.  Return false at the end of the data, and
+     *  throw the error that ended it, if any. */
+    private boolean fill() throws IOException {
+        try {
+            while (_chunk == null || _posn == _chunk._length) {
+                if (_chunk != null) {
+                    if (_chunk._last) {
+                        if (_chunk._error != null) {
+                            throw _chunk._error;
+                        }
+                        return false;
+                    }
+                    _empty.put(_chunk);
+                }
+                _chunk = _full.take();
+                _posn = 0;
+            }
+            return true;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /** The inflater thread: fill chunks with decompressed data until the
+     *  end of my input or an error. */
+    private void inflate() {
+        try {
+            GZIPInputStream in = null;
+            boolean last = false;
+            while (!last) {
+                Chunk chunk = _empty.take();
+                chunk._length = 0;
+                try {
+                    if (in == null) {
+                        in = new GZIPInputStream(_in, CHUNK_SIZE);
+                    }
+                    while (chunk._length < CHUNK_SIZE && !last) {
+                        int n = in.read(chunk._data, chunk._length,
+                                        CHUNK_SIZE - chunk._length);
+                        if (n < 0) {
+                            last = true;
+                        } else {
+                            chunk._length += n;
+                        }
+                    }
+                } catch (IOException excp) {
+                    chunk._error = excp;
+                    last = true;
+                }
+                chunk._last = last;
+                _full.put(chunk);
+            }
+        } catch (InterruptedException excp) {
+            /* The stream was closed. */
+        }
+    }
+
+    /** Put ITEM into RING, which must have room. */
+    private static <T> void put(RingBuffer<T> ring, T item) {
+        try {
+            ring.put(item);
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** A reusable chunk of decompressed data. */
+    private static class Chunk {
+        /** The data, of which the first _length bytes are valid. */
+        private final byte[] _data = new byte[CHUNK_SIZE];
+        /** Number of valid bytes. */
+        private int _length;
+        /** True iff this is the last chunk. */
+        private boolean _last;
+        /** The error that ended the data, or null. */
+        private IOException _error;
+    }
+
+    /** Number of bytes in a chunk. */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /** Number of chunks, and the capacity of each ring. */
+    static final int POOL_SIZE = 8;
+
+    /** The compressed data. */
+    private final InputStream _in;
+    /** The thread inflating _in. */
+    private final Thread _inflater;
+    /** Chunks of data waiting to be read. */
+    private final RingBuffer<Chunk> _full = new RingBuffer<>(POOL_SIZE);
+    /** Chunks waiting to be refilled. */
+    private final RingBuffer<Chunk> _empty = new RingBuffer<>(POOL_SIZE);
+    /** The chunk being read, or null before the first. */
+    private Chunk _chunk;
+    /** Index of the next unread byte of _chunk. */
+    private int _posn;
+}
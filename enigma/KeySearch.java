@@ -0,0 +1,878 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the keys (see Keyspace) under which a ciphertext deciphers to
+ *  the plaintexts with the best n-gram scores, by trying them all.
+ *
+ *  The keyspace is walked in a Gray-code order (see GrayWalk), in which
+ *  each key differs from the last in one rotor, and the walk is divided
+ *  into units of consecutive steps, which a coordinator hands out to
+ *  workers, merging the best few keys each
+ *  finds.  Workers are either threads of the coordinator's process or
+ *  separate processes (running this class with --worker), which receive
+ *  units on their standard input and reply on their standard output,
+ *  one line each way per unit.  If a worker process dies, its unit is
+ *  handed to another.
+ *
+ *  The coordinator can append each reply, as it arrives, to a checkpoint
+ *  file.  Running the same search with the same checkpoint skips the
+ *  units recorded there, so a search that is stopped or killed resumes
+ *  where it left off.  Ties between scores are broken in favor of lower
+ *  keys, so the result does not depend on how units were distributed or
+ *  on how often the search was interrupted.
+ *  @author yuxinye
+ */
+public final class KeySearch {
+
+    /** Search for keys, as specified by ARGS: options, followed by a
+     *  configuration file, an n-gram table (see NgramTable), and a file
+     *  containing the ciphertext.  Prints the best keys found, as
+     *  setting lines preceded by their scores, best first, followed by
+     *  the decryption under the best key.
+     *
+     *  Options:
+     *    --workers=N     Search in N worker processes (default: in
+     *                    threads of this process).
+     *    --threads=N     Number of threads when searching in this
+     *                    process (default: one per processor).
+     *    --unit=N        Number of keys in a unit (default 65536).
+     *    --top=K         Keep the best K keys (default 10).
+     *    --rings=R       Also vary the ring settings of the rightmost R
+     *                    rotors (default 0).
+     *    --canonical     Skip keys that decipher the ciphertext exactly
+     *                    as a lower-numbered key does (see
+     *                    Canonicalizer), which, with --rings, shrinks
+     *                    the search by up to the alphabet size for
+     *                    each rotor but the rightmost.
+     *    --checkpoint=F  Record progress in F, and resume from it.
+     *    --limit=N       Stop after searching N more units.
+     *    --worker        Act as a worker process (used internally). */
+    public static void main(String... args) {
+        try {
+            int workers = 0;
+            int threads = Runtime.getRuntime().availableProcessors();
+            long unit = DEFAULT_UNIT, limit = Long.MAX_VALUE;
+            int top = DEFAULT_TOP, rings = 0;
+            Path checkpoint = null;
+            boolean worker = false, canonical = false;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k],
+                    value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--workers=")) {
+                    workers = Integer.parseInt(value);
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(value);
+                } else if (arg.startsWith("--unit=")) {
+                    unit = Long.parseLong(value);
+                } else if (arg.startsWith("--top=")) {
+                    top = Integer.parseInt(value);
+                } else if (arg.startsWith("--rings=")) {
+                    rings = Integer.parseInt(value);
+                } else if (arg.startsWith("--checkpoint=")) {
+                    checkpoint = Paths.get(value);
+                } else if (arg.startsWith("--limit=")) {
+                    limit = Long.parseLong(value);
+                } else if (arg.equals("--canonical")) {
+                    canonical = true;
+                } else if (arg.equals("--worker")) {
+                    worker = true;
+                } else {
+                    throw error("unknown option: %s", arg);
+                }
+            }
+            if (args.length - k != 3 || workers < 0 || threads <= 0
+                || unit <= 0 || top <= 0 || limit < 0) {
+                throw error("usage: java enigma.KeySearch [OPTIONS] CONFIG "
+                            + "TABLE CIPHERTEXT");
+            }
+            Config config = new ConfigCache().open(args[k]).config();
+            NgramTable table = NgramTable.map(Paths.get(args[k + 1]));
+            String text = new String(
+                Files.readAllBytes(Paths.get(args[k + 2])), Main.CHARSET);
+            KeySearch search =
+                new KeySearch(new Keyspace(config, rings), table,
+                              indices(text, config.alphabet()), top);
+            if (canonical) {
+                search.skipEquivalentKeys();
+            }
+            if (worker) {
+                search.serve(System.in, System.out);
+                return;
+            }
+            List<Worker> pool = new ArrayList<>();
+            if (workers == 0) {
+                for (int i = 0; i < threads; i += 1) {
+                    pool.add(search.new LocalWorker());
+                }
+            } else {
+                List<String> command =
+                    workerCommand(Arrays.copyOfRange(args, k, args.length),
+                                  rings, top, canonical);
+                for (int i = 0; i < workers; i += 1) {
+                    pool.add(new ProcessWorker(command));
+                }
+            }
+            Best best = search.run(pool, unit, checkpoint, limit);
+            search.report(best, System.out);
+            if (search._remaining > 0) {
+                System.err.printf("%d of %d units remain%n",
+                                  search._remaining, search._units);
+            }
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: options need integer values");
+            System.exit(1);
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the indices in ALPHABET of the characters of TEXT,
+     *  ignoring whitespace. */
+    static int[] indices(String text, Alphabet alphabet) {
+        return text.codePoints().filter(cp -> !Engine.isSpace(cp))
+            .map(alphabet::toIndex).toArray();
+    }
+
+    /** Return the command that starts a worker process for the
+     *  configuration, table, and ciphertext files named by FILES,
+     *  varying RINGS ring settings and keeping the best TOP keys, and
+     *  skipping equivalent keys iff CANONICAL. */
+    static List<String> workerCommand(String[] files, int rings, int top,
+                                      boolean canonical) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin",
+                              "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(KeySearch.class.getName());
+        command.add("--worker");
+        command.add("--rings=" + rings);
+        command.add("--top=" + top);
+        if (canonical) {
+            command.add("--canonical");
+        }
+        command.addAll(Arrays.asList(files));
+        return command;
+    }
+
+    /** A search of KEYSPACE for the TOP keys under which CIPHERTEXT
+     *  (character indices) has the plaintexts with the best scores
+     *  according to TABLE. */
+    KeySearch(Keyspace keyspace, NgramTable table, int[] ciphertext,
+              int top) {
+        if (!keyspace.config().alphabet().toString()
+            .equals(table.alphabet().toString())) {
+            throw error("n-gram table is for a different alphabet");
+        }
+        _keyspace = keyspace;
+        _table = table;
+        _ciphertext = ciphertext.clone();
+        _top = top;
+    }
+
+    /** Skip the keys that decipher my ciphertext exactly as keys with
+     *  lower numbers do.  A key's score is then not offered when an
+     *  equivalent key's is, so the best keys found are the lowest of
+     *  their classes. */
+    void skipEquivalentKeys() {
+        _canonicalizer = new Canonicalizer(_keyspace, _ciphertext.length);
+    }
+
+    /** Return the keyspace I search. */
+    Keyspace keyspace() {
+        return _keyspace;
+    }
+
+    /** Return the best of the keys with ranks START .. END-1 in the
+     *  Gray-code walk through my keyspace (see GrayWalk), searching with
+     *  SEARCHER, which must be used by only one thread at a time. */
+    Best search(Searcher searcher, long start, long end) {
+        Best best = new Best(_top);
+        searcher.search(start, end, best);
+        return best;
+    }
+
+    /** Search the units of UNIT keys each with WORKERS, which are closed
+     *  when all units are searched, LIMIT more have been searched, or
+     *  every worker fails.  Returns the best keys found in this run and
+     *  recorded in CHECKPOINT (if not null). */
+    Best run(List<Worker> workers, long unit, Path checkpoint, long limit) {
+        _units = (_keyspace.size() + unit - 1) / unit;
+        if (_units > Integer.MAX_VALUE) {
+            throw error("too many units; make them larger");
+        }
+        Best best = new Best(_top);
+        BitSet done = new BitSet();
+        Checkpoint log = null;
+        ExecutorService pool = Executors.newFixedThreadPool(workers.size());
+        try {
+            if (checkpoint != null) {
+                log = new Checkpoint(checkpoint, header(unit), best, done);
+            }
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int u = done.nextClearBit(0); u < _units;
+                 u = done.nextClearBit(u + 1)) {
+                queue.add(u);
+            }
+            Dispatch dispatch =
+                new Dispatch(queue, unit, limit, best, log);
+            List<Future<?>> results = new ArrayList<>();
+            for (Worker worker : workers) {
+                results.add(pool.submit(() -> dispatch.drive(worker)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            _remaining = queue.size();
+            if (_remaining > 0 && dispatch._searched < limit) {
+                throw error("all workers failed");
+            }
+            return best;
+        } catch (IOException excp) {
+            throw error("could not open checkpoint %s: %s", checkpoint,
+                        excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+            for (Worker worker : workers) {
+                worker.close();
+            }
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+
+    /** Return the first line of a checkpoint for units of UNIT keys,
+     *  which identifies the search. */
+    private String header(long unit) {
+        return String.format("%s %d %d %d %d %d %x%s", CHECKPOINT_MAGIC,
+                             _keyspace.size(), unit, _keyspace.rings(),
+                             _top, _ciphertext.length,
+                             Arrays.hashCode(_ciphertext),
+                             _canonicalizer == null ? "" : " canonical");
+    }
+
+    /** Print BEST on OUT, followed by the decryption under the best key,
+     *  if any. */
+    void report(Best best, PrintStream out) {
+        List<Candidate> candidates = best.candidates();
+        for (Candidate c : candidates) {
+            out.printf("%.4f %s%n", c._score, _keyspace.setting(c._key));
+        }
+        if (!candidates.isEmpty()) {
+            Searcher searcher = new Searcher();
+            int[] text = searcher.decipher(candidates.get(0)._key);
+            StringBuilder plain = new StringBuilder();
+            for (int x : text) {
+                plain.appendCodePoint(
+                    _keyspace.config().alphabet().toCodePoint(x));
+            }
+            Main.printMessageLine(plain.toString(), out);
+        }
+    }
+
+    /** Act as a worker process: for each line "UNIT START END" read
+     *  from IN, print on OUT the reply line (as formatted by reply) for
+     *  the best keys with ranks START .. END-1, until the end of IN.
+     *  Prints an error line and stops if a request is malformed. */
+    void serve(InputStream in, PrintStream out) throws IOException {
+        BufferedReader requests = new BufferedReader(
+            new InputStreamReader(in, Charset.forName(Main.CHARSET)));
+        Searcher searcher = new Searcher();
+        String line;
+        while ((line = requests.readLine()) != null) {
+            String reply;
+            try {
+                String[] fields = line.trim().split(" ");
+                reply = reply(Integer.parseInt(fields[0]),
+                              search(searcher, Long.parseLong(fields[1]),
+                                     Long.parseLong(fields[2])));
+            } catch (RuntimeException excp) {
+                out.printf("%s %s%n", ERROR_REPLY, excp.getMessage());
+                out.flush();
+                return;
+            }
+            out.println(reply);
+            out.flush();
+        }
+    }
+
+    /** Return the reply reporting BEST as the result of unit UNIT: the
+     *  unit number followed by the score and key of each candidate.
+     *  Scores are printed so that they are read back exactly. */
+    static String reply(int unit, Best best) {
+        StringBuilder result = new StringBuilder();
+        result.append(unit);
+        for (Candidate c : best.candidates()) {
+            result.append(' ').append(c._score).append(' ').append(c._key);
+        }
+        return result.toString();
+    }
+
+    /** Add the candidates in the reply REPLY to BEST and return its unit
+     *  number. */
+    static int parseReply(String reply, Best best) {
+        try {
+            String[] fields = reply.trim().split(" ");
+            if (fields.length % 2 != 1 || fields[0].equals(ERROR_REPLY)) {
+                throw error("bad reply from worker: %s", reply);
+            }
+            for (int i = 1; i < fields.length; i += 2) {
+                best.offer(Double.parseDouble(fields[i]),
+                           Long.parseLong(fields[i + 1]));
+            }
+            return Integer.parseInt(fields[0]);
+        } catch (NumberFormatException excp) {
+            throw error("bad reply from worker: %s", reply);
+        }
+    }
+
+    /** Deciphers my ciphertext under successive keys.  Each thread needs
+     *  its own.
+     *
+     *  Searching walks the keyspace with a GrayWalk and enciphers with
+     *  flat tables of the rotors' wirings, like those of TableEngine.
+     *  The rotors that never move (the reflector and the fixed rotors to
+     *  its right) are combined into a single table, which is rebuilt only
+     *  when the walk changes one of them, which it does rarely, since
+     *  their positions are its most significant digits. */
+    class Searcher {
+        /** A searcher with its own machines. */
+        Searcher() {
+            _machine = _keyspace.config().newMachine();
+            _setter = _keyspace.new Setter(_machine);
+            _engine = new TableEngine(_machine);
+            _text = new int[_ciphertext.length];
+            _walkMachine = _keyspace.config().newMachine();
+            _numRotors = _walkMachine.numRotors();
+            _size = _walkMachine.alphabet().size();
+            _firstMoving = _numRotors - _walkMachine.numPawls();
+            _forward = new int[_numRotors * _size];
+            _backward = new int[_numRotors * _size];
+            _notches = new boolean[_numRotors * _size];
+            _reflection = new int[_size];
+            _posn = new int[_numRotors];
+            _ring = new int[_numRotors];
+            _shift = new int[_numRotors];
+        }
+
+        /** Offer to BEST each key with rank START .. END-1 in the Gray
+         *  walk through my keyspace, with the score of its decryption. */
+        void search(long start, long end, Best best) {
+            if (start >= end) {
+                return;
+            }
+            GrayWalk walk = new GrayWalk(_keyspace, _walkMachine, start);
+            compile(walk);
+            Canonicalizer.Table representatives = representatives();
+            while (true) {
+                long key = walk.key();
+                if (representatives == null
+                    || representatives.contains(key)) {
+                    best.offer(_table.score(decipher(walk), _text.length),
+                               key);
+                }
+                if (walk.rank() + 1 >= end) {
+                    return;
+                }
+                int changed = walk.next();
+                if (changed == GrayWalk.NEW_ROTORS) {
+                    compile(walk);
+                } else {
+                    int slot = Math.abs(changed);
+                    _ring[slot] = walk.ring(slot);
+                    if (slot < _firstMoving) {
+                        reflect(walk);
+                    }
+                }
+            }
+        }
+
+        /** Return my table of the representatives of the classes of
+         *  keys that decipher my ciphertext in the same way, or null if
+         *  I am not to skip equivalent keys. */
+        private Canonicalizer.Table representatives() {
+            Canonicalizer canonicalizer = _canonicalizer;
+            if (canonicalizer == null) {
+                return null;
+            } else if (canonicalizer != _tableCanonicalizer) {
+                _representatives = canonicalizer.new Table();
+                _tableCanonicalizer = canonicalizer;
+            }
+            return _representatives;
+        }
+
+        /** Copy the wirings of the rotors in my walk's machine into my
+         *  tables, and set their ring settings and positions to those of
+         *  WALK's current key. */
+        private void compile(GrayWalk walk) {
+            for (int i = 0; i < _numRotors; i += 1) {
+                Rotor rotor = _walkMachine.rotor(i);
+                Permutation perm = rotor.permutation();
+                for (int x = 0; x < _size; x += 1) {
+                    _forward[i * _size + x] = perm.permute(x);
+                    _backward[i * _size + x] = perm.invert(x);
+                    _notches[i * _size + x] = rotor.notchAt(x);
+                }
+                _ring[i] = i == 0 ? 0 : walk.ring(i);
+            }
+            reflect(walk);
+        }
+
+        /** Rebuild _reflection, the combined wiring of the rotors that
+         *  do not move, at WALK's current positions. */
+        private void reflect(GrayWalk walk) {
+            for (int i = 1; i < _firstMoving; i += 1) {
+                _posn[i] = walk.position(i);
+                setShift(i);
+            }
+            for (int x = 0; x < _size; x += 1) {
+                int c = x;
+                for (int i = _firstMoving - 1; i >= 0; i -= 1) {
+                    c = pass(_forward, i, c);
+                }
+                for (int i = 1; i < _firstMoving; i += 1) {
+                    c = pass(_backward, i, c);
+                }
+                _reflection[x] = c;
+            }
+        }
+
+        /** Return the decryption of my ciphertext under WALK's current
+         *  key.  The result is overwritten by the next call. */
+        private int[] decipher(GrayWalk walk) {
+            int last = _numRotors - 1, first = _firstMoving;
+            for (int i = first; i <= last; i += 1) {
+                _posn[i] = walk.position(i);
+                setShift(i);
+            }
+            int[] text = _text, ciphertext = _ciphertext;
+            for (int k = 0; k < text.length; k += 1) {
+                for (int i = first; i <= last; i += 1) {
+                    if (i == last) {
+                        advance(i);
+                    } else if (_notches[(i + 1) * _size + _posn[i + 1]]) {
+                        advance(i);
+                        advance(i + 1);
+                        i += 1;
+                    }
+                }
+                int c = ciphertext[k];
+                for (int i = last; i >= first; i -= 1) {
+                    c = pass(_forward, i, c);
+                }
+                c = _reflection[c];
+                for (int i = first; i <= last; i += 1) {
+                    c = pass(_backward, i, c);
+                }
+                text[k] = c;
+            }
+            return text;
+        }
+
+        /** Advance the rotor in slot I one position. */
+        private void advance(int i) {
+            _posn[i] = _posn[i] + 1 == _size ? 0 : _posn[i] + 1;
+            setShift(i);
+        }
+
+        /** Update the offset of slot I to its position and ring
+         *  setting. */
+        private void setShift(int i) {
+            int d = _posn[i] - _ring[i];
+            _shift[i] = d < 0 ? d + _size : d;
+        }
+
+        /** Return the result of passing C through the wiring of slot I
+         *  in TABLE (_forward or _backward) at the slot's current
+         *  offset. */
+        private int pass(int[] table, int i, int c) {
+            int d = _shift[i];
+            int x = c + d;
+            int y = table[i * _size + (x >= _size ? x - _size : x)] - d;
+            return y < 0 ? y + _size : y;
+        }
+
+        /** Return the decryption of my ciphertext under KEY.  The result
+         *  is overwritten by the next call. */
+        int[] decipher(long key) {
+            if (_setter.set(key)) {
+                _engine.reset();
+            }
+            System.arraycopy(_ciphertext, 0, _text, 0, _text.length);
+            _engine.convert(_text, _text.length);
+            return _text;
+        }
+
+        /** Return the score of the decryption under KEY. */
+        double score(long key) {
+            return _table.score(decipher(key), _text.length);
+        }
+
+        /** My machine for single keys. */
+        private final Machine _machine;
+        /** Sets my machine to keys. */
+        private final Keyspace.Setter _setter;
+        /** Deciphers with my machine. */
+        private final Engine _engine;
+        /** The decryption. */
+        private final int[] _text;
+        /** My machine for walks. */
+        private final Machine _walkMachine;
+        /** Number of slots, alphabet size, and first slot whose rotor
+         *  moves. */
+        private final int _numRotors, _size, _firstMoving;
+        /** Forward and backward wiring of each slot, _size entries
+         *  apiece. */
+        private final int[] _forward, _backward;
+        /** Whether each slot has a notch at each position. */
+        private final boolean[] _notches;
+        /** The combined wiring of the slots before _firstMoving. */
+        private final int[] _reflection;
+        /** Position, ring setting, and their difference for each slot. */
+        private final int[] _posn, _ring, _shift;
+        /** The representatives of _tableCanonicalizer's classes. */
+        private Canonicalizer.Table _representatives;
+        /** The canonicalizer of _representatives, or null if none. */
+        private Canonicalizer _tableCanonicalizer;
+    }
+
+    /** Searches units on behalf of the coordinator. */
+    interface Worker {
+        /** Return the reply line (as formatted by reply) for the search
+         *  of the keys with ranks START .. END-1 as unit UNIT.  Throws
+         *  IOException if the worker has failed, so the unit must be
+         *  searched elsewhere. */
+        String search(int unit, long start, long end) throws IOException;
+
+        /** Release my resources. */
+        void close();
+    }
+
+    /** A worker that searches in the coordinator's process. */
+    class LocalWorker implements Worker {
+        @Override
+        public String search(int unit, long start, long end) {
+            return reply(unit, KeySearch.this.search(_searcher, start, end));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Deciphers under my keys. */
+        private final Searcher _searcher = new Searcher();
+    }
+
+    /** A worker that searches in a separate process. */
+    static class ProcessWorker implements Worker {
+        /** A worker process started by COMMAND. */
+        ProcessWorker(List<String> command) throws IOException {
+            _process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            _requests = new PrintStream(_process.getOutputStream(), true,
+                                        Main.CHARSET);
+            _replies = new BufferedReader(
+                new InputStreamReader(_process.getInputStream(),
+                                      Charset.forName(Main.CHARSET)));
+        }
+
+        @Override
+        public String search(int unit, long start, long end)
+            throws IOException {
+            _requests.printf("%d %d %d%n", unit, start, end);
+            if (_requests.checkError()) {
+                throw new IOException("worker process stopped");
+            }
+            String reply = _replies.readLine();
+            if (reply == null) {
+                throw new IOException("worker process stopped");
+            }
+            return reply;
+        }
+
+        @Override
+        public void close() {
+            _requests.close();
+            try {
+                _replies.close();
+            } catch (IOException excp) {
+                /* Ignore: the process is going anyway. */
+            }
+            _process.destroy();
+        }
+
+        /** Return my process. */
+        Process process() {
+            return _process;
+        }
+
+        /** The worker process. */
+        private final Process _process;
+        /** Its standard input. */
+        private final PrintStream _requests;
+        /** Its standard output. */
+        private final BufferedReader _replies;
+    }
+
+    /** The state shared by the threads that drive the workers of one
+     *  run. */
+    private class Dispatch {
+        /** Hand out the units in QUEUE, of UNIT keys each, until LIMIT
+         *  have been searched, merging the results into BEST and
+         *  recording them in LOG (unless null). */
+        Dispatch(ArrayDeque<Integer> queue, long unit, long limit,
+                 Best best, Checkpoint log) {
+            _queue = queue;
+            _unit = unit;
+            _limit = limit;
+            _best = best;
+            _log = log;
+        }
+
+        /** Hand units to WORKER until there are none left, or it
+         *  fails. */
+        void drive(Worker worker) {
+            while (true) {
+                int u;
+                synchronized (this) {
+                    if (_queue.isEmpty() || _searched + _busy >= _limit) {
+                        return;
+                    }
+                    u = _queue.remove();
+                    _busy += 1;
+                }
+                long start = u * _unit,
+                    end = Math.min(start + _unit, _keyspace.size());
+                String reply;
+                try {
+                    reply = worker.search(u, start, end);
+                } catch (IOException excp) {
+                    synchronized (this) {
+                        _queue.addFirst(u);
+                        _busy -= 1;
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    _busy -= 1;
+                    if (parseReply(reply, _best) != u) {
+                        throw error("worker replied for the wrong unit");
+                    }
+                    if (_log != null) {
+                        _log.append(reply);
+                    }
+                    _searched += 1;
+                }
+            }
+        }
+
+        /** Units waiting to be searched. */
+        private final ArrayDeque<Integer> _queue;
+        /** Keys per unit. */
+        private final long _unit;
+        /** Most units to search. */
+        private final long _limit;
+        /** The best keys found so far. */
+        private final Best _best;
+        /** The checkpoint, or null. */
+        private final Checkpoint _log;
+        /** Numbers of units searched and being searched. */
+        private long _searched, _busy;
+    }
+
+    /** A checkpoint file: a header line identifying the search, followed
+     *  by the replies for the units searched, in the order they
+     *  finished. */
+    private static class Checkpoint {
+        /** Open the checkpoint FILE of the search identified by HEADER,
+         *  creating it if necessary.  Adds the candidates it records to
+         *  BEST, and sets the bits of DONE for the units it records.  A
+         *  final line left incomplete when a previous search was killed
+         *  is discarded. */
+        Checkpoint(Path file, String header, Best best, BitSet done)
+            throws IOException {
+            byte[] contents =
+                Files.exists(file) ? Files.readAllBytes(file) : new byte[0];
+            String text = new String(contents, Main.CHARSET);
+            int complete = text.lastIndexOf('\n') + 1;
+            String[] lines = text.substring(0, complete).split("\n");
+            if (complete == 0) {
+                text = header + "\n";
+                complete = 0;
+            } else if (!lines[0].equals(header)) {
+                throw error("%s is a checkpoint of a different search",
+                            file);
+            } else {
+                for (int i = 1; i < lines.length; i += 1) {
+                    done.set(parseReply(lines[i], best));
+                }
+                text = "";
+            }
+            _channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                        StandardOpenOption.WRITE);
+            _channel.truncate(complete);
+            _channel.position(complete);
+            write(text);
+        }
+
+        /** Record REPLY. */
+        void append(String reply) {
+            try {
+                write(reply + "\n");
+            } catch (IOException excp) {
+                throw error("could not write checkpoint: %s",
+                            excp.getMessage());
+            }
+        }
+
+        /** Write TEXT to the end of my file, and make sure it reaches the
+         *  disk. */
+        private void write(String text) throws IOException {
+            ByteBuffer bytes =
+                ByteBuffer.wrap(text.getBytes(Main.CHARSET));
+            while (bytes.hasRemaining()) {
+                _channel.write(bytes);
+            }
+            _channel.force(false);
+        }
+
+        /** Close my file. */
+        void close() {
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                /* Everything written was already forced. */
+            }
+        }
+
+        /** The file. */
+        private final FileChannel _channel;
+    }
+
+    /** A key and the score of the decryption under it. */
+    static class Candidate {
+        /** A candidate KEY with score SCORE. */
+        Candidate(double score, long key) {
+            _score = score;
+            _key = key;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return my key. */
+        long key() {
+            return _key;
+        }
+
+        /** The score. */
+        private final double _score;
+        /** The key. */
+        private final long _key;
+    }
+
+    /** Orders candidates from worst to best: by score, and among equal
+     *  scores, higher keys first. */
+    static final Comparator<Candidate> WORST_FIRST =
+        Comparator.comparingDouble(Candidate::score)
+        .thenComparing(Comparator.comparingLong(Candidate::key).reversed());
+
+    /** The best few candidates offered to it. */
+    static class Best {
+        /** A collection of the best K candidates. */
+        Best(int k) {
+            _k = k;
+            _heap = new PriorityQueue<>(k + 1, WORST_FIRST);
+        }
+
+        /** Consider the candidate KEY with score SCORE. */
+        void offer(double score, long key) {
+            if (_heap.size() == _k) {
+                Candidate worst = _heap.peek();
+                if (score < worst._score
+                    || score == worst._score && key >= worst._key) {
+                    return;
+                }
+                _heap.poll();
+            }
+            _heap.add(new Candidate(score, key));
+        }
+
+        /** Return my candidates, best first. */
+        List<Candidate> candidates() {
+            List<Candidate> result = new ArrayList<>(_heap);
+            result.sort(WORST_FIRST.reversed());
+            return result;
+        }
+
+        /** Number of candidates kept. */
+        private final int _k;
+        /** The candidates, worst first. */
+        private final PriorityQueue<Candidate> _heap;
+    }
+
+    /** Default number of keys in a unit. */
+    static final long DEFAULT_UNIT = 1 << 16;
+
+    /** Default number of best keys kept. */
+    static final int DEFAULT_TOP = 10;
+
+    /** First word of a checkpoint file. */
+    static final String CHECKPOINT_MAGIC = "enigma-key-search";
+
+    /** First word of a worker's reply reporting an error. */
+    static final String ERROR_REPLY = "error";
+
+    /** The keys searched. */
+    private final Keyspace _keyspace;
+    /** Scores plaintexts. */
+    private final NgramTable _table;
+    /** The ciphertext, as character indices. */
+    private final int[] _ciphertext;
+    /** Number of best keys kept. */
+    private final int _top;
+    /** Picks the keys searched from classes of equivalent keys, or null
+     *  if all keys are searched. */
+    private Canonicalizer _canonicalizer;
+    /** Numbers of units in the keyspace and of those not searched by the
+     *  last run. */
+    private long _units, _remaining;
+}
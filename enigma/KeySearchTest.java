@@ -0,0 +1,377 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Keyspace and KeySearch classes
+ *  and their helpers.
+ *  @author yuxinye
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** A three-slot, two-pawl configuration. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ 3 2\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n";
+
+    /** A four-slot, two-pawl configuration, with a fixed rotor. */
+    private static final String CONFIG4 =
+        CONFIG.replace(" 3 2\n", " 4 2\n")
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n";
+
+    /** Plaintext used both to train the n-gram table and as the
+     *  message. */
+    private static final String PLAIN =
+        "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD "
+        + "MADE OF SLIDING FOLDING ROSEWOOD NEATLY PUT IT ALL TOGETHER "
+        + "IN ITS CASE IT LAY COMPACTLY FOLDED INTO NEARLY NOTHING";
+
+    /** The key of the message. */
+    private static final String SETTING = "* B III I KD";
+
+    /** Return a new temporary file containing TEXT. */
+    private static Path tempFile(String text) throws IOException {
+        Path file = Files.createTempFile("search", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /** Return my configuration. */
+    private static Config config() {
+        return Config.read(new Tokenizer(CONFIG));
+    }
+
+    /** Return a search for the message's key, keeping TOP keys. */
+    private static KeySearch search(int top) throws IOException {
+        Path table = Files.createTempFile("ngrams", ".bin");
+        table.toFile().deleteOnExit();
+        NgramTable.write(table, 3, UPPER, PLAIN);
+        Machine machine = config().newMachine();
+        Main.setUp(machine, SETTING.substring(1));
+        int[] ciphertext = KeySearch.indices(machine.convert(
+            PLAIN.replace(" ", "")), UPPER);
+        return new KeySearch(new Keyspace(config(), 0),
+                             NgramTable.map(table), ciphertext, top);
+    }
+
+    /** Return THREADS local workers for SEARCH. */
+    private static List<KeySearch.Worker> local(KeySearch search,
+                                                int threads) {
+        List<KeySearch.Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i += 1) {
+            workers.add(search.new LocalWorker());
+        }
+        return workers;
+    }
+
+    /** Return the candidates of BEST as a string. */
+    private static String describe(KeySearch.Best best) {
+        return KeySearch.reply(0, best);
+    }
+
+    @Test
+    public void checkKeyspace() {
+        Keyspace keys = new Keyspace(config(), 0);
+        assertEquals(6 * 26 * 26, keys.size());
+        assertEquals(6, keys.orders());
+        assertEquals("* B I II AA", keys.setting(0));
+        assertEquals("* B I II AZ", keys.setting(25));
+        assertEquals("* B I II BA", keys.setting(26));
+        assertEquals("* B I III AA", keys.setting(676));
+
+        Keyspace ringed = new Keyspace(config(), 1);
+        assertEquals(6 * 26 * 26 * 26, ringed.size());
+        assertEquals("* B I II AA AB", ringed.setting(676));
+
+        Machine machine = config().newMachine();
+        Keyspace.Setter setter = ringed.new Setter(machine);
+        Random rand = new Random(5);
+        for (int i = 0; i < 200; i += 1) {
+            long key = (long) (rand.nextDouble() * ringed.size());
+            setter.set(key);
+            Machine expected = config().newMachine();
+            Main.setUp(expected, ringed.setting(key).substring(1));
+            assertEquals(ringed.setting(key), expected.convert(PLAIN
+                .replace(" ", "")), machine.convert(PLAIN.replace(" ", "")));
+        }
+    }
+
+    @Test
+    public void checkGrayWalk() {
+        Keyspace keys = new Keyspace(config(), 1);
+        Machine machine = config().newMachine();
+        GrayWalk walk = new GrayWalk(keys, machine, 0);
+        BitSet seen = new BitSet();
+        String last = null, lastRotors = null;
+        Random rand = new Random(9);
+        while (true) {
+            long key = walk.key();
+            assertFalse(seen.get((int) key));
+            seen.set((int) key);
+            String setting = keys.setting(key);
+            String[] fields = setting.split(" ");
+            String rotors = String.join(" ", Arrays.copyOf(fields, 4)),
+                digits = fields[4] + fields[5];
+            if (last != null && rotors.equals(lastRotors)) {
+                int diffs = 0;
+                for (int i = 0; i < digits.length(); i += 1) {
+                    if (digits.charAt(i) != last.charAt(i)) {
+                        diffs += 1;
+                        int d = Math.abs(digits.charAt(i) - last.charAt(i));
+                        assertEquals(1, d);
+                    }
+                }
+                assertEquals(1, diffs);
+            } else if (last != null) {
+                assertEquals(last, digits);
+            }
+            if (rand.nextInt(100) == 0) {
+                Machine expected = config().newMachine();
+                Main.setUp(expected, setting.substring(1));
+                assertEquals(expected.convert("ABCDEFGHIJ"),
+                             machine.convert("ABCDEFGHIJ"));
+                assertEquals(key,
+                             new GrayWalk(keys, config().newMachine(),
+                                          walk.rank()).key());
+                walk = new GrayWalk(keys, machine, walk.rank());
+            }
+            last = digits;
+            lastRotors = rotors;
+            if (!walk.hasNext()) {
+                break;
+            }
+            walk.next();
+        }
+        assertEquals(keys.size(), seen.cardinality());
+    }
+
+    @Test
+    public void checkGraySearch() throws IOException {
+        Path table = Files.createTempFile("ngrams", ".bin");
+        table.toFile().deleteOnExit();
+        NgramTable.write(table, 3, UPPER, PLAIN);
+        Config config = Config.read(new Tokenizer(CONFIG4));
+        int[] ciphertext = KeySearch.indices("QWERTYUIOPASDFGHJKLZXCVBNM"
+                                             + "QAZWSXEDCRFVTGB", UPPER);
+        for (int rings = 0; rings < 3; rings += 1) {
+            KeySearch search =
+                new KeySearch(new Keyspace(config, rings),
+                              NgramTable.map(table), ciphertext, 1500);
+            long perOrder = search.keyspace().size()
+                / search.keyspace().orders();
+            KeySearch.Searcher single = search.new Searcher();
+            for (long start : new long[] { 0, perOrder - 700 }) {
+                KeySearch.Best best = new KeySearch.Best(1500);
+                search.new Searcher().search(start, start + 1400, best);
+                assertEquals(1400, best.candidates().size());
+                for (KeySearch.Candidate c : best.candidates()) {
+                    assertEquals(search.keyspace().setting(c.key()),
+                                 single.score(c.key()), c.score(), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkCanonical() {
+        Config config = Config.read(new Tokenizer(CONFIG4));
+        Random rand = new Random(12);
+        for (int rings = 0; rings < 4; rings += 1) {
+            Keyspace keys = new Keyspace(config, rings);
+            int length = 1 + rand.nextInt(60);
+            Canonicalizer canon = new Canonicalizer(keys, length);
+            StringBuilder msg = new StringBuilder();
+            for (int i = 0; i < length; i += 1) {
+                msg.append(UPPER.toChar(rand.nextInt(26)));
+            }
+            for (int trial = 0; trial < 300; trial += 1) {
+                long key = (long) (rand.nextDouble() * keys.size());
+                long rep = canon.canonical(key);
+                assertTrue(rep <= key);
+                assertEquals(rep, canon.canonical(rep));
+                assertTrue(canon.isCanonical(rep));
+                if (rings == 0) {
+                    assertEquals(key, rep);
+                }
+                Machine a = config.newMachine(), b = config.newMachine();
+                Main.setUp(a, keys.setting(key).substring(1));
+                Main.setUp(b, keys.setting(rep).substring(1));
+                assertEquals(keys.setting(key) + " vs " + keys.setting(rep),
+                             a.convert(msg.toString()),
+                             b.convert(msg.toString()));
+            }
+        }
+    }
+
+    @Test
+    public void checkCanonicalTable() {
+        Config config = Config.read(new Tokenizer(CONFIG4));
+        Random rand = new Random(13);
+        for (int rings = 0; rings < 3; rings += 1) {
+            Keyspace keys = new Keyspace(config, rings);
+            Canonicalizer canon =
+                new Canonicalizer(keys, 1 + rand.nextInt(60));
+            Canonicalizer.Table table = canon.new Table();
+            int order = rand.nextInt(keys.orders());
+            for (int ring = 0; ring < (rings == 0 ? 1 : 4); ring += 1) {
+                long start = keys.key(order, ring, rand.nextInt(17000));
+                assertArrayEquals(
+                    LongStream.range(start, start + 3000)
+                    .filter(canon::isCanonical).toArray(),
+                    canon.representatives(start, start + 3000).toArray());
+            }
+            for (int i = 0; i < 2000; i += 1) {
+                long key = keys.key(order, 0, 0)
+                    + (long) (rand.nextDouble() * keys.keysPerOrder());
+                assertEquals(canon.isCanonical(key), table.contains(key));
+            }
+        }
+    }
+
+    @Test
+    public void checkCanonicalShrinks() {
+        Keyspace keys = new Keyspace(config(), 2);
+        Canonicalizer canon = new Canonicalizer(keys, 30);
+        long perOrder = keys.keysPerOrder();
+        long reps = canon.representatives(0, perOrder).count();
+        assertTrue(reps >= 26 * 26);
+        assertTrue(reps * 10 < perOrder);
+        for (long key = 0; key < 26 * 26; key += 1) {
+            assertTrue(canon.isCanonical(key));
+        }
+    }
+
+    @Test
+    public void checkCanonicalSearch() throws IOException {
+        Path table = Files.createTempFile("ngrams", ".bin");
+        table.toFile().deleteOnExit();
+        NgramTable.write(table, 3, UPPER, PLAIN);
+        Machine machine = config().newMachine();
+        Main.setUp(machine, "B III I KD AC");
+        int[] ciphertext = KeySearch.indices(
+            machine.convert(PLAIN.replace(" ", "").substring(0, 40)), UPPER);
+        KeySearch full = new KeySearch(new Keyspace(config(), 1),
+                                       NgramTable.map(table), ciphertext, 1);
+        KeySearch canonical =
+            new KeySearch(new Keyspace(config(), 1), NgramTable.map(table),
+                          ciphertext, 1);
+        canonical.skipEquivalentKeys();
+        KeySearch.Candidate best =
+            full.run(local(full, 2), 5000, null, Long.MAX_VALUE)
+            .candidates().get(0),
+            found = canonical.run(local(canonical, 2), 5000, null,
+                                  Long.MAX_VALUE).candidates().get(0);
+        assertEquals(best.score(), found.score(), 0);
+        assertEquals(best.key(), found.key());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkTooManyRings() {
+        new Keyspace(config(), 3);
+    }
+
+    @Test
+    public void checkBest() {
+        KeySearch.Best best = new KeySearch.Best(2);
+        best.offer(1.0, 5);
+        best.offer(3.0, 7);
+        best.offer(3.0, 2);
+        best.offer(3.0, 9);
+        best.offer(0.5, 1);
+        assertEquals("0 3.0 2 3.0 7", describe(best));
+        KeySearch.Best parsed = new KeySearch.Best(2);
+        assertEquals(4, KeySearch.parseReply("4 3.0 2 3.0 7", parsed));
+        assertEquals(describe(best), describe(parsed));
+    }
+
+    @Test
+    public void checkFindsKey() throws IOException {
+        KeySearch search = search(3);
+        KeySearch.Best best = search.run(local(search, 3), 100, null,
+                                         Long.MAX_VALUE);
+        long key = best.candidates().get(0).key();
+        assertEquals(SETTING, search.keyspace().setting(key));
+        assertEquals(describe(best),
+                     describe(search.run(local(search, 1), 4056, null,
+                                         Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void checkResume() throws IOException {
+        KeySearch search = search(5);
+        String full = describe(search.run(local(search, 2), 250, null,
+                                          Long.MAX_VALUE));
+        Path checkpoint = Files.createTempFile("checkpoint", ".txt");
+        checkpoint.toFile().deleteOnExit();
+        Files.delete(checkpoint);
+        search.run(local(search, 2), 250, checkpoint, 3);
+        search.run(local(search, 2), 250, checkpoint, 5);
+        Files.write(checkpoint, "12 3.5".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+        assertEquals(full, describe(search.run(local(search, 2), 250,
+                                               checkpoint, Long.MAX_VALUE)));
+        assertEquals(1 + (4056 + 249) / 250,
+                     Files.readAllLines(checkpoint).size());
+        assertEquals(full, describe(search.run(local(search, 2), 250,
+                                               checkpoint, Long.MAX_VALUE)));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkWrongCheckpoint() throws IOException {
+        KeySearch search = search(5);
+        Path checkpoint = Files.createTempFile("checkpoint", ".txt");
+        checkpoint.toFile().deleteOnExit();
+        Files.delete(checkpoint);
+        search.run(local(search, 1), 250, checkpoint, 1);
+        search.run(local(search, 1), 500, checkpoint, 1);
+    }
+
+    @Test
+    public void checkWorkerProcesses() throws IOException {
+        KeySearch search = search(4);
+        String full = describe(search.run(local(search, 1), 4056, null,
+                                          Long.MAX_VALUE));
+        Path table = Files.createTempFile("ngrams", ".bin");
+        table.toFile().deleteOnExit();
+        NgramTable.write(table, 3, UPPER, PLAIN);
+        Machine machine = config().newMachine();
+        Main.setUp(machine, SETTING.substring(1));
+        String[] files = {
+            tempFile(CONFIG).toString(), table.toString(),
+            tempFile(machine.convert(PLAIN.replace(" ", ""))).toString()
+        };
+        List<String> command = KeySearch.workerCommand(files, 0, 4, false);
+        List<KeySearch.Worker> workers = new ArrayList<>();
+        for (int i = 0; i < 3; i += 1) {
+            workers.add(new KeySearch.ProcessWorker(command));
+        }
+        ((KeySearch.ProcessWorker) workers.get(0)).process().destroy();
+        assertEquals(full, describe(search.run(workers, 300, null,
+                                               Long.MAX_VALUE)));
+    }
+}
@@ -0,0 +1,242 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The keys of a configuration's machines that a key search tries:
+ *  every choice of reflector and distinct rotors that fits the machine's
+ *  slots (fixed rotors in the slots without pawls, moving rotors in
+ *  those with them), every rotor position, and every ring setting of a
+ *  given number of the rightmost rotors, the others keeping ring setting
+ *  0.  The plugboard is always empty.
+ *
+ *  Keys are numbered from 0 to size() - 1, so that ranges of numbers
+ *  divide the keyspace into shards.  Consecutive keys differ first in
+ *  the rotor positions, then in the ring settings, and only then in the
+ *  choice of rotors, so a machine working through a range rarely needs
+ *  new rotors.
+ *  @author yuxinye
+ */
+class Keyspace {
+
+    /** The keyspace of CONFIG's machines, varying the ring settings of
+     *  the rightmost RINGS rotors. */
+    Keyspace(Config config, int rings) {
+        int numRotors = config.numRotors();
+        if (rings < 0 || rings >= numRotors) {
+            throw error("can vary the rings of at most %d rotors",
+                        numRotors - 1);
+        }
+        _config = config;
+        _rings = rings;
+        _alphabetSize = config.alphabet().size();
+        _orders = new ArrayList<>();
+        addOrders(new String[numRotors], 0);
+        try {
+            _positions = power(_alphabetSize, numRotors - 1);
+            _ringSettings = power(_alphabetSize, rings);
+            _size = Math.multiplyExact(Math.multiplyExact(
+                (long) _orders.size(), _ringSettings), _positions);
+        } catch (ArithmeticException excp) {
+            throw error("keyspace too large");
+        }
+    }
+
+    /** Add to _orders every way of filling slots K and beyond of ORDER,
+     *  whose slots before K are filled, with distinct rotors that fit
+     *  them. */
+    private void addOrders(String[] order, int k) {
+        if (k == order.length) {
+            _orders.add(order.clone());
+            return;
+        }
+        int fixedSlots = order.length - _config.numPawls();
+        for (Rotor r : _config.rotors()) {
+            boolean fits =
+                k == 0 ? r.reflecting()
+                : k < fixedSlots ? !r.reflecting() && !r.rotates()
+                : r.rotates();
+            if (fits && !Arrays.asList(order).subList(0, k)
+                .contains(r.name())) {
+                order[k] = r.name();
+                addOrders(order, k + 1);
+            }
+        }
+    }
+
+    /** Return BASE raised to the power EXPONENT, throwing
+     *  ArithmeticException if it overflows. */
+    private static long power(long base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i += 1) {
+            result = Math.multiplyExact(result, base);
+        }
+        return result;
+    }
+
+    /** Return my number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return my number of choices of rotors. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return the names of the rotors of choice K, reflector first. */
+    String[] order(int k) {
+        return _orders.get(k).clone();
+    }
+
+    /** Return the number of key numbers that share each choice of
+     *  rotors. */
+    long keysPerOrder() {
+        return _positions * _ringSettings;
+    }
+
+    /** Return the key with choice of rotors ORDER, ring settings RINGS,
+     *  and rotor positions POSITIONS, encoded as numbers as by
+     *  ringSettings and positions. */
+    long key(int order, long rings, long positions) {
+        return (order * _ringSettings + rings) * _positions + positions;
+    }
+
+    /** Return the number of rightmost rotors whose ring settings vary. */
+    int rings() {
+        return _rings;
+    }
+
+    /** Return the configuration whose machines I describe. */
+    Config config() {
+        return _config;
+    }
+
+    /** Return the setting line (with its "*", and with ring settings
+     *  only if any vary) for KEY. */
+    String setting(long key) {
+        checkKey(key);
+        int numRotors = _config.numRotors();
+        Alphabet alphabet = _config.alphabet();
+        StringBuilder result = new StringBuilder("*");
+        for (String name : _orders.get(orderOf(key))) {
+            result.append(' ').append(name);
+        }
+        result.append(' ');
+        appendDigits(result, positions(key), numRotors - 1, alphabet);
+        if (_rings > 0) {
+            result.append(' ');
+            appendDigits(result, 0, numRotors - 1 - _rings, alphabet);
+            appendDigits(result, ringSettings(key), _rings, alphabet);
+        }
+        return result.toString();
+    }
+
+    /** Append to RESULT the N characters of ALPHABET whose indices are
+     *  the base-(alphabet size) digits of VALUE, most significant
+     *  first. */
+    private void appendDigits(StringBuilder result, long value, int n,
+                              Alphabet alphabet) {
+        int[] digits = new int[n];
+        for (int i = n - 1; i >= 0; i -= 1) {
+            digits[i] = (int) (value % _alphabetSize);
+            value /= _alphabetSize;
+        }
+        for (int d : digits) {
+            result.appendCodePoint(alphabet.toCodePoint(d));
+        }
+    }
+
+    /** Return the index of KEY's choice of rotors. */
+    int orderOf(long key) {
+        return (int) (key / _positions / _ringSettings);
+    }
+
+    /** Return KEY's ring settings, as a number whose digits are those of
+     *  the varying rotors. */
+    long ringSettings(long key) {
+        return key / _positions % _ringSettings;
+    }
+
+    /** Return KEY's rotor positions, as a number whose digits are the
+     *  positions of the rotors after the reflector. */
+    long positions(long key) {
+        return key % _positions;
+    }
+
+    /** Check that KEY is one of mine. */
+    private void checkKey(long key) {
+        if (key < 0 || key >= _size) {
+            throw error("key %d out of range", key);
+        }
+    }
+
+    /** Sets a machine to successive keys, replacing its rotors and ring
+     *  settings only when they change. */
+    class Setter {
+
+        /** A setter for MACHINE, which must have my configuration. */
+        Setter(Machine machine) {
+            _machine = machine;
+        }
+
+        /** Set my machine to KEY, with an empty plugboard.  Returns true
+         *  iff its rotors or ring settings changed, so that engines
+         *  using it must be reset. */
+        boolean set(long key) {
+            checkKey(key);
+            int numRotors = _machine.numRotors();
+            int order = orderOf(key);
+            long rings = ringSettings(key);
+            boolean changed = false;
+            if (order != _order) {
+                _machine.insertRotors(_orders.get(order));
+                _machine.setPlugboard(
+                    new Permutation("", _machine.alphabet()));
+                _order = order;
+                _ring = -1;
+                changed = true;
+            }
+            if (rings != _ring) {
+                long r = rings;
+                for (int i = numRotors - 1; i >= numRotors - _rings;
+                     i -= 1) {
+                    _machine.rotor(i).setRing((int) (r % _alphabetSize));
+                    r /= _alphabetSize;
+                }
+                _ring = rings;
+                changed = true;
+            }
+            long p = positions(key);
+            for (int i = numRotors - 1; i > 0; i -= 1) {
+                _machine.rotor(i).set((int) (p % _alphabetSize));
+                p /= _alphabetSize;
+            }
+            return changed;
+        }
+
+        /** The machine I set. */
+        private final Machine _machine;
+        /** The choice of rotors in my machine, or -1 if unknown. */
+        private int _order = -1;
+        /** The ring settings in my machine, or -1 if unknown. */
+        private long _ring = -1;
+    }
+
+    /** The configuration whose machines I describe. */
+    private final Config _config;
+    /** Number of rightmost rotors whose ring settings vary. */
+    private final int _rings;
+    /** Size of the alphabet. */
+    private final int _alphabetSize;
+    /** The choices of rotors, each naming the reflector first. */
+    private final List<String[]> _orders;
+    /** Numbers of combinations of rotor positions and of ring
+     *  settings. */
+    private final long _positions, _ringSettings;
+    /** Number of keys. */
+    private final long _size;
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+/** The substitutions performed by a machine at each of its first few
+ *  keypresses from some state, together with its rotor positions after
+ *  each, so that a message can be enciphered from that state with one
+ *  table lookup per character and no stepping.  One table per position
+ *  is kept, mapping each input character to what Machine.convert would
+ *  produce for it there, and the tables are stored as narrow as the
+ *  alphabet allows.
+ *  @author yuxinye
+ */
+class Keystream {
+
+    /** A keystream for LENGTH keypresses of machines with NUMROTORS
+     *  slots over an alphabet of SIZE characters, whose entries are all
+     *  initially 0. */
+    Keystream(int size, int numRotors, int length) {
+        this(size, numRotors, length,
+             IndexTable.create(length * size, size),
+             IndexTable.create(length * numRotors, size));
+    }
+
+    /** A keystream for LENGTH keypresses of machines with NUMROTORS
+     *  slots over an alphabet of SIZE characters, whose substitutions
+     *  and positions are in SUBSTITUTIONS and POSITIONS, laid out as
+     *  described at _substitutions and _positions. */
+    Keystream(int size, int numRotors, int length,
+              IndexTable substitutions, IndexTable positions) {
+        _size = size;
+        _numRotors = numRotors;
+        _length = length;
+        _substitutions = substitutions;
+        _positions = positions;
+    }
+
+    /** Return the number of keypresses I cover. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the number of bytes I occupy, roughly. */
+    long bytes() {
+        return (long) _substitutions.length() * _substitutions.width()
+            + (long) _positions.length() * _positions.width();
+    }
+
+    /** Return the encipherment of character index C at keypress POSN,
+     *  where 0 <= POSN < length(). */
+    int convert(int posn, int c) {
+        return _substitutions.get(posn * _size + c);
+    }
+
+    /** Return true iff my contents may still be used.  A keystream held
+     *  in storage that others may reuse (see KeystreamStore) becomes
+     *  invalid when they do, and anything converted with it since it was
+     *  obtained must be converted again some other way. */
+    boolean valid() {
+        return true;
+    }
+
+    /** Return true iff I am held in storage that others may reuse, so
+     *  that valid() must be checked after using me. */
+    boolean shared() {
+        return false;
+    }
+
+    /** Return the position of the rotor in slot SLOT after keypress
+     *  POSN. */
+    int position(int posn, int slot) {
+        return _positions.get(posn * _numRotors + slot);
+    }
+
+    /** Set my substitution of C at keypress POSN to V. */
+    void setSubstitution(int posn, int c, int v) {
+        _substitutions.set(posn * _size + c, v);
+    }
+
+    /** Record the position of the rotor in slot SLOT after keypress POSN
+     *  as V. */
+    void setPosition(int posn, int slot, int v) {
+        _positions.set(posn * _numRotors + slot, v);
+    }
+
+    /** Set the rotors of MACHINE to their positions after keypress POSN,
+     *  where 0 <= POSN < length(). */
+    void setRotors(Machine machine, int posn) {
+        for (int i = 0; i < _numRotors; i += 1) {
+            machine.rotor(i).set(_positions.get(posn * _numRotors + i));
+        }
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of keypresses covered. */
+    private final int _length;
+    /** The substitution at keypress P maps C to entry P * _size + C. */
+    private final IndexTable _substitutions;
+    /** The position of slot I after keypress P is entry
+     *  P * _numRotors + I. */
+    private final IndexTable _positions;
+}
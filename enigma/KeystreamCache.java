@@ -0,0 +1,142 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Keystreams for machine states that recur, such as the state after a
+ *  setting line that begins many messages.  A state's keystream is
+ *  materialized the second time the state is looked up (so that states
+ *  seen only once cost nothing), and the least recently used entries are
+ *  evicted beyond a fixed number.  States are identified by everything
+ *  that determines the keystream: the rotors in each slot, their
+ *  positions and ring settings, and the plugboard.  A cache may be shared
+ *  by the threads enciphering with machines of one configuration.
+ *
+ *  A cache may be backed by a KeystreamStore, which it consults before
+ *  materializing a keystream itself and into which it puts those it
+ *  does, so that states recurring in other processes, or in earlier
+ *  ones, are served from the store at their first lookup.
+ *  @author yuxinye
+ */
+class KeystreamCache {
+
+    /** A cache of at most CAPACITY states, whose keystreams cover at most
+     *  MAXLENGTH keypresses. */
+    KeystreamCache(int capacity, int maxLength) {
+        this(capacity, maxLength, null);
+    }
+
+    /** A cache of at most CAPACITY states, whose keystreams cover at most
+     *  MAXLENGTH keypresses, backed by STORE if it is not null. */
+    KeystreamCache(int capacity, int maxLength, KeystreamStore store) {
+        _capacity = capacity;
+        _store = store;
+        _maxLength = maxLength;
+        _entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> e) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return the keystream from MACHINE's current state, or null if it
+     *  has not been materialized. */
+    Keystream get(Machine machine) {
+        String key = key(machine);
+        Entry entry;
+        boolean seen;
+        synchronized (this) {
+            _lookups += 1;
+            entry = _entries.get(key);
+            seen = entry != null;
+            if (!seen) {
+                entry = new Entry();
+                _entries.put(key, entry);
+            } else if (entry._keystream != null
+                       && entry._keystream.valid()) {
+                _hits += 1;
+                return entry._keystream;
+            }
+        }
+        Keystream keystream = _store == null ? null : _store.get(machine);
+        if (keystream != null) {
+            synchronized (this) {
+                _hits += 1;
+                entry._keystream = keystream;
+            }
+            return keystream;
+        } else if (!seen) {
+            return null;
+        }
+        int length = (int) Math.min(_maxLength,
+                                    MAX_ENTRIES / machine.alphabet().size());
+        if (length == 0) {
+            return null;
+        }
+        if (_store != null) {
+            keystream = _store.put(machine, length);
+        }
+        if (keystream == null) {
+            keystream = machine.keystream(length);
+        }
+        synchronized (this) {
+            entry._keystream = keystream;
+        }
+        return keystream;
+    }
+
+    /** Return the number of lookups so far. */
+    synchronized long lookups() {
+        return _lookups;
+    }
+
+    /** Return the number of lookups so far that found a materialized
+     *  keystream. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of states I hold. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return a key identifying the state of MACHINE. */
+    static String key(Machine machine) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < machine.numRotors(); i += 1) {
+            Rotor rotor = machine.rotor(i);
+            key.append(rotor.name()).append(' ').append(rotor.setting())
+                .append(' ').append(rotor.ringSetting()).append(' ');
+        }
+        Permutation plugboard = machine.plugboard();
+        for (int c = 0; c < plugboard.size(); c += 1) {
+            int p = plugboard.permute(c);
+            if (p != c) {
+                key.append(c).append(':').append(p).append(' ');
+            }
+        }
+        return key.toString();
+    }
+
+    /** The state of one key. */
+    private static class Entry {
+        /** The keystream, or null if the key has been seen only once. */
+        private Keystream _keystream;
+    }
+
+    /** Largest number of substitution-table entries in a keystream. */
+    static final long MAX_ENTRIES = 1L << 20;
+
+    /** Maximum number of entries. */
+    private final int _capacity;
+    /** The store backing me, or null. */
+    private final KeystreamStore _store;
+    /** Maximum keystream length. */
+    private final int _maxLength;
+    /** Entries by key, in order of use. */
+    private final LinkedHashMap<String, Entry> _entries;
+    /** Statistics. */
+    private long _lookups, _hits;
+}
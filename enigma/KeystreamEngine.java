@@ -0,0 +1,136 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** An engine that enciphers from states found in a KeystreamCache by
+ *  table lookup, and otherwise (or beyond the end of the cached
+ *  keystream) with another engine.  When a keystream from a
+ *  KeystreamStore is reused by another process while this engine is
+ *  converting with it, the engine converts the same characters again
+ *  with the other engine.  Anything else that moves the machine's rotors
+ *  (such as a ByteStreamCipher sharing the machine) takes it off the
+ *  keystream, which the engine notices by comparing the rotor positions
+ *  with those the keystream records, and from then until the next reset
+ *  the other engine converts.
+ *  @author yuxinye
+ */
+class KeystreamEngine implements Engine {
+
+    /** An engine using CACHE, and INNER when the cache cannot help. */
+    KeystreamEngine(Engine inner, KeystreamCache cache) {
+        _inner = inner;
+        _cache = cache;
+    }
+
+    @Override
+    public String name() {
+        return _inner.name();
+    }
+
+    @Override
+    public Machine machine() {
+        return _inner.machine();
+    }
+
+    @Override
+    public void reset() {
+        _inner.reset();
+        _looked = false;
+        _keystream = null;
+        _posn = 0;
+    }
+
+    @Override
+    public void convert(int[] msg, int n) {
+        if (!_looked) {
+            _keystream = _cache.get(machine());
+            _looked = true;
+        }
+        if (_keystream != null && _posn > 0 && !inStep(_keystream)) {
+            _keystream = null;
+        }
+        int k = 0;
+        if (_keystream != null) {
+            Keystream keystream = _keystream;
+            int end = Math.min(n, keystream.length() - _posn);
+            boolean shared = keystream.shared();
+            if (shared) {
+                save(msg, end);
+            }
+            for (; k < end; k += 1, _posn += 1) {
+                msg[k] = keystream.convert(_posn, msg[k]);
+            }
+            if (k > 0) {
+                keystream.setRotors(machine(), _posn - 1);
+            }
+            if (shared && !keystream.valid()) {
+                restore(msg, end);
+                keystream = null;
+                k = 0;
+            }
+            if (keystream == null || _posn == keystream.length()) {
+                _keystream = null;
+            }
+        }
+        if (k == 0) {
+            _inner.convert(msg, n);
+        } else if (k < n) {
+            int[] rest = Arrays.copyOfRange(msg, k, n);
+            _inner.convert(rest, n - k);
+            System.arraycopy(rest, 0, msg, k, n - k);
+        }
+    }
+
+    /** Return true iff my machine's rotors are where KEYSTREAM leaves
+     *  them after the keypresses I have converted with it. */
+    private boolean inStep(Keystream keystream) {
+        Machine machine = machine();
+        for (int i = 0; i < machine.numRotors(); i += 1) {
+            if (machine.rotor(i).setting()
+                != keystream.position(_posn - 1, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Save the first N characters of MSG and my machine's rotor
+     *  positions, so that restore can undo converting them. */
+    private void save(int[] msg, int n) {
+        Machine machine = machine();
+        if (_saved.length < n) {
+            _saved = new int[Math.max(n, 2 * _saved.length)];
+        }
+        System.arraycopy(msg, 0, _saved, 0, n);
+        if (_savedPositions == null) {
+            _savedPositions = new int[machine.numRotors()];
+        }
+        for (int i = 0; i < _savedPositions.length; i += 1) {
+            _savedPositions[i] = machine.rotor(i).setting();
+        }
+    }
+
+    /** Restore the first N characters of MSG and my machine's rotor
+     *  positions as last saved. */
+    private void restore(int[] msg, int n) {
+        System.arraycopy(_saved, 0, msg, 0, n);
+        for (int i = 0; i < _savedPositions.length; i += 1) {
+            machine().rotor(i).set(_savedPositions[i]);
+        }
+    }
+
+    /** The engine used when the cache cannot help. */
+    private final Engine _inner;
+    /** The cache. */
+    private final KeystreamCache _cache;
+    /** True iff the cache has been consulted since the last reset. */
+    private boolean _looked;
+    /** The keystream from the state at the last reset, while some of it
+     *  remains, or null. */
+    private Keystream _keystream;
+    /** The characters most recently converted with a shared keystream,
+     *  as they were before, and the rotor positions before them. */
+    private int[] _saved = new int[0], _savedPositions;
+    /** Number of characters converted since the last reset. */
+    private int _posn;
+}
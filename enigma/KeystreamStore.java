@@ -0,0 +1,468 @@
+package enigma;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.EnigmaException.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** Keystreams kept in a memory-mapped file, so that they outlive the
+ *  process that computed them and are shared, outside the heap, by every
+ *  process that maps the file.  The file has a fixed number of slots of
+ *  a fixed size, chosen when it is created, so it never grows.
+ *
+ *  A keystream is identified by the state of the machine it starts from
+ *  (as by KeystreamCache.key) together with a hash of the wirings and
+ *  notches of the rotors in it, so that files may be shared by machines
+ *  of different configurations.  The identifier's hash picks a home slot,
+ *  and a keystream may be in its home slot or one of the PROBES slots
+ *  after it.  Storing a keystream whose slots are all full evicts the
+ *  one among them used least recently.
+ *
+ *  Lookups take no locks, and change nothing but the time of last use
+ *  of what they find.  Stores are serialized by a lock on the file.  Each
+ *  slot has a sequence number that is odd while its slot is being
+ *  written, and that changes whenever it is, so a reader can tell, with
+ *  Keystream.valid, whether the keystream it found is still there.
+ *  @author yuxinye
+ */
+final class KeystreamStore implements AutoCloseable {
+
+    /** Return the store in FILE, creating it with SLOTS slots of
+     *  SLOTBYTES bytes each if it does not exist or is empty.  An
+     *  existing store keeps the dimensions it was created with. */
+    static KeystreamStore open(Path file, int slots, int slotBytes) {
+        if (slots <= 0 || slotBytes <= 0
+            || size(slots, slotBytes) > Integer.MAX_VALUE) {
+            throw error("invalid keystream store dimensions");
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, READ, WRITE, CREATE);
+            synchronized (lock(file)) {
+                FileLock lock = channel.lock();
+                try {
+                    return new KeystreamStore(file, channel, slots,
+                                              slotBytes);
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException excp) {
+            close(channel);
+            throw error("could not open keystream store %s: %s", file,
+                        excp.getMessage());
+        } catch (EnigmaException excp) {
+            close(channel);
+            throw excp;
+        }
+    }
+
+    /** A store in FILE, open on CHANNEL, which I lock, initialized with
+     *  SLOTS slots of SLOTBYTES bytes if it is empty. */
+    private KeystreamStore(Path file, FileChannel channel, int slots,
+                           int slotBytes) throws IOException {
+        _file = file;
+        _channel = channel;
+        if (channel.size() == 0) {
+            _map = map(channel, size(slots, slotBytes));
+            _map.putInt(SLOTS, slots);
+            _map.putInt(SLOT_BYTES, slotBytes);
+            _map.putInt(VERSION, FORMAT);
+            _map.putInt(MAGIC, MAGIC_NUMBER);
+            _map.force();
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            if (header.getInt(MAGIC) != MAGIC_NUMBER
+                || header.getInt(VERSION) != FORMAT) {
+                throw error("%s is not a keystream store", file);
+            }
+            slots = header.getInt(SLOTS);
+            slotBytes = header.getInt(SLOT_BYTES);
+            if (slots <= 0 || slotBytes <= 0
+                || channel.size() != size(slots, slotBytes)) {
+                throw error("keystream store %s is damaged", file);
+            }
+            _map = map(channel, channel.size());
+        }
+        _slots = slots;
+        _slotBytes = slotBytes;
+        _data = data(slots);
+    }
+
+    /** Return the first SIZE bytes of CHANNEL mapped for reading and
+     *  writing, extending it if necessary. */
+    private static MappedByteBuffer map(FileChannel channel, long size)
+        throws IOException {
+        MappedByteBuffer result =
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        result.order(ByteOrder.LITTLE_ENDIAN);
+        return result;
+    }
+
+    /** Return the offset of the first slot of a store with SLOTS
+     *  slots. */
+    private static long data(int slots) {
+        return align(HEADER + (long) slots * ENTRY, CACHE_LINE);
+    }
+
+    /** Return the size of a store with SLOTS slots of SLOTBYTES bytes. */
+    private static long size(int slots, int slotBytes) {
+        return data(slots) + (long) slots * slotBytes;
+    }
+
+    /** Return N rounded up to a multiple of ALIGNMENT, a power of 2. */
+    private static long align(long n, int alignment) {
+        return (n + alignment - 1) & -alignment;
+    }
+
+    /** Return the object on which the threads of this process that store
+     *  into FILE synchronize, since a file lock excludes only other
+     *  processes. */
+    private static Object lock(Path file) {
+        return LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(),
+                                     f -> new Object());
+    }
+
+    /** Close CHANNEL, if it is not null, ignoring errors. */
+    private static void close(FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException excp) {
+            /* Ignore. */
+        }
+    }
+
+    /** Return my number of slots. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the size of each of my slots in bytes. */
+    int slotBytes() {
+        return _slotBytes;
+    }
+
+    /** Return the number of keystreams I hold. */
+    int size() {
+        int result = 0;
+        for (int slot = 0; slot < _slots; slot += 1) {
+            long seq = (long) LONGS.getAcquire(_map, entry(slot));
+            if (seq != 0 && (seq & 1) == 0) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the keystream from MACHINE's current state, or null if I
+     *  do not hold it.  The keystream's tables are in my file. */
+    Keystream get(Machine machine) {
+        byte[] key = key(machine);
+        long hash = hash(key);
+        for (int p = 0; p < Math.min(PROBES, _slots); p += 1) {
+            int slot = probe(hash, p);
+            Keystream result = find(slot, machine, key, hash);
+            if (result != null) {
+                _map.putLong(entry(slot) + USED, tick());
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /** Store the keystream of at most MAXLENGTH keypresses from
+     *  MACHINE's current state, unless I hold it already, and return it
+     *  as I hold it.  The keystream is as long as a slot allows.  Returns
+     *  null if not even one keypress fits. */
+    Keystream put(Machine machine, int maxLength) {
+        byte[] key = key(machine);
+        long hash = hash(key);
+        int size = machine.alphabet().size(),
+            numRotors = machine.numRotors();
+        long room = _slotBytes - align(key.length, Long.BYTES);
+        int length = (int) Math.min(maxLength, Math.max(0, room)
+            / ((long) (size + numRotors) * IndexTable.width(size)));
+        if (length == 0) {
+            return null;
+        }
+        Keystream keystream = machine.keystream(length);
+        synchronized (lock(_file)) {
+            try {
+                FileLock lock = _channel.lock();
+                try {
+                    int victim = -1;
+                    long victimUsed = Long.MAX_VALUE;
+                    for (int p = 0; p < Math.min(PROBES, _slots); p += 1) {
+                        int slot = probe(hash, p);
+                        Keystream found = find(slot, machine, key, hash);
+                        if (found != null) {
+                            return found;
+                        }
+                        int e = entry(slot);
+                        long seq = (long) LONGS.getAcquire(_map, e);
+                        long used = seq == 0 || (seq & 1) != 0
+                            ? Long.MIN_VALUE : _map.getLong(e + USED);
+                        if (used < victimUsed) {
+                            victim = slot;
+                            victimUsed = used;
+                        }
+                    }
+                    write(victim, key, hash, keystream, size, numRotors);
+                    return find(victim, machine, key, hash);
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException excp) {
+                throw error("could not lock keystream store %s: %s", _file,
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Write KEYSTREAM, of a machine with NUMROTORS slots over an
+     *  alphabet of SIZE characters, into SLOT, identified by KEY and its
+     *  hash HASH. */
+    private void write(int slot, byte[] key, long hash, Keystream keystream,
+                       int size, int numRotors) {
+        int e = entry(slot);
+        long seq = (long) LONGS.getAcquire(_map, e);
+        long writing = (seq + 1) | 1;
+        LONGS.setOpaque(_map, e, writing);
+        VarHandle.releaseFence();
+        int length = keystream.length();
+        ByteBuffer data = slot(slot);
+        data.put(0, key);
+        IndexTable subs = substitutions(data, key.length, length, size),
+            posns = positions(data, key.length, length, size, numRotors);
+        for (int p = 0; p < length; p += 1) {
+            for (int c = 0; c < size; c += 1) {
+                subs.set(p * size + c, keystream.convert(p, c));
+            }
+            for (int i = 0; i < numRotors; i += 1) {
+                posns.set(p * numRotors + i, keystream.position(p, i));
+            }
+        }
+        _map.putLong(e + HASH, hash);
+        _map.putInt(e + LENGTH, length);
+        _map.putInt(e + KEY_LENGTH, key.length);
+        _map.putLong(e + USED, tick());
+        LONGS.setRelease(_map, e, writing + 1);
+    }
+
+    /** Return the keystream in SLOT if it is identified by KEY, whose
+     *  hash is HASH, and starts from the state of MACHINE; otherwise
+     *  null. */
+    private Keystream find(int slot, Machine machine, byte[] key,
+                           long hash) {
+        int e = entry(slot);
+        long seq = (long) LONGS.getAcquire(_map, e);
+        if (seq == 0 || (seq & 1) != 0 || _map.getLong(e + HASH) != hash
+            || _map.getInt(e + KEY_LENGTH) != key.length) {
+            return null;
+        }
+        int size = machine.alphabet().size(),
+            numRotors = machine.numRotors(),
+            length = _map.getInt(e + LENGTH);
+        ByteBuffer data = slot(slot);
+        long end = align(key.length, Long.BYTES)
+            + (long) length * (size + numRotors) * IndexTable.width(size);
+        if (length <= 0 || end > _slotBytes
+            || !data.slice(0, key.length).equals(ByteBuffer.wrap(key))) {
+            return null;
+        }
+        Keystream result =
+            new Mapped(size, numRotors, length,
+                       substitutions(data, key.length, length, size),
+                       positions(data, key.length, length, size, numRotors),
+                       e, seq);
+        return result.valid() ? result : null;
+    }
+
+    /** Return the substitution table of LENGTH keypresses over an
+     *  alphabet of SIZE characters in slot DATA, after a key of KEYLENGTH
+     *  bytes. */
+    private static IndexTable substitutions(ByteBuffer data, int keyLength,
+                                            int length, int size) {
+        int start = (int) align(keyLength, Long.BYTES);
+        int bytes = length * size * IndexTable.width(size);
+        return IndexTable.wrap(slice(data, start, bytes), length * size,
+                               size);
+    }
+
+    /** Return the position table of LENGTH keypresses of a machine with
+     *  NUMROTORS slots over an alphabet of SIZE characters in slot DATA,
+     *  after a key of KEYLENGTH bytes. */
+    private static IndexTable positions(ByteBuffer data, int keyLength,
+                                        int length, int size,
+                                        int numRotors) {
+        int width = IndexTable.width(size);
+        int start = (int) align(keyLength, Long.BYTES)
+            + length * size * width;
+        return IndexTable.wrap(slice(data, start, length * numRotors * width),
+                               length * numRotors, size);
+    }
+
+    /** Return the LENGTH bytes of BUFFER from START, in little-endian
+     *  order. */
+    private static ByteBuffer slice(ByteBuffer buffer, int start,
+                                    int length) {
+        return buffer.slice(start, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Return the offset of the index entry of SLOT. */
+    private int entry(int slot) {
+        return HEADER + slot * ENTRY;
+    }
+
+    /** Return the bytes of SLOT. */
+    private ByteBuffer slot(int slot) {
+        return slice(_map, (int) (_data + (long) slot * _slotBytes),
+                     _slotBytes);
+    }
+
+    /** Return the Pth slot at which a keystream whose identifier has
+     *  hash HASH may be. */
+    private int probe(long hash, int p) {
+        return (int) ((Long.remainderUnsigned(hash, _slots) + p) % _slots);
+    }
+
+    /** Advance my clock, and return its previous value. */
+    private long tick() {
+        return (long) LONGS.getAndAdd(_map, CLOCK, 1L);
+    }
+
+    /** Return the identifier of the keystream from MACHINE's current
+     *  state. */
+    static byte[] key(Machine machine) {
+        long wiring = FNV_BASIS;
+        for (int i = 0; i < machine.numRotors(); i += 1) {
+            Rotor rotor = machine.rotor(i);
+            Permutation perm = rotor.permutation();
+            wiring = mix(wiring, (rotor.rotates() ? 1 : 0)
+                         + (rotor.reflecting() ? 2 : 0));
+            for (int c = 0; c < perm.size(); c += 1) {
+                wiring = mix(wiring, perm.permute(c));
+            }
+            for (int p = 0; p < rotor.size(); p += 1) {
+                if (rotor.notchAt(p)) {
+                    wiring = mix(wiring, -p - 1);
+                }
+            }
+        }
+        String key = KeystreamCache.key(machine) + Long.toHexString(wiring);
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return a hash of BYTES. */
+    static long hash(byte[] bytes) {
+        long result = FNV_BASIS;
+        for (byte b : bytes) {
+            result = mix(result, b);
+        }
+        return result ^ (result >>> 29);
+    }
+
+    /** Return the FNV-1a hash HASH extended by V. */
+    private static long mix(long hash, int v) {
+        return (hash ^ v) * FNV_PRIME;
+    }
+
+    /** Close my file.  Keystreams obtained from me remain usable, though
+     *  no longer necessarily valid. */
+    @Override
+    public void close() {
+        close(_channel);
+    }
+
+    /** A keystream in one of my slots. */
+    private final class Mapped extends Keystream {
+        /** A keystream for LENGTH keypresses of machines with NUMROTORS
+         *  slots over an alphabet of SIZE characters, with tables
+         *  SUBSTITUTIONS and POSITIONS, whose slot has index entry ENTRY
+         *  and had sequence number SEQ when they were read. */
+        Mapped(int size, int numRotors, int length,
+               IndexTable substitutions, IndexTable positions,
+               int entry, long seq) {
+            super(size, numRotors, length, substitutions, positions);
+            _entry = entry;
+            _seq = seq;
+        }
+
+        @Override
+        boolean shared() {
+            return true;
+        }
+
+        @Override
+        boolean valid() {
+            VarHandle.acquireFence();
+            return (long) LONGS.getOpaque(_map, _entry) == _seq;
+        }
+
+        /** Offset of my slot's index entry. */
+        private final int _entry;
+        /** The sequence number of my slot when I was read. */
+        private final long _seq;
+    }
+
+    /** Number of slots after its home slot that a keystream may be in. */
+    static final int PROBES = 8;
+
+    /** Atomic access to the longs of a mapped file. */
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class,
+                                              ByteOrder.LITTLE_ENDIAN);
+
+    /** The objects on which threads storing into each file
+     *  synchronize. */
+    private static final ConcurrentHashMap<Path, Object> LOCKS =
+        new ConcurrentHashMap<>();
+
+    /** Offsets in the header of the magic number, format version, number
+     *  of slots, slot size, and clock (a count of uses). */
+    private static final int
+        MAGIC = 0, VERSION = 4, SLOTS = 8, SLOT_BYTES = 12, CLOCK = 16;
+    /** Size of the header. */
+    private static final int HEADER = 64;
+    /** Offsets in an index entry of the sequence number, hash of the
+     *  identifier, time of last use, keystream length, and identifier
+     *  length. */
+    private static final int
+        HASH = 8, USED = 16, LENGTH = 24, KEY_LENGTH = 28;
+    /** Size of an index entry. */
+    private static final int ENTRY = 32;
+    /** Alignment of the first slot. */
+    private static final int CACHE_LINE = 64;
+    /** Identifies a keystream store ("KSTO"). */
+    private static final int MAGIC_NUMBER = 0x4f54534b;
+    /** The version of the file format. */
+    private static final int FORMAT = 1;
+    /** FNV-1a parameters. */
+    private static final long
+        FNV_BASIS = 0xcbf29ce484222325L, FNV_PRIME = 0x100000001b3L;
+
+    /** The file. */
+    private final Path _file;
+    /** A channel open on it. */
+    private final FileChannel _channel;
+    /** The whole file, mapped. */
+    private final MappedByteBuffer _map;
+    /** Number of slots, and size of each in bytes. */
+    private final int _slots, _slotBytes;
+    /** Offset of the first slot. */
+    private final long _data;
+}
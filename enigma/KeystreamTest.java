@@ -0,0 +1,234 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for keystreams, their cache, and their
+ *  store.
+ *  @author yuxinye
+ */
+public class KeystreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** The setting of the example in the assignment. */
+    private static final String SETTING =
+        "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    @Test
+    public void checkKeystream() {
+        Machine machine = navalMachine(SETTING);
+        Keystream keystream = machine.keystream(100);
+        assertEquals(100, keystream.length());
+        assertEquals("AXLE", settings(machine));
+        Machine stepped = navalMachine(SETTING);
+        for (int p = 0; p < 100; p += 1) {
+            int c = p % 26;
+            assertEquals(stepped.convert(c), keystream.convert(p, c));
+            int[] map = new int[26];
+            for (int x = 0; x < 26; x += 1) {
+                map[x] = keystream.convert(p, x);
+            }
+            assertTrue(PermutationAlgebra.isInvolution(map));
+            keystream.setRotors(machine, p);
+            assertEquals(settings(stepped), settings(machine));
+        }
+    }
+
+    /** Return the settings of M's rotors as a string. */
+    private String settings(Machine m) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < m.numRotors(); i += 1) {
+            result.append(UPPER.toChar(m.rotor(i).setting()));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkCache() {
+        KeystreamCache cache = new KeystreamCache(2, 50);
+        Machine machine = navalMachine(SETTING);
+        assertNull(cache.get(machine));
+        Keystream first = cache.get(machine);
+        assertNotNull(first);
+        assertSame(first, cache.get(machine));
+        assertEquals(1, cache.hits());
+
+        Main.setUp(machine, "B Beta III IV I AXLF (HQ) (EX) (IP) (TR)");
+        assertNull(cache.get(machine));
+        Main.setUp(machine, "C Beta III IV I AXLE (HQ) (EX) (IP) (TR)");
+        assertNull(cache.get(machine));
+        assertEquals(2, cache.size());
+        Main.setUp(machine, SETTING);
+        assertNull(cache.get(machine));
+    }
+
+    @Test
+    public void checkEngineMatchesReference() {
+        Random rand = new Random(61);
+        for (int trial = 0; trial < 40; trial += 1) {
+            Config config = EngineFuzzer.randomConfig(rand);
+            KeystreamCache cache = new KeystreamCache(3, 40);
+            Machine tested = config.newMachine(),
+                reference = config.newMachine();
+            Engine engine = new VerifyingEngine(
+                new KeystreamEngine(new TableEngine(tested), cache), 1, 0);
+            Engine expected = new ReferenceEngine(reference);
+            String[] settings = new String[4];
+            for (int i = 0; i < settings.length; i += 1) {
+                settings[i] = EngineFuzzer.randomSetting(config, rand);
+            }
+            for (int s = 0; s < 20; s += 1) {
+                String setting = settings[rand.nextInt(settings.length)];
+                Main.setUp(tested, setting);
+                Main.setUp(reference, setting);
+                engine.reset();
+                expected.reset();
+                for (int m = rand.nextInt(4); m >= 0; m -= 1) {
+                    int[] msg = new int[rand.nextInt(60)];
+                    for (int i = 0; i < msg.length; i += 1) {
+                        msg[i] = rand.nextInt(config.alphabet().size());
+                    }
+                    int[] want = msg.clone();
+                    engine.convert(msg, msg.length);
+                    expected.convert(want, want.length);
+                    assertArrayEquals(setting, want, msg);
+                }
+            }
+            assertTrue(cache.hits() > 0);
+        }
+    }
+
+    /** Return the name of a new, empty temporary file. */
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("keystreams", ".bin");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /** Assert that EXPECTED and ACTUAL hold the same substitutions and
+     *  positions for a machine with NUMROTORS slots over UPPER. */
+    private static void assertSameKeystream(Keystream expected,
+                                            Keystream actual,
+                                            int numRotors) {
+        assertEquals(expected.length(), actual.length());
+        for (int p = 0; p < expected.length(); p += 1) {
+            for (int c = 0; c < 26; c += 1) {
+                assertEquals(expected.convert(p, c), actual.convert(p, c));
+            }
+            for (int i = 0; i < numRotors; i += 1) {
+                assertEquals(expected.position(p, i),
+                             actual.position(p, i));
+            }
+        }
+    }
+
+    @Test
+    public void checkStore() throws IOException {
+        Path file = tempFile();
+        Machine machine = navalMachine(SETTING);
+        try (KeystreamStore store = KeystreamStore.open(file, 4, 4096);
+             KeystreamStore other = KeystreamStore.open(file, 9, 100)) {
+            assertEquals(4, other.slots());
+            assertEquals(4096, other.slotBytes());
+            assertNull(store.get(machine));
+            Keystream stored = store.put(machine, 1000);
+            assertTrue(stored.shared());
+            assertTrue(stored.valid());
+            int keyBytes = (KeystreamStore.key(machine).length + 7) & -8;
+            assertEquals((4096 - keyBytes) / (26 + 5), stored.length());
+            assertSameKeystream(machine.keystream(stored.length()), stored,
+                                5);
+            assertEquals(1, store.size());
+            Keystream found = other.get(navalMachine(SETTING));
+            assertNotNull(found);
+            assertSameKeystream(stored, found, 5);
+            assertNull(other.get(navalMachine(
+                "B Beta III IV I AXLF (HQ) (EX) (IP) (TR) (BY)")));
+        }
+        try (KeystreamStore reopened = KeystreamStore.open(file, 4, 4096)) {
+            assertEquals(1, reopened.size());
+            assertNotNull(reopened.get(machine));
+        }
+    }
+
+    @Test
+    public void checkStoreDistinguishesWirings() throws IOException {
+        String config = "ABCDEFGHIJKLMNOPQRSTUVWXYZ 3 2\n"
+            + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+            + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+            + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+            + "     (RX) (SZ) (TV)\n";
+        Machine a = Config.read(new Tokenizer(config)).newMachine(),
+            b = Config.read(new Tokenizer(config.replace("II ME", "II MF")))
+            .newMachine();
+        Main.setUp(a, "B I II AE");
+        Main.setUp(b, "B I II AE");
+        try (KeystreamStore store = KeystreamStore.open(tempFile(), 16,
+                                                        4096)) {
+            store.put(a, 100);
+            assertNotNull(store.get(a));
+            assertNull(store.get(b));
+        }
+    }
+
+    @Test
+    public void checkStoreEviction() throws IOException {
+        Path file = tempFile();
+        try (KeystreamStore store = KeystreamStore.open(file, 2, 2048)) {
+            String[] positions = { "AXLE", "AXLF", "AXLG", "AXLH" };
+            for (String posn : positions) {
+                store.put(navalMachine(SETTING.replace("AXLE", posn)), 50);
+                assertTrue(store.size() <= 2);
+            }
+            Machine recent = navalMachine(SETTING.replace("AXLE", "AXLH"));
+            assertNotNull(store.get(recent));
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    public void checkEngineWithEvictedKeystream() throws IOException {
+        Path file = tempFile();
+        try (KeystreamStore store = KeystreamStore.open(file, 1, 4096);
+             KeystreamStore other = KeystreamStore.open(file, 1, 4096)) {
+            KeystreamCache cache = new KeystreamCache(4, 100, store);
+            Machine tested = navalMachine(SETTING),
+                reference = navalMachine(SETTING);
+            Engine engine = new KeystreamEngine(new TableEngine(tested),
+                                                cache);
+            Engine expected = new ReferenceEngine(reference);
+            cache.get(tested);
+            Keystream keystream = cache.get(tested);
+            assertTrue(keystream.shared());
+            Random rand = new Random(17);
+            for (int chunk = 0; chunk < 4; chunk += 1) {
+                if (chunk == 2) {
+                    other.put(navalMachine(
+                        "B Beta III IV I QQQQ (HQ) (EX) (IP) (TR) (BY)"), 100);
+                    assertFalse(keystream.valid());
+                }
+                int[] msg = new int[20];
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = rand.nextInt(26);
+                }
+                int[] want = msg.clone();
+                engine.convert(msg, msg.length);
+                expected.convert(want, want.length);
+                assertArrayEquals(want, msg);
+            }
+        }
+    }
+}
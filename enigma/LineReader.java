@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+
+import static enigma.EnigmaException.*;
+
+/** Reads the lines of an input stream, with the line-oriented methods of
+ *  a Scanner, plus the ability to look at the first token ahead of the
+ *  lines containing it.  Lines may end with a newline, a carriage return,
+ *  or both.
+ *  @author yuxinye
+ */
+class LineReader {
+
+    /** A reader for the lines of IN, which is in CHARSET. */
+    LineReader(InputStream in, String charset) {
+        _in = new BufferedReader(
+            new InputStreamReader(in, Charset.forName(charset)),
+            BUFFER_SIZE);
+    }
+
+    /** Return true iff there is another line. */
+    boolean hasNextLine() {
+        return !_ahead.isEmpty() || readAhead();
+    }
+
+    /** Return and skip the next line, without its terminator. */
+    String nextLine() {
+        if (!hasNextLine()) {
+            throw error("unexpected end of input");
+        }
+        return _ahead.remove();
+    }
+
+    /** Return the next whitespace-separated token, which may lie beyond
+     *  some blank lines, without skipping any lines, or null if there is
+     *  none. */
+    String peekToken() {
+        for (String line : _ahead) {
+            Tokenizer tokens = new Tokenizer(line);
+            if (tokens.hasNext()) {
+                return tokens.next();
+            }
+        }
+        while (readAhead()) {
+            Tokenizer tokens = new Tokenizer(_ahead.peekLast());
+            if (tokens.hasNext()) {
+                return tokens.next();
+            }
+        }
+        return null;
+    }
+
+    /** Close my input. */
+    void close() {
+        try {
+            _in.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Read another line into _ahead, returning false at the end of the
+     *  input. */
+    private boolean readAhead() {
+        try {
+            String line = _in.readLine();
+            if (line == null) {
+                return false;
+            }
+            _ahead.add(line);
+            return true;
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Size of the input buffer in chars. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The input. */
+    private final BufferedReader _in;
+    /** Lines that have been read but not yet returned. */
+    private final ArrayDeque<String> _ahead = new ArrayDeque<>();
+}
@@ -1,7 +1,9 @@
 package enigma;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import static enigma.EnigmaException.*;
 
@@ -15,11 +17,26 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, (RotorCatalog) null);
+        for (Rotor rotor : allRotors) {
+            _available.putIfAbsent(rotor.name(), rotor);
+        }
+    }
+
+    /** A new Enigma machine like that above, whose available rotors are
+     *  copies, made as they are first inserted, of those in CATALOG
+     *  (if not null). */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorCatalog catalog) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
         _rotors = new ArrayList<>();
-        _allRotors = allRotors;
+        _catalog = catalog;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -34,56 +51,72 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting and 0 ring
+     *  setting, whatever they were last used with. */
     void insertRotors(String[] rotors) {
-        ArrayList<String> allRotorNames = new ArrayList<>();
-        for (Rotor rotor : _allRotors) {
-            allRotorNames.add(rotor.name());
-        }
         _rotors = new ArrayList<>();
+        _arena = null;
         for (String r : rotors) {
-            if (!allRotorNames.contains(r)) {
+            Rotor rotor = available(r);
+            if (rotor == null) {
                 throw new EnigmaException("Can't find the rotor");
-            } else if (_rotors.contains(r)) {
+            } else if (_rotors.contains(rotor)) {
                 throw new EnigmaException("Rotor already in the slot");
             }
+            rotor.set(0);
+            rotor.setRing(0);
+            _rotors.add(rotor);
+        }
+    }
 
-            for (Rotor rotor : _allRotors) {
-                if (rotor.name().equals(r)) {
-                    _rotors.add(rotor);
-                }
+    /** Return my rotor named NAME, or null if none is available. */
+    private Rotor available(String name) {
+        Rotor rotor = _available.get(name);
+        if (rotor == null && _catalog != null) {
+            Rotor prototype = _catalog.get(name);
+            if (prototype != null) {
+                rotor = prototype.copy();
+                _available.put(name, rotor);
             }
         }
+        return rotor;
+    }
+
+    /** Return the rotor in slot K, where 0 <= K < numRotors() and
+     *  slot 0 holds the reflector. */
+    Rotor rotor(int k) {
+        return _rotors.get(k);
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != numRotors() - 1) {
+        int[] posns = setting.codePoints().toArray();
+        if (posns.length != numRotors() - 1) {
             throw new EnigmaException("Rotor setting has wrong length");
         }
         for (int i = 1; i < numRotors(); i++) {
-            if (!_alphabet.contains(setting.charAt(i - 1))) {
+            if (!_alphabet.containsCodePoint(posns[i - 1])) {
                 throw new EnigmaException("No matching character in Alphabet");
             }
-            _rotors.get(i).set(setting.charAt(i - 1));
+            _rotors.get(i).set(_alphabet.toIndex(posns[i - 1]));
         }
     }
 
     /** Set optional ring settings.
      * RINGSETTING is a string of ring settings.  */
     void setRingSetting(String ringSetting) {
-        if (ringSetting.length() != numRotors() - 1) {
+        int[] rings = ringSetting.codePoints().toArray();
+        if (rings.length != numRotors() - 1) {
             throw new EnigmaException("Ring setting has wrong length");
         }
         for (int i = 1; i < _numRotors; i++) {
-            if (!_alphabet.contains(
-                    ringSetting.charAt(i - 1))) {
+            if (!_alphabet.containsCodePoint(rings[i - 1])) {
                 throw new EnigmaException(
                         "Ringsetting's character not in Alphabet");
             }
-            _rotors.get(i).setRing(ringSetting.charAt(i - 1));
+            _rotors.get(i).setRing(_alphabet.toIndex(rings[i - 1]));
         }
     }
 
@@ -91,11 +124,18 @@ class Machine {
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        _arena = null;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
-     *  the machine. */
+     *  the machine.  This goes rotor by rotor, and is the definition
+     *  against which faster conversions are checked. */
     int convert(int c) {
         for (int i = 0; i < _numRotors; i++) {
             if (_rotors.get(i).rotates()) {
@@ -120,17 +160,100 @@ class Machine {
         return c;
     }
 
+    /** Return the substitutions I would perform at each of my next
+     *  LENGTH keypresses, and my rotor positions after each, leaving my
+     *  rotors where they are. */
+    Keystream keystream(int length) {
+        int n = _alphabet.size();
+        int[] posns = new int[_numRotors];
+        for (int i = 0; i < _numRotors; i += 1) {
+            posns[i] = _rotors.get(i).setting();
+        }
+        Keystream result = new Keystream(n, _numRotors, length);
+        for (int c = 0; c < n; c += 1) {
+            for (int i = 0; i < _numRotors; i += 1) {
+                _rotors.get(i).set(posns[i]);
+            }
+            for (int p = 0; p < length; p += 1) {
+                result.setSubstitution(p, c, convert(c));
+                if (c == 0) {
+                    for (int i = 0; i < _numRotors; i += 1) {
+                        result.setPosition(p, i, _rotors.get(i).setting());
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < _numRotors; i += 1) {
+            _rotors.get(i).set(posns[i]);
+        }
+        return result;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String newMsg = "";
-        for (int i = 0; i < msg.length(); i++) {
-            int converted = convert(_alphabet.toInt(msg.charAt(i)));
-            newMsg = newMsg + _alphabet.toChar(converted);
+        int[] indices = new int[msg.length()];
+        int n = 0;
+        for (int i = 0; i < msg.length(); ) {
+            int cp = msg.codePointAt(i);
+            indices[n] = _alphabet.toIndex(cp);
+            n += 1;
+            i += Character.charCount(cp);
+        }
+        convert(indices, n);
+        StringBuilder newMsg = new StringBuilder(msg.length());
+        for (int i = 0; i < n; i += 1) {
+            newMsg.appendCodePoint(_alphabet.toCodePoint(indices[i]));
+        }
+        return newMsg.toString();
+    }
+
+    /** Convert the first N entries of MSG (indices in my alphabet) in
+     *  place, as N calls of convert(int) would, but passing through the
+     *  wirings in my arena rather than rotor by rotor. */
+    private void convert(int[] msg, int n) {
+        arena().convert(this, msg, n);
+    }
+
+    /** Return the wirings of my current rotors and plugboard, laid out
+     *  for bulk conversion, making them if they have changed since they
+     *  were last asked for. */
+    WiringArena arena() {
+        if (_arena == null) {
+            _arena = new WiringArena(this);
         }
-        return newMsg;
+        return _arena;
     }
 
+    /** Converts the bytes remaining in SRC, each taken as the index of a
+     *  character in my alphabet (which must have exactly 256 characters),
+     *  writing the results to DST and updating the state of the rotors
+     *  accordingly.  Stops early if DST fills up. */
+    void convert(ByteBuffer src, ByteBuffer dst) {
+        if (_alphabet.size() != BYTE_ALPHABET_SIZE) {
+            throw error("byte conversion needs a %d-character alphabet",
+                        BYTE_ALPHABET_SIZE);
+        }
+        int n = Math.min(src.remaining(), dst.remaining());
+        int[] block = new int[Math.min(n, BYTE_BLOCK)];
+        for (int k = 0; k < n; k += block.length) {
+            int len = Math.min(block.length, n - k);
+            for (int i = 0; i < len; i += 1) {
+                block[i] = src.get() & 0xff;
+            }
+            convert(block, len);
+            for (int i = 0; i < len; i += 1) {
+                dst.put((byte) block[i]);
+            }
+        }
+    }
+
+    /** Size of the alphabets used to convert raw bytes. */
+    static final int BYTE_ALPHABET_SIZE = 256;
+
+    /** Number of bytes converted at a time by convert(SRC, DST). */
+    private static final int BYTE_BLOCK = 4096;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
     /** Number of rotors. */
@@ -139,8 +262,14 @@ class Machine {
     private final int _pawls;
     /** All rotors in the machine. */
     private ArrayList<Rotor> _rotors;
-    /** All available rotors. */
-    private Collection<Rotor> _allRotors;
+    /** The available rotors used so far, by name. */
+    private final HashMap<String, Rotor> _available = new HashMap<>();
+    /** The catalog from which other available rotors are copied, or
+     *  null. */
+    private final RotorCatalog _catalog;
     /** A plugboard. */
     private Permutation _plugboard;
+    /** The wirings of my current rotors and plugboard, or null if they
+     *  have changed since it was last made. */
+    private WiringArena _arena;
 }
@@ -1,14 +1,23 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
+import static java.nio.file.StandardOpenOption.*;
 
 /** Enigma simulator.
  *  @author yuxinye
@@ -16,17 +25,66 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
-     *  ARGS[1] is optional; when present, it names an input file
-     *  containing messages.  Otherwise, input comes from the standard
-     *  input.  ARGS[2] is optional; when present, it names an output
-     *  file for processed messages.  Otherwise, output goes to the
-     *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  specified by ARGS, which consist of options followed by 1 to 3
+     *  further arguments.  The first of these is the name of a
+     *  configuration file.  The second is optional; when present, it
+     *  names an input file containing messages.  Otherwise, input comes
+     *  from the standard input.  The third is optional; when present, it
+     *  names an output file for processed messages.  Otherwise, output
+     *  goes to the standard output. Exits normally if there are no errors
+     *  in the input; otherwise with code 1.
+     *
+     *  Options have the form --NAME or --NAME=VALUE:
+     *    --binary=SETTING  Treat the input as raw bytes rather than lines
+     *                      of messages, enciphering each byte K as the
+     *                      character with index K in the configuration's
+     *                      256-character alphabet.  SETTING is a setting
+     *                      line (the leading "*" is optional).
+     *    --parallel[=N]    Encipher the sections of the input that start
+     *                      at each setting line concurrently, on N
+     *                      threads (default: one per processor).  The
+     *                      output is the same as without this option.
+     *    --pipelined       Read, encipher, and write on separate threads,
+     *                      overlapping I/O with enciphering.  The output
+     *                      is the same as without this option.
+     *    --engine=NAME     Encipher messages with the engine NAME, one of
+     *                      reference (the Machine itself), table, or
+     *                      auto (the default), which picks one of the
+     *                      others by alphabet size and message length.
+     *    --verify[=F]      Also run a fraction F (default 0.01) of the
+     *                      messages through the reference engine, and
+     *                      stop with an error if the results differ.
+     *    --keystream-cache[=N]
+     *                      Keep the keystreams of up to N (default 256)
+     *                      recurring setting lines, so that messages
+     *                      after them are enciphered by table lookup.
+     *    --keystream-store=FILE
+     *                      Also keep keystreams in FILE, a bounded store
+     *                      that is created if need be and that other
+     *                      processes may use at the same time, so that
+     *                      keystreams computed by any of them, now or
+     *                      earlier, serve them all.  Implies
+     *                      --keystream-cache.
+     *    --gzip            Compress the output as gzip data, in
+     *                      members of whole lines that are compressed
+     *                      concurrently with each other and with
+     *                      enciphering.  Implied when the output file's
+     *                      name ends in .gz.
+     *    --validate        Check the whole input for errors instead of
+     *                      enciphering it, printing each on the output
+     *                      as LINE:COLUMN: MESSAGE, and fail at the end
+     *                      if there were any.
+     *  The engine options do not apply to --binary or --validate.
+     *  Input that is gzip data (other than for --binary) is decompressed
+     *  on a thread of its own as it is read. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            Main main = new Main(args);
+            try {
+                main.process();
+            } finally {
+                main.close();
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -36,170 +94,444 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
-        if (args.length < 1 || args.length > 3) {
+        this(args, new ConfigCache());
+    }
+
+    /** Check ARGS and open the necessary files (see comment on main),
+     *  taking the configuration file from CONFIGS. */
+    Main(String[] args, ConfigCache configs) {
+        int first = readOptions(args);
+        if (args.length - first < 1 || args.length - first > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = configs.open(args[first]);
+        if (args.length - first > 1) {
+            _inputName = args[first + 1];
+        }
+        if (args.length - first > 2) {
+            _outputName = args[first + 2];
+        }
+        if (_binarySetting != null) {
+            return;
+        }
+
+        _input = getInput(_inputName);
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (_outputName != null && _outputName.endsWith(".gz")) {
+            _gzip = true;
+        }
+        if (_outputName != null) {
+            _output = getOutput(_outputName);
         } else {
-            _input = new Scanner(System.in);
+            _output = getOutput(System.out);
         }
+    }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
-        } else {
-            _output = System.out;
+    /** Record the options at the start of ARGS (see comment on main)
+     *  and return the index of the first argument that is not one. */
+    private int readOptions(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            int eq = args[k].indexOf('=');
+            String name = eq < 0 ? args[k] : args[k].substring(0, eq);
+            String value = eq < 0 ? null : args[k].substring(eq + 1);
+            switch (name) {
+            case "--binary":
+                if (value == null) {
+                    throw error("%s needs a setting", name);
+                }
+                _binarySetting =
+                    value.startsWith("*") ? value.substring(1) : value;
+                break;
+            case "--parallel":
+                _threads = value == null
+                    ? Runtime.getRuntime().availableProcessors()
+                    : positiveInt(name, value);
+                break;
+            case "--pipelined":
+                _pipelined = true;
+                break;
+            case "--engine":
+                if (value == null) {
+                    throw error("%s needs an engine name", name);
+                } else if (!Arrays.asList(Engine.NAMES).contains(value)) {
+                    throw error("unknown engine: %s", value);
+                }
+                _engine = value;
+                break;
+            case "--keystream-cache":
+                _keystreamCache = value == null ? DEFAULT_KEYSTREAM_CACHE
+                    : positiveInt(name, value);
+                break;
+            case "--keystream-store":
+                if (value == null) {
+                    throw error("%s needs a file name", name);
+                }
+                _keystreamStoreName = value;
+                if (_keystreamCache == 0) {
+                    _keystreamCache = DEFAULT_KEYSTREAM_CACHE;
+                }
+                break;
+            case "--gzip":
+                _gzip = true;
+                break;
+            case "--validate":
+                _validate = true;
+                break;
+            case "--verify":
+                _verify = value == null ? DEFAULT_VERIFY_FRACTION
+                    : fraction(name, value);
+                break;
+            default:
+                throw error("unknown option: %s", args[k]);
+            }
+        }
+        if (_threads > 1 && _pipelined) {
+            throw error("--parallel and --pipelined are exclusive");
+        }
+        if (_validate && _binarySetting != null) {
+            throw error("--validate does not apply to --binary");
+        }
+        if (_gzip && _binarySetting != null) {
+            throw error("--gzip does not apply to --binary");
+        }
+        return k;
+    }
+
+    /** Return VALUE, the value of option NAME, as a positive integer. */
+    private static int positiveInt(String name, String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("%s needs a positive integer", name);
+    }
+
+    /** Return VALUE, the value of option NAME, as a number in (0, 1]. */
+    private static double fraction(String name, String value) {
+        try {
+            double result = Double.parseDouble(value);
+            if (result > 0 && result <= 1) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
         }
+        throw error("%s needs a number greater than 0 and at most 1", name);
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a new engine for MACHINE, as selected by the options. */
+    private Engine newEngine(Machine machine) {
+        Engine engine = Engine.create(_engine, machine);
+        if (_keystreams != null) {
+            engine = new KeystreamEngine(engine, _keystreams);
+        }
+        if (_verify > 0) {
+            engine = new VerifyingEngine(engine, _verify, System.nanoTime());
+        }
+        return engine;
+    }
+
+    /** Return a LineReader reading from the file named NAME, or from
+     *  the standard input if NAME is null, and decompressing it if it is
+     *  gzip data. */
+    private LineReader getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            InputStream in =
+                name == null ? System.in : new FileInputStream(name);
+            return new LineReader(InflatingInputStream.open(in), CHARSET);
         } catch (IOException excp) {
-            throw error("could not open %s", name);
+            throw error("could not open %s",
+                        name == null ? "standard input" : name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return a PrintStream writing to the file named NAME, compressing
+     *  if _gzip. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            if (_gzip) {
+                return compressing(new FileOutputStream(name));
+            }
+            return new PrintStream(new File(name), CHARSET);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine machine = readConfig();
-
-        if (_input.hasNext("^\\*")) {
-            while (_input.hasNextLine()) {
-                String nextLine = _input.nextLine();
-                if (nextLine.isEmpty()) {
-                    _output.println();
-                } else if (nextLine.charAt(0) == '*') {
-                    setUp(machine, nextLine.substring(1));
-                } else {
-                    nextLine = nextLine.replaceAll("\\s", "");
-                    String converted = machine.convert(nextLine);
-                    printMessageLine(converted);
-                }
+    /** Return a PrintStream writing to OUT in CHARSET, compressing if
+     *  _gzip. */
+    private PrintStream getOutput(PrintStream out) {
+        try {
+            if (_gzip) {
+                return compressing(out);
             }
-        } else {
-            throw error("Missing *. Invalid start of the input.");
+            return new PrintStream(out, true, CHARSET);
+        } catch (IOException excp) {
+            throw error("could not open standard output");
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Return a PrintStream writing to OUT in CHARSET, compressed as by
+     *  --gzip. */
+    private static PrintStream compressing(OutputStream out)
+        throws IOException {
+        return new PrintStream(
+            new DeflatingOutputStream(
+                out, Runtime.getRuntime().availableProcessors()),
+            false, CHARSET);
+    }
+
+    /** Return a channel reading from the file named NAME, or from the
+     *  standard input if NAME is null. */
+    private ReadableByteChannel getInputChannel(String name) {
         try {
-            ArrayList<Rotor> allRotors = new ArrayList<>();
-            String alphabet = _config.next();
-            _alphabet = new Alphabet(alphabet);
-            int numRotors = _config.nextInt();
-            int pawls = _config.nextInt();
-
-            while (_config.hasNext()) {
-                Rotor r = readRotor();
-                if (allRotors.contains(r.name())) {
-                    throw new EnigmaException("Rotor is duplicated");
-                }
-                allRotors.add(r);
+            if (name == null) {
+                return Channels.newChannel(System.in);
             }
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            return FileChannel.open(Paths.get(name), READ);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Return a channel writing to the file named NAME, or to the
+     *  standard output if NAME is null.  A file is also opened for
+     *  reading, so that it can be mapped. */
+    private WritableByteChannel getOutputChannel(String name) {
         try {
-            String name = _config.next();
-            String notches = _config.next();
+            if (name == null) {
+                return Channels.newChannel(System.out);
+            }
+            return FileChannel.open(Paths.get(name), READ, WRITE, CREATE,
+                                    TRUNCATE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _config and apply it to the messages in _input, sending the
+     *  results to _output. */
+    void process() {
+        Config config = readConfig();
+        if (_validate) {
+            validate(config);
+            return;
+        }
+        if (_keystreamStoreName != null) {
+            _keystreamStore = KeystreamStore.open(
+                Paths.get(_keystreamStoreName), KEYSTREAM_STORE_SLOTS,
+                KEYSTREAM_STORE_SLOT_BYTES);
+        }
+        if (_keystreamCache > 0) {
+            _keystreams = new KeystreamCache(_keystreamCache,
+                                             KEYSTREAM_LENGTH,
+                                             _keystreamStore);
+        }
+        if (_binarySetting != null) {
+            processBytes(config.newMachine());
+            return;
+        }
 
-            String cycles = "";
-            while (_config.hasNext("\\(.*\\)")) {
-                cycles = cycles + _config.next() + " ";
+        if (!"*".equals(_input.peekToken())) {
+            throw error("Missing *. Invalid start of the input.");
+        }
+        if (_threads > 1) {
+            new ParallelProcessor(config, this::newEngine, _threads)
+                .process(_input, _output);
+        } else if (_pipelined) {
+            new PipelinedProcessor(newEngine(config.newMachine()))
+                .process(_input, _output);
+        } else {
+            Engine engine = newEngine(config.newMachine());
+            while (_input.hasNextLine()) {
+                processLine(engine, _input.nextLine(), _output);
             }
+        }
+    }
+
+    /** Check the lines of _input for machines of CONFIG, printing each
+     *  problem on _output. */
+    private void validate(Config config) {
+        long problems =
+            new Validator(config, _output::println).check(_input);
+        if (problems > 0) {
+            throw error("%d error%s in the input", problems,
+                        problems == 1 ? "" : "s");
+        }
+    }
+
+    /** Process LINE, a line of input, using E: a setting line sets up
+     *  E's machine, and a message line is converted by E and printed on
+     *  OUT. */
+    static void processLine(Engine E, String line, PrintStream out) {
+        if (line.isEmpty()) {
+            out.println();
+        } else if (line.charAt(0) == '*') {
+            setUp(E.machine(), line.substring(1));
+            E.reset();
+        } else {
+            printMessageLine(E.convert(line), out);
+        }
+    }
 
-            if (notches.charAt(0) == 'M') {
-                return new MovingRotor(name,
-                        new Permutation(cycles, _alphabet),
-                        notches.substring(1));
-            } else if (notches.charAt(0) == 'N') {
-                return new FixedRotor(name,
-                        new Permutation(cycles, _alphabet));
-            } else if (notches.charAt(0) == 'R') {
-                return new Reflector(name,
-                        new Permutation(cycles, _alphabet));
+    /** Set up MACHINE from _binarySetting and apply it to the raw bytes
+     *  of the input, sending the results to the output.  When both are
+     *  files, they are mapped rather than copied through buffers. */
+    private void processBytes(Machine machine) {
+        setUp(machine, _binarySetting);
+        ByteStreamCipher cipher = new ByteStreamCipher(machine);
+        try (ReadableByteChannel in = getInputChannel(_inputName);
+             WritableByteChannel out = getOutputChannel(_outputName)) {
+            if (in instanceof FileChannel && out instanceof FileChannel) {
+                cipher.convert((FileChannel) in, (FileChannel) out);
             } else {
-                throw new EnigmaException("Invalid rotor type.");
+                cipher.convert(in, out);
             }
-        } catch (NoSuchElementException excp) {
-            throw error("Invalid rotor description");
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the configuration read from configuration file _config. */
+    private Config readConfig() {
+        return _config.config();
+    }
+
+    /** Close my input and output files and keystream store, if any,
+     *  finishing compressed output. */
+    void close() {
+        if (_keystreamStore != null) {
+            _keystreamStore.close();
+        }
+        if (_inputName != null && _input != null) {
+            _input.close();
+        }
+        if ((_outputName != null || _gzip) && _output != null) {
+            _output.close();
         }
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
         String[] rotors = new String[M.numRotors()];
-        Scanner newScanner = new Scanner(settings);
+        Tokenizer tokens = new Tokenizer(settings);
 
         int count = 0;
         while (count < rotors.length) {
-            rotors[count] = newScanner.next();
+            rotors[count] = tokens.next();
             count++;
         }
         M.insertRotors(rotors);
 
-        String settingofRotors = newScanner.next();
+        String settingofRotors = tokens.next();
         M.setRotors(settingofRotors);
 
         String ringSettings = "";
-        if (newScanner.hasNext() && !newScanner.hasNext("\\(.*\\)")) {
-            ringSettings = newScanner.next();
+        if (tokens.hasNext() && !tokens.hasNextCycle()) {
+            ringSettings = tokens.next();
             M.setRingSetting(ringSettings);
         }
 
         String cycles = "";
-        while (newScanner.hasNext("\\(.*\\)")) {
-            cycles = cycles + newScanner.next() + " ";
+        while (tokens.hasNextCycle()) {
+            cycles = cycles + tokens.next() + " ";
         }
 
-        M.setPlugboard(new Permutation(cycles, _alphabet));
+        M.setPlugboard(new Permutation(cycles, M.alphabet()));
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i += 5) {
-            if (msg.length() - i <= 5) {
-                _output.print(msg.substring(i));
-                _output.print('\n');
+    /** Print MSG on OUT in groups of five (except that the last group may
+     *  have fewer letters).  Groups count characters, not chars, so
+     *  supplementary characters are never split. */
+    static void printMessageLine(String msg, PrintStream out) {
+        int len = msg.codePointCount(0, msg.length());
+        int start = 0;
+        for (int i = 0; i < len; i += 5) {
+            if (len - i <= 5) {
+                out.print(msg.substring(start));
+                out.print('\n');
             } else {
-                _output.print(msg.substring(i, i + 5) + " ");
+                int end = msg.offsetByCodePoints(start, 5);
+                out.print(msg.substring(start, end) + " ");
+                start = end;
             }
         }
     }
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** Encoding of all configuration, input, and output files. */
+    static final String CHARSET = "UTF-8";
+
+    /** Name of the input file, or null for the standard input. */
+    private String _inputName;
+
+    /** Name of the output file, or null for the standard output. */
+    private String _outputName;
+
+    /** Setting line used in binary mode, or null for ordinary
+     *  message processing. */
+    private String _binarySetting;
+
+    /** Number of threads enciphering sections of the input. */
+    private int _threads = 1;
+
+    /** True iff reading, enciphering, and writing are pipelined. */
+    private boolean _pipelined;
+
+    /** Name of the engine that enciphers messages. */
+    private String _engine = AutoEngine.NAME;
+
+    /** True iff the output is compressed. */
+    private boolean _gzip;
+
+    /** True iff the input is checked rather than enciphered. */
+    private boolean _validate;
+
+    /** Fraction of messages checked against the reference engine, or 0
+     *  if none are. */
+    private double _verify;
+
+    /** Number of keystreams kept by --keystream-cache, or 0. */
+    private int _keystreamCache;
+
+    /** The keystreams of recurring setting lines, or null. */
+    private KeystreamCache _keystreams;
+
+    /** Name of the file given by --keystream-store, or null. */
+    private String _keystreamStoreName;
+
+    /** The store named by _keystreamStoreName, once open, or null. */
+    private KeystreamStore _keystreamStore;
+
+    /** Number of slots, and size of each in bytes, of a store created by
+     *  --keystream-store: enough for keystreams of KEYSTREAM_LENGTH
+     *  keypresses of five-rotor machines over a 26-character
+     *  alphabet. */
+    static final int KEYSTREAM_STORE_SLOTS = 1024,
+        KEYSTREAM_STORE_SLOT_BYTES = 1 << 15;
+
+    /** Number of keystreams kept by --keystream-cache without a
+     *  value. */
+    static final int DEFAULT_KEYSTREAM_CACHE = 256;
+
+    /** Number of keypresses covered by each cached keystream. */
+    static final int KEYSTREAM_LENGTH = 1024;
+
+    /** Fraction of messages checked by --verify without a value. */
+    static final double DEFAULT_VERIFY_FRACTION = 0.01;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private ConfigCache.Entry _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
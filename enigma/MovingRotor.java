@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.BitSet;
+
 import static enigma.EnigmaException.*;
 
 /** Class that represents a rotating rotor in the enigma machine.
@@ -13,23 +15,35 @@ class MovingRotor extends Rotor {
      *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
+        super(name, perm);
+        _notches = new BitSet(size());
+        notches.codePoints().forEach(cp -> {
+            if (alphabet().containsCodePoint(cp)) {
+                _notches.set(alphabet().toIndex(cp));
+            }
+        });
+    }
+
+    /** A rotor named NAME with permutation PERM whose notches are at
+     *  the settings in NOTCHES, which it may share. */
+    private MovingRotor(String name, Permutation perm, BitSet notches) {
         super(name, perm);
         _notches = notches;
     }
 
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), permutation(), _notches);
+    }
+
     @Override
     boolean rotates() {
         return true;
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (_notches.charAt(i) == alphabet().toChar(setting())) {
-                return true;
-            }
-        }
-        return false;
+    boolean notchAt(int posn) {
+        return _notches.get(posn);
     }
 
     @Override
@@ -37,8 +51,8 @@ class MovingRotor extends Rotor {
         set(setting() + 1);
     }
 
-    /** An ordered list of all notches. */
-    private String _notches;
+    /** The settings at which I am at a notch. */
+    private final BitSet _notches;
 
 
 }
@@ -0,0 +1,195 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static enigma.EnigmaException.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** Log-probability scores of the N-grams (sequences of N characters) of
+ *  some language over an alphabet, used to judge how plausible a
+ *  candidate decryption is.  The score of every possible N-gram is stored
+ *  in a flat array of floats indexed by the N-gram read as a base-size
+ *  number, in a file that is memory-mapped rather than read, so that
+ *  several processes (or many restarts) share one copy and opening a
+ *  table costs nothing.
+ *
+ *  File format (little-endian): the int MAGIC; N; the alphabet size S;
+ *  the S code points of the alphabet; and S**N float scores.
+ *  @author yuxinye
+ */
+public final class NgramTable {
+
+    /** Build a table of ARGS[0]-grams over the alphabet of configuration
+     *  file ARGS[1] from the text in ARGS[2] (characters not in the
+     *  alphabet are skipped), and write it to ARGS[3]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("usage: java enigma.NgramTable N CONFIG "
+                            + "CORPUS TABLE");
+            }
+            int n = Integer.parseInt(args[0]);
+            Alphabet alphabet =
+                new ConfigCache().open(args[1]).config().alphabet();
+            String corpus = new String(Files.readAllBytes(Paths.get(args[2])),
+                                       Main.CHARSET);
+            write(Paths.get(args[3]), n, alphabet, corpus);
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: N must be an integer");
+            System.exit(1);
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A table of N-grams over ALPHABET with scores SCORES. */
+    private NgramTable(int n, Alphabet alphabet, FloatBuffer scores) {
+        _order = n;
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _scores = scores;
+    }
+
+    /** Return the table in FILE, which is mapped into memory. */
+    static NgramTable map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 3 * Integer.BYTES
+                || buffer.getInt() != MAGIC) {
+                throw error("%s is not an n-gram table", file);
+            }
+            int n = buffer.getInt(), size = buffer.getInt();
+            long entries = entries(n, size);
+            if (buffer.remaining()
+                != (long) size * Integer.BYTES + entries * Float.BYTES) {
+                throw error("%s is truncated", file);
+            }
+            int[] codePoints = new int[size];
+            for (int i = 0; i < size; i += 1) {
+                codePoints[i] = buffer.getInt();
+            }
+            return new NgramTable(n, new Alphabet(codePoints),
+                                  buffer.slice().order(ByteOrder.LITTLE_ENDIAN)
+                                  .asFloatBuffer());
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Write to FILE the table of N-grams over ALPHABET whose scores are
+     *  the base-10 logarithms of their relative frequencies in CORPUS,
+     *  ignoring characters of CORPUS not in ALPHABET.  N-grams absent
+     *  from CORPUS get the score of one tenth of an occurrence. */
+    static void write(Path file, int n, Alphabet alphabet,
+                      CharSequence corpus) {
+        int size = alphabet.size();
+        long entries = entries(n, size);
+        int[] counts = new int[(int) entries];
+        long total = 0;
+        int index = 0, filled = 0;
+        for (int i = 0; i < corpus.length(); ) {
+            int cp = Character.codePointAt(corpus, i);
+            i += Character.charCount(cp);
+            if (!alphabet.containsCodePoint(cp)) {
+                continue;
+            }
+            index = (int) ((index * (long) size + alphabet.toIndex(cp))
+                           % entries);
+            filled += 1;
+            if (filled >= n) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("corpus has no %d-grams", n);
+        }
+        ByteBuffer buffer =
+            ByteBuffer.allocate((3 + size) * Integer.BYTES
+                                + (int) entries * Float.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(n).putInt(size);
+        for (int i = 0; i < size; i += 1) {
+            buffer.putInt(alphabet.toCodePoint(i));
+        }
+        for (int count : counts) {
+            double p = (count == 0 ? ABSENT_COUNT : count) / (double) total;
+            buffer.putFloat((float) Math.log10(p));
+        }
+        try {
+            Files.write(file, buffer.array());
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the number of N-grams over SIZE characters, checking that
+     *  a table of them is allowed. */
+    private static long entries(int n, int size) {
+        if (n < 1 || size < 1) {
+            throw error("bad n-gram table dimensions");
+        }
+        long result = 1;
+        for (int i = 0; i < n; i += 1) {
+            result *= size;
+            if (result > MAX_ENTRIES) {
+                throw error("too many %d-grams over %d characters", n, size);
+            }
+        }
+        return result;
+    }
+
+    /** Return N, the length of my N-grams. */
+    int order() {
+        return _order;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the sum of my scores for each of the N-grams among the
+     *  first LEN character indices of TEXT. */
+    double score(int[] text, int len) {
+        double sum = 0;
+        int n = _order, size = _size;
+        for (int i = 0; i + n <= len; i += 1) {
+            int index = 0;
+            for (int j = i; j < i + n; j += 1) {
+                index = index * size + text[j];
+            }
+            sum += _scores.get(index);
+        }
+        return sum;
+    }
+
+    /** Identifies n-gram table files ("NGRM"). */
+    static final int MAGIC = 0x4d52474e;
+
+    /** Largest number of entries in a table. */
+    static final long MAX_ENTRIES = 1L << 28;
+
+    /** The count assumed for N-grams absent from a corpus. */
+    private static final double ABSENT_COUNT = 0.1;
+
+    /** Length of my N-grams. */
+    private final int _order;
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Size of my alphabet. */
+    private final int _size;
+    /** The scores, indexed by N-gram. */
+    private final FloatBuffer _scores;
+}
@@ -0,0 +1,137 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** Processes an input file by splitting it into sections, each starting
+ *  at a setting line, and enciphering the sections concurrently.  Since a
+ *  setting line completely determines the state of a machine, sections
+ *  are independent.  Each worker thread has its own machine, and the
+ *  output of each section is collected in memory and written in input
+ *  order, so that the result (including the point at which an error is
+ *  reported) is the same as processing the input serially.
+ *  @author yuxinye
+ */
+class ParallelProcessor {
+
+    /** A processor for CONFIG's machines using THREADS worker threads,
+     *  each enciphering with an engine obtained from ENGINES for a new
+     *  machine. */
+    ParallelProcessor(Config config, Function<Machine, Engine> engines,
+                      int threads) {
+        _threads = threads;
+        _engines = ThreadLocal.withInitial(
+            () -> engines.apply(config.newMachine()));
+    }
+
+    /** Process all remaining lines of INPUT, printing the results on
+     *  OUTPUT. */
+    void process(LineReader input, PrintStream output) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Section>> pending = new ArrayDeque<>();
+        try {
+            ArrayList<String> lines = new ArrayList<>();
+            while (input.hasNextLine()) {
+                String line = input.nextLine();
+                if (!line.isEmpty() && line.charAt(0) == '*'
+                    && !lines.isEmpty()) {
+                    List<String> section = lines;
+                    pending.add(pool.submit(() -> convert(section)));
+                    lines = new ArrayList<>();
+                    write(pending, WINDOW_PER_THREAD * _threads, output);
+                }
+                lines.add(line);
+            }
+            if (!lines.isEmpty()) {
+                List<String> section = lines;
+                pending.add(pool.submit(() -> convert(section)));
+            }
+            write(pending, 0, output);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the result of processing LINES, which start with a
+     *  setting line (except at the start of the input), with this
+     *  thread's engine. */
+    private Section convert(List<String> lines) {
+        Engine engine = _engines.get();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out =
+            new PrintStream(bytes, false, Charset.forName(Main.CHARSET));
+        RuntimeException error = null;
+        try {
+            for (String line : lines) {
+                Main.processLine(engine, line, out);
+            }
+        } catch (RuntimeException excp) {
+            error = excp;
+        }
+        out.flush();
+        return new Section(bytes.toByteArray(), error);
+    }
+
+    /** Remove sections from the front of PENDING and print them on
+     *  OUTPUT for as long as they are complete, and regardless of that
+     *  while more than LIMIT remain.  Rethrows the error that ended a
+     *  section, if any, after printing the output that preceded it. */
+    private void write(ArrayDeque<Future<Section>> pending, int limit,
+                       PrintStream output) {
+        while (!pending.isEmpty()
+               && (pending.size() > limit || pending.peek().isDone())) {
+            Section section;
+            try {
+                section = pending.remove().get();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof Error) {
+                    throw (Error) excp.getCause();
+                }
+                throw new IllegalStateException(excp.getCause());
+            }
+            output.write(section._output, 0, section._output.length);
+            if (section._error != null) {
+                throw section._error;
+            }
+        }
+    }
+
+    /** The result of processing one section. */
+    private static class Section {
+        /** A section that printed OUTPUT and then stopped with ERROR (or
+         *  finished normally, if ERROR is null). */
+        Section(byte[] output, RuntimeException error) {
+            _output = output;
+            _error = error;
+        }
+
+        /** The encoded output of the section. */
+        private final byte[] _output;
+        /** The error that stopped the section, or null. */
+        private final RuntimeException _error;
+    }
+
+    /** Number of sections that may be in progress or waiting to be
+     *  written, per worker thread. */
+    static final int WINDOW_PER_THREAD = 4;
+
+    /** Number of worker threads. */
+    private final int _threads;
+
+    /** Each worker's engine. */
+    private final ThreadLocal<Engine> _engines;
+}
@@ -0,0 +1,164 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ParallelProcessor class.
+ *  @author yuxinye
+ */
+public class ParallelProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Settings used in the inputs. */
+    private static final String[] SETTINGS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C Gamma V II VI MNOP (AZ)",
+        "* B Beta I II III ZZZZ",
+    };
+
+    /** Number of lines in each section of the inputs. */
+    private static final int SECTION_LINES = 3;
+
+    /** Return an input of N sections of SECTION_LINES lines apiece, each
+     *  a setting line followed by messages, from RAND.  Section BAD, if
+     *  any, has a character outside the alphabet in its last line. */
+    private static String input(int n, int bad, Random rand) {
+        StringBuilder result = new StringBuilder();
+        for (int s = 0; s < n; s += 1) {
+            result.append(SETTINGS[rand.nextInt(SETTINGS.length)])
+                .append('\n');
+            for (int k = 1; k < SECTION_LINES; k += 1) {
+                for (int i = rand.nextInt(40); i > 0; i -= 1) {
+                    result.append(rand.nextInt(8) == 0 ? ' '
+                                  : UPPER.toChar(rand.nextInt(26)));
+                }
+                if (s == bad && k == SECTION_LINES - 1) {
+                    result.append('1');
+                }
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a reader for TEXT. */
+    private static LineReader reader(String text) {
+        return new LineReader(new ByteArrayInputStream(
+            text.getBytes(Charset.forName(Main.CHARSET))), Main.CHARSET);
+    }
+
+    /** Process INPUT one line at a time with one machine, writing to
+     *  OUT.  Returns the message of the error that stopped it, or null. */
+    private static String serial(String input, OutputStream out) {
+        Engine engine = new TableEngine(navalConfig().newMachine());
+        PrintStream print =
+            new PrintStream(out, false, Charset.forName(Main.CHARSET));
+        LineReader lines = reader(input);
+        try {
+            while (lines.hasNextLine()) {
+                Main.processLine(engine, lines.nextLine(), print);
+            }
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        } finally {
+            print.flush();
+        }
+    }
+
+    /** Process INPUT from LINES with THREADS threads, writing to OUT.
+     *  Returns the message of the error that stopped it, or null. */
+    private static String parallel(LineReader lines, int threads,
+                                   OutputStream out) {
+        PrintStream print =
+            new PrintStream(out, false, Charset.forName(Main.CHARSET));
+        try {
+            new ParallelProcessor(navalConfig(), TableEngine::new, threads)
+                .process(lines, print);
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        } finally {
+            print.flush();
+        }
+    }
+
+    @Test
+    public void checkMatchesSerial() {
+        Random rand = new Random(28);
+        for (int threads : new int[] { 1, 2, 5 }) {
+            String input = input(200, -1, rand);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream(),
+                actual = new ByteArrayOutputStream();
+            assertNull(serial(input, expected));
+            assertNull(parallel(reader(input), threads, actual));
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void checkErrorOrder() {
+        Random rand = new Random(29);
+        for (int bad : new int[] { 0, 1, 77, 199 }) {
+            String input = input(200, bad, rand);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream(),
+                actual = new ByteArrayOutputStream();
+            String error = serial(input, expected);
+            assertNotNull(error);
+            assertEquals(error, parallel(reader(input), 4, actual));
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void checkWindow() {
+        int threads = 3;
+        int window = ParallelProcessor.WINDOW_PER_THREAD * threads;
+        int[] read = new int[1];
+        LineReader lines = new LineReader(new ByteArrayInputStream(
+            input(300, -1, new Random(30))
+            .getBytes(Charset.forName(Main.CHARSET))), Main.CHARSET) {
+                @Override
+                String nextLine() {
+                    read[0] += 1;
+                    return super.nextLine();
+                }
+            };
+        List<Integer> readAtWrite = new ArrayList<>();
+        OutputStream out = new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    readAtWrite.add(read[0]);
+                }
+            };
+        assertNull(parallel(lines, threads, out));
+        assertEquals(300, readAtWrite.size());
+        for (int k = 0; k < readAtWrite.size(); k += 1) {
+            assertTrue("section " + k + " written after reading "
+                       + readAtWrite.get(k) + " lines",
+                       readAtWrite.get(k)
+                       <= SECTION_LINES * (k + window + 1) + 1);
+        }
+    }
+}
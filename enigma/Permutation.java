@@ -1,6 +1,6 @@
 package enigma;
-import java.util.List;
-import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
@@ -15,29 +15,86 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
+        _forward = IndexTable.identity(size());
+        _inverse = IndexTable.identity(size());
+
+        boolean[] used = new boolean[size()];
+        int[] cycle = new int[size()];
+        int len = -1;
+        for (int i = 0; i < cycles.length(); ) {
+            int cp = cycles.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isWhitespace(cp)) {
+                continue;
+            } else if (cp == '(' && len < 0) {
+                len = 0;
+            } else if (cp == ')' && len >= 0) {
+                addCycle(cycle, len);
+                len = -1;
+            } else if (len >= 0 && len < cycle.length) {
+                int k = _alphabet.toIndex(cp);
+                if (used[k]) {
+                    throw error("Character repeated in cycles");
+                }
+                used[k] = true;
+                cycle[len] = k;
+                len += 1;
+            } else {
+                throw error("Malformed permutation cycles");
+            }
+        }
+        if (len >= 0) {
+            throw error("Unterminated permutation cycle");
+        }
+    }
 
-        String newCycles = cycles.trim();
-        newCycles = newCycles.replace(")(", " ").replace(
-                "(", "").replace(")", "");
-        String[] temp = newCycles.split(" ");
-
-        _cycles = new ArrayList<>();
-        for (String t:temp) {
-            _cycles.add(t);
+    /** Set this Permutation to the one that maps K to MAP[K] for each
+     *  index K of ALPHABET.  MAP must be a bijection on
+     *  0 .. ALPHABET.size()-1. */
+    Permutation(int[] map, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (map.length != size()) {
+            throw error("Permutation has wrong size");
+        }
+        _forward = IndexTable.create(size(), size());
+        _inverse = IndexTable.create(size(), size());
+        boolean[] hit = new boolean[size()];
+        for (int k = 0; k < map.length; k += 1) {
+            if (map[k] < 0 || map[k] >= size() || hit[map[k]]) {
+                throw error("Mapping is not a permutation");
+            }
+            hit[map[k]] = true;
+            _forward.set(k, map[k]);
+            _inverse.set(map[k], k);
         }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        _cycles.add(cycle);
+     *  c0c1...cm, given as the first LEN entries of CYCLE. */
+    private void addCycle(int[] cycle, int len) {
+        for (int j = 0; j < len; j += 1) {
+            int from = cycle[j], to = cycle[(j + 1) % len];
+            _forward.set(from, to);
+            _inverse.set(to, from);
+        }
     }
 
-    /** Return the value of P modulo the size of this permutation. */
+    /** Return the value of P modulo the size of this permutation.  Values
+     *  within one alphabet length of the range, which is all that rotor
+     *  offsets produce, are wrapped without a division. */
     final int wrap(int p) {
-        int r = p % size();
+        int n = size();
+        if (p >= n) {
+            p -= n;
+        } else if (p < 0) {
+            p += n;
+        }
+        if (p >= 0 && p < n) {
+            return p;
+        }
+        int r = p % n;
         if (r < 0) {
-            r += size();
+            r += n;
         }
         return r;
     }
@@ -50,50 +107,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        if (_cycles.isEmpty()) {
-            return p;
-        }
-
-        char c = _alphabet.toChar(wrap(p));
-        char nextChar;
-        for (int i = 0; i < _cycles.size(); i++) {
-            for (int j = 0; j < _cycles.get(i).length(); j++) {
-                if (_cycles.get(i).charAt(j) == c) {
-                    if (j == _cycles.get(i).length() - 1) {
-                        nextChar = _cycles.get(i).charAt(0);
-                    } else {
-                        nextChar = _cycles.get(i).charAt(j + 1);
-                    }
-                    return _alphabet.toInt(nextChar);
-                }
-            }
-        }
-        return wrap(p);
+        return _forward.get(wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        if (_cycles.isEmpty()) {
-            return c;
-        }
-
-        char p = _alphabet.toChar(wrap(c));
-        char lastChar;
-        for (int i = 0; i < _cycles.size(); i++) {
-            for (int j = 0; j < _cycles.get(i).length(); j++) {
-                if (_cycles.get(i).charAt(j) == p) {
-                    if (j == 0) {
-                        lastChar = _cycles.get(i).charAt(
-                                _cycles.get(i).length() - 1);
-                    } else {
-                        lastChar = _cycles.get(i).charAt(j - 1);
-                    }
-                    return _alphabet.toInt(lastChar);
-                }
-            }
-        }
-        return wrap(c);
+        return _inverse.get(wrap(c));
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -114,24 +134,43 @@ class Permutation {
         return _alphabet;
     }
 
+    /** Set INTO, which must have size() elements, to the mapping of
+     *  this permutation (INTO[K] is the image of K), and return it. */
+    int[] toArray(int[] into) {
+        if (into.length != size()) {
+            throw error("Permutation has wrong size");
+        }
+        for (int k = 0; k < into.length; k += 1) {
+            into[k] = _forward.get(k);
+        }
+        return into;
+    }
+
+    /** Return this permutation in the cycle notation accepted by the
+     *  constructor (omitting fixed points). */
+    @Override
+    public String toString() {
+        return PermutationAlgebra.toCycles(toArray(new int[size()]),
+                                           _alphabet);
+    }
+
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int count = 0;
-
-        for (int i = 0; i < _cycles.size(); i++) {
-            count += _cycles.get(i).length();
-            if (_cycles.get(i).length() == 1) {
+        for (int k = 0; k < size(); k += 1) {
+            if (_forward.get(k) == k) {
                 return false;
             }
         }
-
-        return count == _alphabet.size() || count != 0;
+        return true;
     }
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** A list of all cycles. */
-    private List<String> _cycles;
+    /** _forward.get(K) is the image of K. */
+    private final IndexTable _forward;
+
+    /** _inverse.get(K) is the preimage of K. */
+    private final IndexTable _inverse;
 }
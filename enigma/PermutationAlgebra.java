@@ -0,0 +1,199 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Operations on permutations of 0 .. N-1 represented as int arrays,
+ *  where P[X] is the image of X.  Results go into arrays supplied by the
+ *  caller (which are returned for convenience), so that search loops can
+ *  combine wirings without allocating.  Unless stated otherwise, a result
+ *  array must not be one of the operands.
+ *  @author yuxinye
+ */
+final class PermutationAlgebra {
+
+    /** Not instantiable. */
+    private PermutationAlgebra() {
+    }
+
+    /** Set INTO to the identity permutation and return it. */
+    static int[] identity(int[] into) {
+        for (int x = 0; x < into.length; x += 1) {
+            into[x] = x;
+        }
+        return into;
+    }
+
+    /** Set INTO to the permutation that applies FIRST and then SECOND
+     *  (X maps to SECOND[FIRST[X]]) and return it.  INTO may be FIRST. */
+    static int[] compose(int[] first, int[] second, int[] into) {
+        checkSizes(first, second, into);
+        for (int x = 0; x < into.length; x += 1) {
+            into[x] = second[first[x]];
+        }
+        return into;
+    }
+
+    /** Set INTO to the inverse of P and return it. */
+    static int[] inverse(int[] p, int[] into) {
+        checkSizes(p, into);
+        for (int x = 0; x < p.length; x += 1) {
+            into[p[x]] = x;
+        }
+        return into;
+    }
+
+    /** Set INTO to P applied K times (the inverse applied -K times if K is
+     *  negative) and return it.  SCRATCH must be at least as long as P.
+     *  Takes time proportional to the length of P, whatever K is. */
+    static int[] power(int[] p, long k, int[] into, int[] scratch) {
+        checkSizes(p, into);
+        if (scratch.length < p.length) {
+            throw error("scratch array too small");
+        }
+        Arrays.fill(into, -1);
+        for (int start = 0; start < p.length; start += 1) {
+            if (into[start] >= 0) {
+                continue;
+            }
+            int len = 0;
+            int x = start;
+            do {
+                scratch[len] = x;
+                len += 1;
+                x = p[x];
+            } while (x != start);
+            int step = (int) Math.floorMod(k, (long) len);
+            for (int i = 0; i < len; i += 1) {
+                into[scratch[i]] = scratch[(i + step) % len];
+            }
+        }
+        return into;
+    }
+
+    /** Set INTO to the conjugate of P by a rotation of K positions
+     *  (X maps to P[X + K] - K, modulo the size) and return it.  This is
+     *  the wiring of a rotor with permutation P whose setting exceeds its
+     *  ring setting by K. */
+    static int[] conjugateShift(int[] p, int k, int[] into) {
+        checkSizes(p, into);
+        int n = p.length;
+        k = Math.floorMod(k, n);
+        for (int x = 0; x < n; x += 1) {
+            int y = p[x + k < n ? x + k : x + k - n] - k;
+            into[x] = y < 0 ? y + n : y;
+        }
+        return into;
+    }
+
+    /** Decompose P into cycles.  Sets ORDER (as long as P) to the elements
+     *  of P grouped by cycle, each cycle starting with its smallest
+     *  element and continuing in the order P visits it, with cycles in
+     *  increasing order of their first elements.  Cycle J occupies
+     *  ORDER[STARTS[J]] .. ORDER[STARTS[J + 1] - 1].  STARTS must have
+     *  P.length + 1 entries; those after the last cycle's end are
+     *  unspecified.  Returns the number of cycles. */
+    static int cycles(int[] p, int[] order, int[] starts) {
+        checkSizes(p, order);
+        if (starts.length < p.length + 1) {
+            throw error("starts array too small");
+        }
+        /* Until cycle starts are written over them, STARTS[X + 1] records
+         * whether X has been visited.  When X is examined, fewer than X + 1
+         * cycles have been found, so that entry is still a mark. */
+        Arrays.fill(starts, UNVISITED);
+        int count = 0, len = 0;
+        for (int start = 0; start < p.length; start += 1) {
+            if (starts[start + 1] == VISITED) {
+                continue;
+            }
+            starts[count] = len;
+            count += 1;
+            int x = start;
+            do {
+                order[len] = x;
+                len += 1;
+                if (x > start) {
+                    starts[x + 1] = VISITED;
+                }
+                x = p[x];
+            } while (x != start);
+        }
+        starts[count] = len;
+        return count;
+    }
+
+    /** Return true iff P is the identity. */
+    static boolean isIdentity(int[] p) {
+        for (int x = 0; x < p.length; x += 1) {
+            if (p[x] != x) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff P is its own inverse. */
+    static boolean isInvolution(int[] p) {
+        for (int x = 0; x < p.length; x += 1) {
+            if (p[p[x]] != x) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff P is a permutation of 0 .. P.length-1. */
+    static boolean isPermutation(int[] p) {
+        boolean[] hit = new boolean[p.length];
+        for (int y : p) {
+            if (y < 0 || y >= p.length || hit[y]) {
+                return false;
+            }
+            hit[y] = true;
+        }
+        return true;
+    }
+
+    /** Return P in the cycle notation accepted by the Permutation
+     *  constructor, using the characters of ALPHABET.  Fixed points are
+     *  omitted, so the identity is the empty string. */
+    static String toCycles(int[] p, Alphabet alphabet) {
+        if (p.length != alphabet.size()) {
+            throw error("permutation and alphabet sizes differ");
+        }
+        int[] order = new int[p.length];
+        int[] starts = new int[p.length + 1];
+        int count = cycles(p, order, starts);
+        StringBuilder result = new StringBuilder();
+        for (int j = 0; j < count; j += 1) {
+            if (starts[j + 1] - starts[j] == 1) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append('(');
+            for (int i = starts[j]; i < starts[j + 1]; i += 1) {
+                result.appendCodePoint(alphabet.toCodePoint(order[i]));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Marks for elements not yet placed in a cycle by cycles(). */
+    private static final int UNVISITED = -1;
+    /** Marks for elements already placed in a cycle by cycles(). */
+    private static final int VISITED = -2;
+
+    /** Check that all of ARRAYS have the same length. */
+    private static void checkSizes(int[]... arrays) {
+        for (int[] a : arrays) {
+            if (a.length != arrays[0].length) {
+                throw error("permutation sizes differ");
+            }
+        }
+    }
+}
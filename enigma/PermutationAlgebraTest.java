@@ -0,0 +1,122 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.PermutationAlgebra.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PermutationAlgebra class.
+ *  @author yuxinye
+ */
+public class PermutationAlgebraTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the mapping of the naval rotor NAME in the A setting. */
+    private int[] naval(String name) {
+        return new Permutation(NAVALA.get(name), UPPER).toArray(new int[26]);
+    }
+
+    @Test
+    public void checkComposeInverse() {
+        int[] p = naval("I"), q = naval("II");
+        int[] pq = compose(p, q, new int[26]);
+        for (int x = 0; x < 26; x += 1) {
+            assertEquals(q[p[x]], pq[x]);
+        }
+        int[] inv = inverse(p, new int[26]);
+        assertTrue(isIdentity(compose(p, inv, new int[26])));
+        assertTrue(isIdentity(compose(inv, p, new int[26])));
+        int[] copy = p.clone();
+        assertArrayEquals(pq, compose(copy, q, copy));
+    }
+
+    @Test
+    public void checkPower() {
+        int[] p = naval("III");
+        int[] scratch = new int[26];
+        int[] expected = identity(new int[26]);
+        for (int k = 0; k <= 40; k += 1) {
+            assertArrayEquals("power " + k, expected,
+                              power(p, k, new int[26], scratch));
+            compose(expected, p, expected);
+        }
+        int[] inv = inverse(p, new int[26]);
+        assertArrayEquals(inv, power(p, -1, new int[26], scratch));
+        /* III is a 17-cycle, an 8-cycle, and a fixed point. */
+        assertTrue(isIdentity(power(p, 136, new int[26], scratch)));
+        assertFalse(isIdentity(power(p, 68, new int[26], scratch)));
+    }
+
+    @Test
+    public void checkConjugateShift() {
+        for (String name : new String[] { "I", "V", "VIII", "Beta" }) {
+            int[] shifted = conjugateShift(naval(name), 1, new int[26]);
+            assertArrayEquals(name,
+                              new Permutation(NAVALB.get(name), UPPER)
+                                  .toArray(new int[26]),
+                              shifted);
+            shifted = conjugateShift(naval(name), -1, new int[26]);
+            assertArrayEquals(name,
+                              new Permutation(NAVALZ.get(name), UPPER)
+                                  .toArray(new int[26]),
+                              shifted);
+        }
+    }
+
+    @Test
+    public void checkCycles() {
+        int[] p = naval("V");
+        int[] order = new int[26], starts = new int[27];
+        int count = cycles(p, order, starts);
+        assertEquals(3, count);
+        assertEquals(0, starts[0]);
+        assertEquals(26, starts[count]);
+        assertEquals(UPPER.toInt('A'), order[0]);
+        assertEquals(UPPER.toInt('V'), order[1]);
+        assertEquals("(AVOLDRWFIUQ) (BZKSMNHYC) (EGTJPX)",
+                     toCycles(p, UPPER));
+        assertEquals("", toCycles(identity(new int[26]), UPPER));
+    }
+
+    @Test
+    public void checkRoundTrip() {
+        Random rand = new Random(61);
+        Alphabet alpha = Benchmark.alphabet(1000);
+        for (int trial = 0; trial < 20; trial += 1) {
+            int[] p = Benchmark.randomMap(alpha.size(), rand);
+            Permutation perm = new Permutation(p, alpha);
+            Permutation again = new Permutation(perm.toString(), alpha);
+            assertArrayEquals(p, again.toArray(new int[alpha.size()]));
+        }
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            assertArrayEquals(naval(name),
+                              new Permutation(perm.toString(), UPPER)
+                                  .toArray(new int[26]));
+        }
+    }
+
+    @Test
+    public void checkPredicates() {
+        assertTrue(isInvolution(naval("B")));
+        assertTrue(isInvolution(naval("C")));
+        assertFalse(isInvolution(naval("I")));
+        assertTrue(isPermutation(naval("I")));
+        assertFalse(isPermutation(new int[] { 0, 0, 1 }));
+        assertFalse(isPermutation(new int[] { 0, 3, 1 }));
+        assertFalse(isIdentity(naval("I")));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkSizeMismatch() {
+        compose(new int[3], new int[4], new int[3]);
+    }
+}
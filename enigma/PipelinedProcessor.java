@@ -0,0 +1,184 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+import static enigma.EnigmaException.*;
+
+/** Processes an input file in three concurrent stages: a reader thread
+ *  that fills batches of input lines, the calling thread, which
+ *  enciphers them, and a writer thread that copies the resulting output
+ *  to its destination.  The stages are connected by ring buffers, and the
+ *  batches circulate through a fixed pool, going back to the stage that
+ *  fills them through a second ring buffer once they are consumed.  The
+ *  output is the same as processing the input serially.
+ *  @author yuxinye
+ */
+class PipelinedProcessor {
+
+    /** A processor that enciphers with ENGINE. */
+    PipelinedProcessor(Engine engine) {
+        _engine = engine;
+    }
+
+    /** Process all remaining lines of INPUT, printing the results on
+     *  OUTPUT. */
+    void process(LineReader input, PrintStream output) {
+        for (int i = 0; i < POOL_SIZE; i += 1) {
+            put(_emptyLines, new LineBatch());
+            put(_emptyOutput, new OutputBatch());
+        }
+        Thread reader = new Thread(() -> read(input), "enigma-reader");
+        Thread writer = new Thread(() -> write(output), "enigma-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+
+        RuntimeException error = convert();
+        try {
+            writer.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            reader.interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /** The reader stage: fill batches with lines from INPUT until it is
+     *  exhausted. */
+    private void read(LineReader input) {
+        try {
+            boolean last = false;
+            while (!last) {
+                LineBatch batch = _emptyLines.take();
+                batch._count = 0;
+                try {
+                    while (batch._count < BATCH_LINES && input.hasNextLine()) {
+                        batch._lines[batch._count] = input.nextLine();
+                        batch._count += 1;
+                    }
+                    last = !input.hasNextLine();
+                } catch (RuntimeException excp) {
+                    batch._error = excp;
+                    last = true;
+                }
+                batch._last = last;
+                _fullLines.put(batch);
+            }
+        } catch (InterruptedException excp) {
+            /* The pipeline was abandoned. */
+        }
+    }
+
+    /** The encipher stage: convert batches of lines into batches of
+     *  output until the last batch or an error.  Returns the error, if
+     *  any, once its batch has been passed on to the writer. */
+    private RuntimeException convert() {
+        try {
+            while (true) {
+                LineBatch lines = _fullLines.take();
+                OutputBatch out = _emptyOutput.take();
+                out._bytes.reset();
+                RuntimeException error = lines._error;
+                try {
+                    for (int i = 0; i < lines._count && error == null;
+                         i += 1) {
+                        Main.processLine(_engine, lines._lines[i],
+                                         out._stream);
+                    }
+                } catch (RuntimeException excp) {
+                    error = excp;
+                }
+                out._stream.flush();
+                out._last = lines._last || error != null;
+                _emptyLines.put(lines);
+                _fullOutput.put(out);
+                if (out._last) {
+                    return error;
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** The writer stage: copy batches of output to OUTPUT up to and
+     *  including the last. */
+    private void write(PrintStream output) {
+        try {
+            boolean last = false;
+            while (!last) {
+                OutputBatch batch = _fullOutput.take();
+                batch._bytes.writeTo(output);
+                last = batch._last;
+                _emptyOutput.put(batch);
+            }
+            output.flush();
+        } catch (IOException | InterruptedException excp) {
+            /* PrintStreams do not throw; the pipeline was abandoned. */
+        }
+    }
+
+    /** Put ITEM into RING, which must have room. */
+    private static <T> void put(RingBuffer<T> ring, T item) {
+        try {
+            ring.put(item);
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** A reusable batch of input lines. */
+    private static class LineBatch {
+        /** The lines, of which the first _count are valid. */
+        private final String[] _lines = new String[BATCH_LINES];
+        /** Number of valid lines. */
+        private int _count;
+        /** True iff this is the last batch. */
+        private boolean _last;
+        /** An error that occurred while reading, or null. */
+        private RuntimeException _error;
+    }
+
+    /** A reusable batch of encoded output. */
+    private static class OutputBatch {
+        /** The output. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+        /** A stream printing onto _bytes. */
+        private final PrintStream _stream =
+            new PrintStream(_bytes, false, Charset.forName(Main.CHARSET));
+        /** True iff this is the last batch. */
+        private boolean _last;
+    }
+
+    /** Number of lines in a batch. */
+    static final int BATCH_LINES = 256;
+
+    /** Number of batches of each kind, and the capacity of each ring. */
+    static final int POOL_SIZE = 8;
+
+    /** The engine used by the encipher stage. */
+    private final Engine _engine;
+
+    /** Batches of lines waiting to be enciphered. */
+    private final RingBuffer<LineBatch> _fullLines =
+        new RingBuffer<>(POOL_SIZE);
+    /** Batches of lines waiting to be refilled. */
+    private final RingBuffer<LineBatch> _emptyLines =
+        new RingBuffer<>(POOL_SIZE);
+    /** Batches of output waiting to be written. */
+    private final RingBuffer<OutputBatch> _fullOutput =
+        new RingBuffer<>(POOL_SIZE);
+    /** Batches of output waiting to be refilled. */
+    private final RingBuffer<OutputBatch> _emptyOutput =
+        new RingBuffer<>(POOL_SIZE);
+}
@@ -0,0 +1,305 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the plugboard of a machine whose rotors, ring settings, and
+ *  positions are known from a ciphertext, by hill climbing on the n-gram
+ *  score of the corresponding plaintext.
+ *
+ *  Since stepping does not depend on the plugboard, the permutation S_i
+ *  performed by the rotors alone at each position i is computed once.
+ *  With a plugboard P (an involution), ciphertext character c_i then
+ *  deciphers to P[S_i[P[c_i]]], so a candidate plugboard is just an int
+ *  array, changed in place by swapping entries and undone the same way,
+ *  and scoring it takes one pass over the text with no Permutation or
+ *  Machine involved.  Restarts from random plugboards run in parallel.
+ *  @author yuxinye
+ */
+public final class PlugboardClimber {
+
+    /** Recover a plugboard, as specified by ARGS: a configuration file,
+     *  an n-gram table (see NgramTable), a setting line giving the
+     *  rotors and their settings (any plugboard in it is ignored), a
+     *  file containing the ciphertext, and optionally the number of
+     *  restarts.  Prints the plugboard found and the decryption. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 5) {
+                throw error("usage: java enigma.PlugboardClimber CONFIG "
+                            + "TABLE SETTING CIPHERTEXT [RESTARTS]");
+            }
+            Machine machine =
+                new ConfigCache().open(args[0]).config().newMachine();
+            NgramTable table = NgramTable.map(Paths.get(args[1]));
+            Main.setUp(machine, args[2].startsWith("*") ? args[2].substring(1)
+                       : args[2]);
+            String text = new String(Files.readAllBytes(Paths.get(args[3])),
+                                     Main.CHARSET);
+            int restarts = args.length > 4 ? Integer.parseInt(args[4])
+                : DEFAULT_RESTARTS;
+            PlugboardClimber climber =
+                new PlugboardClimber(machine,
+                                     KeySearch.indices(text,
+                                                       machine.alphabet()),
+                                     table, machine.alphabet().size() / 2);
+            Result best =
+                climber.search(restarts,
+                               Runtime.getRuntime().availableProcessors(),
+                               System.nanoTime());
+            machine.setPlugboard(best.plugboard(machine.alphabet()));
+            System.out.println(machine.plugboard());
+            Main.printMessageLine(
+                new ReferenceEngine(machine).convert(text), System.out);
+        } catch (NumberFormatException excp) {
+            System.err.println("Error: RESTARTS must be an integer");
+            System.exit(1);
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A climber for CIPHERTEXT (character indices), enciphered by
+     *  MACHINE from its current rotor positions with an unknown plugboard
+     *  of at most MAXPAIRS pairs, that scores plaintexts with TABLE.
+     *  MACHINE is left as it was. */
+    PlugboardClimber(Machine machine, int[] ciphertext, NgramTable table,
+                     int maxPairs) {
+        Alphabet alphabet = machine.alphabet();
+        if (!alphabet.toString().equals(table.alphabet().toString())) {
+            throw error("n-gram table is for a different alphabet");
+        }
+        _size = alphabet.size();
+        _length = ciphertext.length;
+        if ((long) _size * _length > MAX_SCRAMBLER) {
+            throw error("ciphertext too long for this alphabet");
+        }
+        _ciphertext = ciphertext.clone();
+        _table = table;
+        _maxPairs = Math.min(maxPairs, _size / 2);
+        _scrambler = new int[_size * _length];
+
+        Permutation plugboard = machine.plugboard();
+        int[] posns = new int[machine.numRotors()];
+        for (int i = 0; i < posns.length; i += 1) {
+            posns[i] = machine.rotor(i).setting();
+        }
+        machine.setPlugboard(new Permutation("", alphabet));
+        Engine engine = new TableEngine(machine);
+        int[] msg = new int[_length];
+        for (int x = 0; x < _size; x += 1) {
+            for (int i = 0; i < posns.length; i += 1) {
+                machine.rotor(i).set(posns[i]);
+            }
+            Arrays.fill(msg, x);
+            engine.convert(msg, _length);
+            for (int i = 0; i < _length; i += 1) {
+                _scrambler[i * _size + x] = msg[i];
+            }
+        }
+        for (int i = 0; i < posns.length; i += 1) {
+            machine.rotor(i).set(posns[i]);
+        }
+        machine.setPlugboard(plugboard);
+    }
+
+    /** Return the best result of RESTARTS climbs from random plugboards,
+     *  run on THREADS threads, with random choices made from SEED.  The
+     *  result depends only on the arguments, not on thread timing. */
+    Result search(int restarts, int threads, long seed) {
+        if (restarts < 1 || threads < 1) {
+            throw error("need at least one restart and thread");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> results = new ArrayList<>();
+            for (int r = 0; r < restarts; r += 1) {
+                long restartSeed = seed * SEED_MULTIPLIER + r;
+                results.add(pool.submit(() -> climb(restartSeed)));
+            }
+            Result best = null;
+            for (Future<Result> future : results) {
+                Result result = future.get();
+                if (best == null || result.score() > best.score()) {
+                    best = result;
+                }
+            }
+            return best;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the result of climbing from a random plugboard chosen
+     *  using SEED: repeatedly make the first change of one pair of
+     *  characters that improves the score, until none does. */
+    Result climb(long seed) {
+        Random rand = new Random(seed);
+        int[] plug = PermutationAlgebra.identity(new int[_size]);
+        int[] shuffled = Benchmark.randomMap(_size, rand);
+        int pairs = _maxPairs == 0 ? 0 : rand.nextInt(_maxPairs + 1);
+        for (int i = 0; i < pairs; i += 1) {
+            connect(plug, shuffled[2 * i], shuffled[2 * i + 1]);
+        }
+        int[] text = new int[_length];
+        int[] saved = new int[4];
+        double best = score(plug, text);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1) {
+                    save(plug, a, b, saved);
+                    int change = toggle(plug, a, b);
+                    if (pairs + change <= _maxPairs) {
+                        double s = score(plug, text);
+                        if (s > best + EPSILON) {
+                            best = s;
+                            pairs += change;
+                            improved = true;
+                            continue;
+                        }
+                    }
+                    restore(plug, a, b, saved);
+                }
+            }
+        }
+        return new Result(plug, best);
+    }
+
+    /** Return the score of the decryption of my ciphertext with
+     *  plugboard PLUG, using TEXT to hold it. */
+    private double score(int[] plug, int[] text) {
+        int[] scrambler = _scrambler, ciphertext = _ciphertext;
+        int size = _size;
+        for (int i = 0, base = 0; i < text.length; i += 1, base += size) {
+            text[i] = plug[scrambler[base + plug[ciphertext[i]]]];
+        }
+        return _table.score(text, text.length);
+    }
+
+    /** Connect A and B, which must be unconnected, in PLUG. */
+    private static void connect(int[] plug, int a, int b) {
+        plug[a] = b;
+        plug[b] = a;
+    }
+
+    /** Disconnect A from its partner, if any, in PLUG, and return the
+     *  change in the number of pairs. */
+    private static int disconnect(int[] plug, int a) {
+        int p = plug[a];
+        if (p == a) {
+            return 0;
+        }
+        plug[a] = a;
+        plug[p] = p;
+        return -1;
+    }
+
+    /** If A and B are connected in PLUG, disconnect them; otherwise,
+     *  disconnect them from their partners and connect them to each
+     *  other.  Returns the change in the number of pairs. */
+    private static int toggle(int[] plug, int a, int b) {
+        if (plug[a] == b) {
+            return disconnect(plug, a);
+        }
+        int change = disconnect(plug, a) + disconnect(plug, b);
+        connect(plug, a, b);
+        return change + 1;
+    }
+
+    /** Record in SAVED the entries of PLUG that toggle(PLUG, A, B) may
+     *  change. */
+    private static void save(int[] plug, int a, int b, int[] saved) {
+        saved[0] = plug[a];
+        saved[1] = plug[b];
+        saved[2] = plug[plug[a]];
+        saved[3] = plug[plug[b]];
+    }
+
+    /** Undo toggle(PLUG, A, B), given SAVED as recorded by save before
+     *  it. */
+    private static void restore(int[] plug, int a, int b, int[] saved) {
+        int pa = saved[0], pb = saved[1];
+        plug[a] = a;
+        plug[b] = b;
+        plug[pa] = saved[2];
+        plug[pb] = saved[3];
+        plug[a] = pa;
+        plug[b] = pb;
+    }
+
+    /** The outcome of a climb. */
+    static class Result {
+        /** A result for plugboard PLUG, with score SCORE. */
+        Result(int[] plug, double score) {
+            _plug = plug;
+            _score = score;
+        }
+
+        /** Return the plugboard as a mapping of character indices. */
+        int[] plug() {
+            return _plug.clone();
+        }
+
+        /** Return the plugboard as a permutation of ALPHABET. */
+        Permutation plugboard(Alphabet alphabet) {
+            return new Permutation(_plug, alphabet);
+        }
+
+        /** Return the n-gram score of the decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** The plugboard. */
+        private final int[] _plug;
+        /** Its score. */
+        private final double _score;
+    }
+
+    /** Number of restarts when none is given. */
+    static final int DEFAULT_RESTARTS = 32;
+
+    /** Largest number of entries in the precomputed rotor permutations. */
+    static final long MAX_SCRAMBLER = 1L << 27;
+
+    /** Smallest score increase counted as an improvement. */
+    private static final double EPSILON = 1e-9;
+
+    /** Spreads the seeds of successive restarts. */
+    private static final long SEED_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /** Alphabet size and ciphertext length. */
+    private final int _size, _length;
+    /** The ciphertext, as character indices. */
+    private final int[] _ciphertext;
+    /** For position I and character X, _scrambler[I * _size + X] is the
+     *  result of passing X through the rotors (without the plugboard) at
+     *  the Ith keypress. */
+    private final int[] _scrambler;
+    /** Scores of plaintexts. */
+    private final NgramTable _table;
+    /** Largest number of plugboard pairs. */
+    private final int _maxPairs;
+}
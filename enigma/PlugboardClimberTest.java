@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardClimber and NgramTable
+ *  classes.
+ *  @author yuxinye
+ */
+public class PlugboardClimberTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Plaintext used both to train the n-gram table and as the
+     *  message. */
+    private static final String PLAIN =
+        "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD "
+        + "MADE OF SLIDING FOLDING ROSEWOOD NEATLY PUT IT ALL TOGETHER "
+        + "IN ITS CASE IT LAY COMPACTLY FOLDED INTO NEARLY NOTHING "
+        + "BUT HE OPENED OUT THE HINGES PUSHED AND PULLED THE JOINTS "
+        + "AND HINGES TILL IT LOOKED ALL SQUARES AND OBLONGS LIKE A "
+        + "COMPLICATED FIGURE IN THE SECOND BOOK OF EUCLID";
+
+    /** Rotor setting of the message, without plugboard. */
+    private static final String ROTORS = "B Beta III IV I AXLE";
+
+    /** Return a quadgram table trained on PLAIN, in a new file. */
+    private NgramTable table(int n) throws IOException {
+        Path file = Files.createTempFile("ngrams", ".bin");
+        file.toFile().deleteOnExit();
+        NgramTable.write(file, n, UPPER, PLAIN);
+        return NgramTable.map(file);
+    }
+
+    /** Return PLAIN (without spaces) as character indices. */
+    private int[] indices(String text) {
+        return text.replace(" ", "").chars().map(c -> c - 'A').toArray();
+    }
+
+    /** Return the characters with indices INDICES. */
+    private String toText(int[] indices) {
+        StringBuilder result = new StringBuilder();
+        for (int k : indices) {
+            result.append((char) ('A' + k));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkTable() throws IOException {
+        NgramTable table = table(2);
+        assertEquals(2, table.order());
+        assertEquals(UPPER_STRING, table.alphabet().toString());
+        double th = table.score(indices("TH"), 2),
+            qz = table.score(indices("QZ"), 2);
+        assertTrue(th > qz);
+        assertEquals(th + table.score(indices("HE"), 2),
+                     table.score(indices("THE"), 3), 1e-6);
+        assertEquals(0, table.score(indices("T"), 1), 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNotATable() throws IOException {
+        Path file = Files.createTempFile("ngrams", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+        NgramTable.map(file);
+    }
+
+    @Test
+    public void checkRecoversPlugboard() throws IOException {
+        Machine sender = navalMachine(ROTORS + " (AQ) (EX) (IP) (TR) (BY) "
+                                      + "(FZ)");
+        int[] cipher = indices(sender.convert(PLAIN.replace(" ", "")));
+
+        Machine receiver = navalMachine(ROTORS);
+        PlugboardClimber climber =
+            new PlugboardClimber(receiver, cipher, table(4), 10);
+        PlugboardClimber.Result best = climber.search(16, 4, 61);
+        assertEquals("(AQ) (BY) (EX) (FZ) (IP) (RT)",
+                     best.plugboard(UPPER).toString());
+        assertEquals(best.score(), climber.search(16, 1, 61).score(), 0);
+
+        assertEquals("", receiver.plugboard().toString());
+        receiver.setPlugboard(best.plugboard(UPPER));
+        assertEquals(PLAIN.replace(" ", ""),
+                     receiver.convert(toText(cipher)));
+    }
+}
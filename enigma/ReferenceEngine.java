@@ -0,0 +1,40 @@
+package enigma;
+
+/** The engine against which all others are checked: each character is
+ *  converted by Machine.convert, rotor by rotor.
+ *  @author yuxinye
+ */
+class ReferenceEngine implements Engine {
+
+    /** An engine that converts with MACHINE. */
+    ReferenceEngine(Machine machine) {
+        _machine = machine;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Machine machine() {
+        return _machine;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void convert(int[] msg, int n) {
+        for (int i = 0; i < n; i += 1) {
+            msg[i] = _machine.convert(msg[i]);
+        }
+    }
+
+    /** My name. */
+    static final String NAME = "reference";
+
+    /** My machine. */
+    private final Machine _machine;
+}
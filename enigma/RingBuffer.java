@@ -0,0 +1,95 @@
+package enigma;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded first-in-first-out queue connecting exactly one producer
+ *  thread to exactly one consumer thread.  A producer that finds the
+ *  buffer full, or a consumer that finds it empty, waits (first spinning
+ *  briefly, then parking) until the other side catches up; this is the
+ *  backpressure between pipeline stages.  Neither side takes a lock.
+ *  @author yuxinye
+ */
+class RingBuffer<T> {
+
+    /** An empty buffer holding up to CAPACITY items, which must be a
+     *  power of two. */
+    RingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw error("ring buffer capacity must be a power of two");
+        }
+        _items = new Object[capacity];
+        _mask = capacity - 1;
+    }
+
+    /** Return my capacity. */
+    int capacity() {
+        return _items.length;
+    }
+
+    /** Add ITEM (not null) at the end, waiting for room if necessary.
+     *  Must only be called from the producer thread. */
+    void put(T item) throws InterruptedException {
+        long tail = _tail;
+        for (int spins = 0; tail - _head == _items.length; spins += 1) {
+            _producer = Thread.currentThread();
+            pause(spins);
+        }
+        _producer = null;
+        _items[(int) tail & _mask] = item;
+        _tail = tail + 1;
+        LockSupport.unpark(_consumer);
+    }
+
+    /** Remove and return the item at the front, waiting for one if
+     *  necessary.  Must only be called from the consumer thread. */
+    @SuppressWarnings("unchecked")
+    T take() throws InterruptedException {
+        long head = _head;
+        for (int spins = 0; head == _tail; spins += 1) {
+            _consumer = Thread.currentThread();
+            pause(spins);
+        }
+        _consumer = null;
+        int k = (int) head & _mask;
+        T item = (T) _items[k];
+        _items[k] = null;
+        _head = head + 1;
+        LockSupport.unpark(_producer);
+        return item;
+    }
+
+    /** Wait briefly, having already waited SPINS times.  Parking is
+     *  bounded, so a wake-up missed because the other side had not yet
+     *  registered itself costs at most PARK_NANOS. */
+    private static void pause(int spins) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (spins < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** Number of times a waiting thread spins before parking. */
+    private static final int SPIN_LIMIT = 100;
+
+    /** Longest time a waiting thread parks before checking again. */
+    private static final long PARK_NANOS = 100_000;
+
+    /** The items, in circular order. */
+    private final Object[] _items;
+    /** Mask reducing a sequence number to an index in _items. */
+    private final int _mask;
+    /** Sequence number of the next item to be taken. */
+    private volatile long _head;
+    /** Sequence number of the next item to be put. */
+    private volatile long _tail;
+    /** The producer, while it waits for room. */
+    private volatile Thread _producer;
+    /** The consumer, while it waits for an item. */
+    private volatile Thread _consumer;
+}
@@ -0,0 +1,55 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the RingBuffer class.
+ *  @author yuxinye
+ */
+public class RingBufferTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void checkSingleThread() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        assertEquals(4, ring.capacity());
+        for (int round = 0; round < 3; round += 1) {
+            for (int i = 0; i < 4; i += 1) {
+                ring.put(round * 10 + i);
+            }
+            for (int i = 0; i < 4; i += 1) {
+                assertEquals(round * 10 + i, (int) ring.take());
+            }
+        }
+    }
+
+    @Test
+    public void checkTwoThreads() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(2);
+        final int count = 100000;
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i += 1) {
+                    ring.put(i);
+                }
+            } catch (InterruptedException excp) {
+                /* Test will fail. */
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i += 1) {
+            assertEquals(i, (int) ring.take());
+        }
+        producer.join();
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkCapacity() {
+        new RingBuffer<String>(3);
+    }
+}
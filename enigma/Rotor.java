@@ -60,6 +60,11 @@ class Rotor {
         set(_permutation.alphabet().toInt(cposn));
     }
 
+    /** Return my current ring setting. */
+    int ringSetting() {
+        return _ringSetting;
+    }
+
     /** Set ring setting to POSN.  */
     void setRing(int posn) {
         _ringSetting = _permutation.wrap(posn);
@@ -73,22 +78,26 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        p = (p + _setting - _ringSetting) % size();
-        p = _permutation.permute(p);
+        p = _permutation.permute(p + _setting - _ringSetting);
         return _permutation.wrap(p - _setting + _ringSetting);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        e = (e + _setting - _ringSetting) % size();
-        e = _permutation.invert(e);
+        e = _permutation.invert(e + _setting - _ringSetting);
         return _permutation.wrap(e - _setting + _ringSetting);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return notchAt(_setting);
+    }
+
+    /** Returns true iff I would be at a notch in setting POSN.  By
+     *  default, I have no notches. */
+    boolean notchAt(int posn) {
         return false;
     }
 
@@ -96,6 +105,12 @@ class Rotor {
     void advance() {
     }
 
+    /** Return a new rotor like me, sharing my permutation, in its 0
+     *  setting and ring setting. */
+    Rotor copy() {
+        return new Rotor(_name, _permutation);
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -0,0 +1,171 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a configuration's machines, indexed by name.
+ *  When read from a configuration file, a catalog records only each
+ *  rotor's name, kind, notches, and where its cycles are in the file's
+ *  text; the rotor itself, with its Permutation, is built the first time
+ *  it is asked for (as when a setting line first names it).  So reading
+ *  a file with a large catalog costs one pass over its tokens, and
+ *  machines that use a few of its rotors never build the rest.  The
+ *  rotors a catalog returns are prototypes, shared by all machines, which
+ *  use copies of them.  A catalog may be used by several threads.
+ *  @author yuxinye
+ */
+final class RotorCatalog {
+
+    /** A catalog of the prototypes ROTORS, which must have distinct
+     *  names. */
+    RotorCatalog(Collection<Rotor> rotors) {
+        for (Rotor r : rotors) {
+            add(new Entry(r));
+        }
+    }
+
+    /** A catalog of the rotors over ALPHABET described by the rest of
+     *  CONFIG, in the format of a configuration file. */
+    static RotorCatalog read(Tokenizer config, Alphabet alphabet) {
+        RotorCatalog catalog = new RotorCatalog(Collections.emptyList());
+        while (config.hasNext()) {
+            catalog.add(readEntry(config, alphabet));
+        }
+        return catalog;
+    }
+
+    /** Return an entry for the rotor over ALPHABET whose description is
+     *  next in CONFIG, skipping its cycles. */
+    private static Entry readEntry(Tokenizer config, Alphabet alphabet) {
+        try {
+            String name = config.next();
+            String notches = config.next();
+            int start = config.position();
+            while (config.hasNextCycle()) {
+                config.next();
+            }
+            char kind = notches.charAt(0);
+            if (kind != 'M' && kind != 'N' && kind != 'R') {
+                throw new EnigmaException("Invalid rotor type.");
+            }
+            return new Entry(name, kind, notches.substring(1), alphabet,
+                             config.text(start, config.position()));
+        } catch (NoSuchElementException excp) {
+            throw error("Invalid rotor description");
+        }
+    }
+
+    /** Add ENTRY, checking that its name is new. */
+    private void add(Entry entry) {
+        if (_entries.putIfAbsent(entry._name, entry) != null) {
+            throw new EnigmaException("Rotor is duplicated");
+        }
+        _names.add(entry._name);
+    }
+
+    /** Return the number of rotors in the catalog. */
+    int size() {
+        return _names.size();
+    }
+
+    /** Return true iff there is a rotor named NAME. */
+    boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Return the prototype of the rotor named NAME, building it if this
+     *  is the first request, or null if there is no such rotor. */
+    Rotor get(String name) {
+        Entry entry = _entries.get(name);
+        return entry == null ? null : entry.rotor();
+    }
+
+    /** Return the names of my rotors, in the order of the configuration
+     *  file. */
+    List<String> names() {
+        return Collections.unmodifiableList(_names);
+    }
+
+    /** Return the prototypes of all my rotors, in the order of the
+     *  configuration file, building any not yet built. */
+    List<Rotor> rotors() {
+        ArrayList<Rotor> result = new ArrayList<>(_names.size());
+        for (String name : _names) {
+            result.add(get(name));
+        }
+        return result;
+    }
+
+    /** The description of one rotor, and the rotor once built. */
+    private static class Entry {
+        /** An entry for ROTOR, which is already built. */
+        Entry(Rotor rotor) {
+            _name = rotor.name();
+            _rotor = rotor;
+        }
+
+        /** An entry for the rotor NAME over ALPHABET, of kind KIND ('M',
+         *  'N', or 'R'), with notches NOTCHES and the cycles in the text
+         *  CYCLES. */
+        Entry(String name, char kind, String notches, Alphabet alphabet,
+              String cycles) {
+            _name = name;
+            _kind = kind;
+            _notches = notches;
+            _alphabet = alphabet;
+            _cycles = cycles;
+        }
+
+        /** Return my rotor, building it if necessary. */
+        Rotor rotor() {
+            Rotor result = _rotor;
+            if (result == null) {
+                synchronized (this) {
+                    result = _rotor;
+                    if (result == null) {
+                        result = _rotor = build();
+                        _cycles = null;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Return the rotor I describe. */
+        private Rotor build() {
+            Permutation perm = new Permutation(_cycles, _alphabet);
+            switch (_kind) {
+            case 'M':
+                return new MovingRotor(_name, perm, _notches);
+            case 'N':
+                return new FixedRotor(_name, perm);
+            default:
+                return new Reflector(_name, perm);
+            }
+        }
+
+        /** The rotor's name. */
+        private final String _name;
+        /** Its kind. */
+        private char _kind;
+        /** Its notches. */
+        private String _notches;
+        /** Its alphabet. */
+        private Alphabet _alphabet;
+        /** Its cycles, until it is built. */
+        private String _cycles;
+        /** The rotor, or null if not yet built. */
+        private volatile Rotor _rotor;
+    }
+
+    /** Entries by rotor name. */
+    private final HashMap<String, Entry> _entries = new HashMap<>();
+    /** Rotor names in the order of the configuration file. */
+    private final ArrayList<String> _names = new ArrayList<>();
+}
@@ -0,0 +1,123 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorCatalog class and its use
+ *  by Config and Machine.
+ *  @author yuxinye
+ */
+public class RotorCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** The start of a configuration file with a few rotors. */
+    private static final String SMALL =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ 3 2\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n";
+
+    /** Return the configuration in TEXT. */
+    private static Config read(String text) {
+        return Config.read(new Tokenizer(text));
+    }
+
+    @Test
+    public void checkCatalog() {
+        Config config = read(SMALL);
+        RotorCatalog catalog = config.catalog();
+        assertEquals(3, catalog.size());
+        assertEquals("[I, II, B]", catalog.names().toString());
+        assertTrue(catalog.contains("II"));
+        assertFalse(catalog.contains("III"));
+        assertNull(catalog.get("III"));
+        assertTrue(catalog.get("I").rotates());
+        assertTrue(catalog.get("B").reflecting());
+        assertSame(catalog.get("I"), catalog.get("I"));
+        assertEquals(NAVALA.get("B").replace(" ", ""),
+                     catalog.get("B").permutation().toString()
+                     .replace(" ", ""));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicateRotor() {
+        read(SMALL + " II MA (AB)\n");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadKind() {
+        read(SMALL + " III XA (AB)\n");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicateSlot() {
+        Machine machine = read(SMALL).newMachine();
+        Main.setUp(machine, "B I I AA");
+    }
+
+    @Test
+    public void checkLazyParsing() {
+        Config config = read(SMALL + " BAD MA (AB) (B!)\n");
+        Machine machine = config.newMachine();
+        Main.setUp(machine, "B II I AA");
+        Machine expected = read(SMALL).newMachine();
+        Main.setUp(expected, "B II I AA");
+        assertEquals(expected.convert("HELLOWORLD"),
+                     machine.convert("HELLOWORLD"));
+        try {
+            Main.setUp(machine, "B BAD I AA");
+            fail("malformed rotor was used");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkMachinesOwnRotors() {
+        Config config = read(SMALL);
+        Machine a = config.newMachine(), b = config.newMachine();
+        Main.setUp(a, "B II I AB");
+        Main.setUp(b, "B II I AB");
+        assertNotSame(a.rotor(1), b.rotor(1));
+        assertNotSame(config.catalog().get("II"), a.rotor(1));
+        String msg = "THEQUICKBROWNFOX";
+        assertEquals(a.convert(msg), b.convert(msg));
+        Main.setUp(a, "B II I AB");
+        assertEquals(1 + msg.length(), b.rotor(2).setting());
+    }
+
+    @Test
+    public void checkLargeCatalog() {
+        StringBuilder text = new StringBuilder(SMALL);
+        Random rand = new Random(4);
+        for (int i = 0; i < 20000; i += 1) {
+            text.append(" R").append(i).append(" MA ");
+            int[] map = Benchmark.randomMap(26, rand);
+            text.append(PermutationAlgebra.toCycles(map, UPPER))
+                .append('\n');
+        }
+        Config config = read(text.toString());
+        assertEquals(20003, config.catalog().size());
+        Machine machine = config.newMachine();
+        Main.setUp(machine, "B R17 R123 CD");
+        RotorCatalog catalog = config.catalog();
+        Machine expected = new Machine(
+            UPPER, 3, 2, Arrays.asList(catalog.get("B").copy(),
+                                       catalog.get("R17").copy(),
+                                       catalog.get("R123").copy()));
+        Main.setUp(expected, "B R17 R123 CD");
+        assertEquals(expected.convert("ATTACKATDAWN"),
+                     machine.convert("ATTACKATDAWN"));
+    }
+}
@@ -0,0 +1,475 @@
+package enigma;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.function.LongSupplier;
+
+import static enigma.EnigmaException.*;
+
+/** The machines of many clients, each enciphering one long stream of
+ *  characters across many requests, as a service would keep them.  A
+ *  session is identified by a long chosen by the client.
+ *
+ *  Sessions are not kept as Machines.  Everything about a session's
+ *  machine that does not change as it enciphers (its rotors, their ring
+ *  settings, the positions of those that do not move, and its plugboard)
+ *  is a wiring, shared by all sessions that use it and referred to by a
+ *  number, and the positions of its moving rotors are a number in the
+ *  range 0 .. (alphabet size)^(number of pawls) - 1.  The two together
+ *  are one long, kept in an open-addressing hash table of primitive
+ *  arrays, so a session costs the table about 20 bytes (plus what the
+ *  table's load factor leaves free).  Each request restores a session's
+ *  state into a machine belonging to the requesting thread, converts,
+ *  and stores the new positions back, in time independent of the number
+ *  of sessions.
+ *
+ *  Sessions left idle for longer than a given time are evicted: when
+ *  touched, when the table would otherwise grow, and by evictIdle.  The
+ *  table is divided into segments, each with its own lock, so requests
+ *  for sessions in different segments proceed in parallel, while those
+ *  for one session are applied one at a time.
+ *  @author yuxinye
+ */
+final class SessionStore {
+
+    /** A store for sessions of CONFIG's machines, evicted after IDLENANOS
+     *  nanoseconds without a request. */
+    SessionStore(Config config, long idleNanos) {
+        this(config, idleNanos, System::nanoTime);
+    }
+
+    /** A store for sessions of CONFIG's machines, evicted after IDLENANOS
+     *  nanoseconds without a request, as measured by CLOCK, which returns
+     *  times in nanoseconds. */
+    SessionStore(Config config, long idleNanos, LongSupplier clock) {
+        if (idleNanos <= 0) {
+            throw error("idle time must be positive");
+        }
+        Machine machine = config.newMachine();
+        _config = config;
+        _clock = clock;
+        _epoch = clock.getAsLong();
+        _tick = Math.max(1, idleNanos / TICKS_PER_IDLE);
+        _idleTicks = (int) Math.min(Integer.MAX_VALUE / 2,
+                                    idleNanos / _tick);
+        _numRotors = machine.numRotors();
+        _size = machine.alphabet().size();
+        _firstMoving = _numRotors - machine.numPawls();
+        long states = 1;
+        for (int i = _firstMoving; i < _numRotors; i += 1) {
+            states *= _size;
+            if (states > 1L << 32) {
+                throw error("too many rotor positions for a session store");
+            }
+        }
+        _segments = new Segment[SEGMENTS];
+        for (int s = 0; s < SEGMENTS; s += 1) {
+            _segments[s] = new Segment();
+        }
+        _machines = ThreadLocal.withInitial(Restorer::new);
+    }
+
+    /** Start session ID, replacing any session with that identifier,
+     *  with its machine set up as by the setting line SETTING (with or
+     *  without its "*"). */
+    void open(long id, String setting) {
+        Restorer restorer = _machines.get();
+        Machine machine = restorer._machine;
+        restorer._wiring = null;
+        Main.setUp(machine, setting.startsWith("*") ? setting.substring(1)
+                   : setting);
+        long state = pack(intern(machine), machine);
+        int now = now();
+        Segment segment = segment(id);
+        synchronized (segment) {
+            segment.put(id, state, now);
+        }
+    }
+
+    /** Return the conversion of MSG (ignoring whitespace) in session ID,
+     *  continuing from where the last conversion in the session left
+     *  off. */
+    String convert(long id, String msg) {
+        int now = now();
+        Segment segment = segment(id);
+        synchronized (segment) {
+            int slot = segment.find(id, now);
+            if (slot < 0) {
+                throw error("no session %d", id);
+            }
+            long state = segment._states[slot];
+            Wiring wiring = _wirings[(int) (state >>> 32)];
+            Restorer restorer = _machines.get();
+            String result = restorer.restore(wiring, state).convert(msg);
+            segment._states[slot] = pack(wiring._id, restorer._machine);
+            segment._used[slot] = now;
+            return result;
+        }
+    }
+
+    /** End session ID.  Returns true iff it existed. */
+    boolean close(long id) {
+        int now = now();
+        Segment segment = segment(id);
+        synchronized (segment) {
+            int slot = segment.find(id, now);
+            if (slot < 0) {
+                return false;
+            }
+            segment.remove(slot);
+            return true;
+        }
+    }
+
+    /** Return true iff session ID exists. */
+    boolean contains(long id) {
+        int now = now();
+        Segment segment = segment(id);
+        synchronized (segment) {
+            return segment.find(id, now) >= 0;
+        }
+    }
+
+    /** Return the number of sessions, including any idle ones not yet
+     *  evicted. */
+    int size() {
+        int result = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                result += segment._count;
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of distinct wirings in use. */
+    synchronized int wirings() {
+        return _wiringIds.size();
+    }
+
+    /** Return the number of bytes occupied by my tables of sessions. */
+    long bytes() {
+        long result = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                result += (long) segment._keys.length * SLOT_BYTES;
+            }
+        }
+        return result;
+    }
+
+    /** Evict all idle sessions, returning how many there were. */
+    int evictIdle() {
+        int now = now();
+        int result = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                result += segment.evictIdle(now);
+            }
+        }
+        return result;
+    }
+
+    /** Return the current time in ticks since my creation, plus one,
+     *  modulo 2^32, with 1 in place of 0 (so that 0 never denotes a
+     *  time).  Times are compared by their differences, which wrap
+     *  around correctly for sessions used within the last 2^31 ticks. */
+    private int now() {
+        int result = (int) ((_clock.getAsLong() - _epoch) / _tick + 1);
+        return result == 0 ? 1 : result;
+    }
+
+    /** Return the segment holding session ID. */
+    private Segment segment(long id) {
+        return _segments[(int) (mix(id) >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    /** Return a well-mixed hash of ID. */
+    private static long mix(long id) {
+        long h = id * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 32);
+    }
+
+    /** Return the state of a session with wiring number WIRING whose
+     *  machine is MACHINE. */
+    private long pack(int wiring, Machine machine) {
+        long positions = 0;
+        for (int i = _firstMoving; i < _numRotors; i += 1) {
+            positions = positions * _size + machine.rotor(i).setting();
+        }
+        return ((long) wiring << 32) | positions;
+    }
+
+    /** Return the number of the wiring of MACHINE, registering it, and
+     *  counting one more session using it. */
+    private synchronized int intern(Machine machine) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor rotor = machine.rotor(i);
+            key.append(rotor.name()).append(' ').append(rotor.ringSetting())
+                .append(' ');
+            if (i < _firstMoving) {
+                key.append(rotor.setting()).append(' ');
+            }
+        }
+        key.append(machine.plugboard());
+        Integer id = _wiringIds.get(key.toString());
+        if (id == null) {
+            id = _freeWirings.isEmpty() ? _wiringIds.size()
+                : _freeWirings.pop();
+            if (id >= _wirings.length) {
+                Wiring[] wirings = new Wiring[2 * _wirings.length];
+                System.arraycopy(_wirings, 0, wirings, 0, _wirings.length);
+                _wirings = wirings;
+            }
+            _wirings[id] = new Wiring(id, key.toString(), machine);
+            _wiringIds.put(key.toString(), id);
+        }
+        _wirings[id]._sessions += 1;
+        return id;
+    }
+
+    /** Count one fewer session using the wiring in STATE, forgetting the
+     *  wiring if none remain. */
+    private synchronized void release(long state) {
+        Wiring wiring = _wirings[(int) (state >>> 32)];
+        wiring._sessions -= 1;
+        if (wiring._sessions == 0) {
+            _wiringIds.remove(wiring._key);
+            _freeWirings.push(wiring._id);
+            _wirings[wiring._id] = null;
+        }
+    }
+
+    /** The parts of a session's machine that do not change as it
+     *  enciphers. */
+    private final class Wiring {
+        /** Wiring number ID, identified by KEY, that of MACHINE. */
+        Wiring(int id, String key, Machine machine) {
+            _id = id;
+            _key = key;
+            _rotors = new String[_numRotors];
+            _rings = new int[_numRotors];
+            _positions = new int[_firstMoving];
+            for (int i = 0; i < _numRotors; i += 1) {
+                _rotors[i] = machine.rotor(i).name();
+                _rings[i] = machine.rotor(i).ringSetting();
+                if (i < _firstMoving) {
+                    _positions[i] = machine.rotor(i).setting();
+                }
+            }
+            _plugboard = machine.plugboard();
+        }
+
+        /** My number. */
+        private final int _id;
+        /** A description of me, unique among wirings. */
+        private final String _key;
+        /** The names of the rotors in each slot. */
+        private final String[] _rotors;
+        /** The ring settings of each slot. */
+        private final int[] _rings;
+        /** The positions of the rotors that do not move. */
+        private final int[] _positions;
+        /** The plugboard. */
+        private final Permutation _plugboard;
+        /** Number of sessions using me. */
+        private int _sessions;
+    }
+
+    /** A thread's machine, and what it last restored into it. */
+    private final class Restorer {
+        /** A restorer with a new machine. */
+        Restorer() {
+            _machine = _config.newMachine();
+            _engine = Engine.create(AutoEngine.NAME, _machine);
+        }
+
+        /** Set my machine to STATE, whose wiring is WIRING, and return an
+         *  engine for it. */
+        Engine restore(Wiring wiring, long state) {
+            if (wiring != _wiring) {
+                _machine.insertRotors(wiring._rotors);
+                for (int i = 0; i < _numRotors; i += 1) {
+                    _machine.rotor(i).setRing(wiring._rings[i]);
+                    if (i < _firstMoving) {
+                        _machine.rotor(i).set(wiring._positions[i]);
+                    }
+                }
+                _machine.setPlugboard(wiring._plugboard);
+                _engine.reset();
+                _wiring = wiring;
+            }
+            long positions = state & 0xffffffffL;
+            for (int i = _numRotors - 1; i >= _firstMoving; i -= 1) {
+                _machine.rotor(i).set((int) (positions % _size));
+                positions /= _size;
+            }
+            return _engine;
+        }
+
+        /** The machine. */
+        private final Machine _machine;
+        /** An engine for it. */
+        private final Engine _engine;
+        /** The wiring last restored, or null. */
+        private Wiring _wiring;
+    }
+
+    /** One segment of the table of sessions: an open-addressing hash
+     *  table with linear probing, whose slots are entries of parallel
+     *  arrays.  A slot whose time of last use is 0 is empty.  Callers
+     *  synchronize on the segment. */
+    private final class Segment {
+        /** Return the slot of session ID, or -1 if there is none, evicting
+         *  it if it has been idle at time NOW. */
+        int find(long id, int now) {
+            int mask = _keys.length - 1;
+            for (int k = (int) mix(id) & mask; _used[k] != 0;
+                 k = (k + 1) & mask) {
+                if (_keys[k] == id) {
+                    if (idle(k, now)) {
+                        remove(k);
+                        return -1;
+                    }
+                    return k;
+                }
+            }
+            return -1;
+        }
+
+        /** Set the state of session ID to STATE, last used at NOW. */
+        void put(long id, long state, int now) {
+            int slot = find(id, now);
+            if (slot >= 0) {
+                release(_states[slot]);
+                _states[slot] = state;
+                _used[slot] = now;
+                return;
+            }
+            if ((_count + 1) * LOAD_DENOMINATOR
+                > _keys.length * LOAD_NUMERATOR) {
+                evictIdle(now);
+                if ((_count + 1) * LOAD_DENOMINATOR
+                    > _keys.length * LOAD_NUMERATOR) {
+                    resize(2 * _keys.length);
+                }
+            }
+            int mask = _keys.length - 1;
+            int k = (int) mix(id) & mask;
+            while (_used[k] != 0) {
+                k = (k + 1) & mask;
+            }
+            _keys[k] = id;
+            _states[k] = state;
+            _used[k] = now;
+            _count += 1;
+        }
+
+        /** Remove the session in SLOT, moving later sessions in its
+         *  probe sequence back so that no gap separates any session from
+         *  its home slot. */
+        void remove(int slot) {
+            release(_states[slot]);
+            int mask = _keys.length - 1;
+            int hole = slot;
+            for (int k = (hole + 1) & mask; _used[k] != 0;
+                 k = (k + 1) & mask) {
+                int home = (int) mix(_keys[k]) & mask;
+                if (((k - home) & mask) >= ((k - hole) & mask)) {
+                    _keys[hole] = _keys[k];
+                    _states[hole] = _states[k];
+                    _used[hole] = _used[k];
+                    hole = k;
+                }
+            }
+            _used[hole] = 0;
+            _count -= 1;
+        }
+
+        /** Evict the sessions idle at time NOW, returning how many there
+         *  were. */
+        int evictIdle(int now) {
+            int result = 0;
+            for (int k = 0; k < _keys.length; ) {
+                if (_used[k] != 0 && idle(k, now)) {
+                    remove(k);
+                    result += 1;
+                } else {
+                    k += 1;
+                }
+            }
+            return result;
+        }
+
+        /** Return true iff the session in SLOT is idle at time NOW. */
+        private boolean idle(int slot, int now) {
+            return now - _used[slot] > _idleTicks;
+        }
+
+        /** Move my sessions into tables of CAPACITY slots. */
+        private void resize(int capacity) {
+            long[] keys = _keys, states = _states;
+            int[] used = _used;
+            _keys = new long[capacity];
+            _states = new long[capacity];
+            _used = new int[capacity];
+            int mask = capacity - 1;
+            for (int j = 0; j < keys.length; j += 1) {
+                if (used[j] != 0) {
+                    int k = (int) mix(keys[j]) & mask;
+                    while (_used[k] != 0) {
+                        k = (k + 1) & mask;
+                    }
+                    _keys[k] = keys[j];
+                    _states[k] = states[j];
+                    _used[k] = used[j];
+                }
+            }
+        }
+
+        /** Session identifiers. */
+        private long[] _keys = new long[INITIAL_SLOTS];
+        /** Session states: wiring number, then positions. */
+        private long[] _states = new long[INITIAL_SLOTS];
+        /** Times of last use, or 0 for an empty slot. */
+        private int[] _used = new int[INITIAL_SLOTS];
+        /** Number of sessions. */
+        private int _count;
+    }
+
+    /** Number of segments, and its base-2 logarithm. */
+    private static final int SEGMENT_BITS = 6, SEGMENTS = 1 << SEGMENT_BITS;
+    /** Initial number of slots in each segment. */
+    private static final int INITIAL_SLOTS = 16;
+    /** The maximum load factor of a segment, as a fraction. */
+    private static final int LOAD_NUMERATOR = 2, LOAD_DENOMINATOR = 3;
+    /** Bytes taken by each slot. */
+    private static final int SLOT_BYTES = 2 * Long.BYTES + Integer.BYTES;
+    /** The resolution of times of last use, in ticks per idle time. */
+    private static final int TICKS_PER_IDLE = 64;
+
+    /** The configuration of my sessions' machines. */
+    private final Config _config;
+    /** The source of times. */
+    private final LongSupplier _clock;
+    /** The time of my creation, and the length of a tick, in
+     *  nanoseconds. */
+    private final long _epoch, _tick;
+    /** Number of ticks after which a session is idle. */
+    private final int _idleTicks;
+    /** Number of slots, size of the alphabet, and first slot with a
+     *  pawl. */
+    private final int _numRotors, _size, _firstMoving;
+    /** The segments of the table of sessions. */
+    private final Segment[] _segments;
+    /** Each thread's machine. */
+    private final ThreadLocal<Restorer> _machines;
+    /** Wirings in use, by number.  Written under my lock; a session's
+     *  wiring is visible to any thread that has seen the session. */
+    private volatile Wiring[] _wirings = new Wiring[16];
+    /** Numbers of the wirings in use, by description. */
+    private final HashMap<String, Integer> _wiringIds = new HashMap<>();
+    /** Numbers of wirings no longer in use. */
+    private final ArrayDeque<Integer> _freeWirings = new ArrayDeque<>();
+}
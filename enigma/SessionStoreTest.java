@@ -0,0 +1,200 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionStore class.
+ *  @author yuxinye
+ */
+public class SessionStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** The setting of the example in the assignment. */
+    private static final String SETTING =
+        "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** One hour, in nanoseconds. */
+    private static final long HOUR = 3_600_000_000_000L;
+
+    /** Return a setting line like SETTING, but with the rotor positions
+     *  given by the number N. */
+    private static String setting(int n) {
+        StringBuilder posns = new StringBuilder();
+        for (int i = 0; i < 4; i += 1) {
+            posns.append(UPPER.toChar(n % 26));
+            n /= 26;
+        }
+        return SETTING.replace("AXLE", posns);
+    }
+
+    /** Return a random message of up to 40 letters from RAND. */
+    private static String message(Random rand) {
+        StringBuilder result = new StringBuilder();
+        for (int i = rand.nextInt(40); i >= 0; i -= 1) {
+            result.append(UPPER.toChar(rand.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkContinues() {
+        SessionStore store = new SessionStore(navalConfig(), HOUR);
+        String hello = navalMachine(SETTING).convert("HELLO");
+        store.open(7, "* " + SETTING);
+        assertEquals(hello, store.convert(7, "HELLO"));
+        assertEquals(navalMachine(SETTING).convert("HELLOWORLD")
+                     .substring(5), store.convert(7, "WOR LD"));
+        store.open(7, SETTING);
+        assertEquals(hello, store.convert(7, "HELLO"));
+        assertTrue(store.close(7));
+        assertFalse(store.close(7));
+        assertEquals(0, store.wirings());
+    }
+
+    @Test
+    public void checkInterleavedSessions() {
+        SessionStore store = new SessionStore(navalConfig(), HOUR);
+        String[] settings = {
+            SETTING, "B Beta I II III AAAA", "C Gamma VI V IV ZZYZ ABCD (AZ)",
+            "B Beta III IV I AXLE (HQ) (EX)"
+        };
+        Machine[] machines = new Machine[settings.length];
+        for (int s = 0; s < settings.length; s += 1) {
+            store.open(-s, settings[s]);
+            machines[s] = navalMachine(settings[s]);
+        }
+        assertEquals(4, store.wirings());
+        Random rand = new Random(5);
+        for (int i = 0; i < 500; i += 1) {
+            int s = rand.nextInt(settings.length);
+            String msg = message(rand);
+            assertEquals(machines[s].convert(msg), store.convert(-s, msg));
+        }
+    }
+
+    @Test
+    public void checkIdleEviction() {
+        AtomicLong clock = new AtomicLong(1000);
+        SessionStore store = new SessionStore(navalConfig(), 100, clock::get);
+        store.open(1, SETTING);
+        store.open(2, SETTING);
+        store.open(3, SETTING);
+        clock.addAndGet(80);
+        store.convert(1, "A");
+        assertTrue(store.contains(2));
+        clock.addAndGet(40);
+        assertTrue(store.contains(1));
+        assertFalse(store.contains(2));
+        assertEquals(2, store.size());
+        assertEquals(1, store.evictIdle());
+        assertEquals(1, store.size());
+        clock.addAndGet(200);
+        try {
+            store.convert(1, "A");
+            fail("idle session was used");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals(0, store.size());
+        assertEquals(0, store.wirings());
+    }
+
+    @Test
+    public void checkClockWrap() {
+        AtomicLong clock = new AtomicLong(1000);
+        SessionStore store = new SessionStore(navalConfig(), 100, clock::get);
+        for (long ticks : new long[] { (1L << 31) - 50, (1L << 32) - 50,
+                                       (1L << 32) - 1, 5L << 32 }) {
+            clock.set(1000 + ticks);
+            store.open(2, SETTING);
+            assertTrue(store.contains(2));
+            clock.addAndGet(60);
+            store.convert(2, "A");
+            clock.addAndGet(90);
+            assertTrue(store.contains(2));
+            store.open(3, SETTING);
+            clock.addAndGet(150);
+            assertFalse(store.contains(2));
+            assertFalse(store.contains(3));
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void checkManySessions() {
+        SessionStore store = new SessionStore(navalConfig(), HOUR);
+        int n = 200000;
+        for (int i = 0; i < n; i += 1) {
+            store.open(i * 7919L, setting(i));
+        }
+        assertEquals(n, store.size());
+        assertEquals(26, store.wirings());
+        assertTrue(store.bytes() < 64L * n);
+        for (int i = 0; i < n; i += 2) {
+            assertTrue(store.close(i * 7919L));
+        }
+        assertEquals(n / 2, store.size());
+        Random rand = new Random(9);
+        for (int t = 0; t < 2000; t += 1) {
+            int i = rand.nextInt(n);
+            assertEquals(i % 2 == 1, store.contains(i * 7919L));
+            if (i % 2 == 1) {
+                Machine machine = navalMachine(setting(i));
+                assertEquals(machine.convert("ATTACKATDAWN"),
+                             store.convert(i * 7919L, "ATTACKATDAWN"));
+                store.close(i * 7919L);
+                store.open(i * 7919L, setting(i));
+            }
+        }
+    }
+
+    @Test
+    public void checkThreads() throws InterruptedException {
+        SessionStore store = new SessionStore(navalConfig(), HOUR);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < 4; t += 1) {
+            int first = t * 100;
+            threads.add(new Thread(() -> {
+                try {
+                    Random rand = new Random(first);
+                    for (int s = first; s < first + 100; s += 1) {
+                        store.open(s, setting(s));
+                    }
+                    for (int k = 0; k < 2000; k += 1) {
+                        int s = first + rand.nextInt(100);
+                        String msg = message(rand);
+                        Machine machine = navalMachine(setting(s));
+                        String before = store.convert(s, msg);
+                        assertEquals(machine.convert(msg), before);
+                        store.open(s, setting(s));
+                    }
+                } catch (Throwable excp) {
+                    synchronized (errors) {
+                        errors.add(excp);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), errors);
+        assertEquals(26, store.wirings());
+    }
+}
@@ -0,0 +1,48 @@
+package enigma;
+
+/** An engine that enciphers through its machine's WiringArena, which
+ *  holds the wirings of the plugboard and of every slot in one narrow
+ *  table in the order of a keypress, and steps the rotors in flat
+ *  arrays, touching the machine's rotors only to read their positions
+ *  and ring settings at the start of each call to convert and to store
+ *  the positions at the end.  Offsets wrap with a comparison rather
+ *  than a division, so any alphabet size is fast.  The machine rebuilds
+ *  its arena on the first conversion after its rotors or plugboard
+ *  change, which takes time proportional to the alphabet size times the
+ *  number of rotors.
+ *  @author yuxinye
+ */
+class TableEngine implements Engine {
+
+    /** An engine that converts with MACHINE. */
+    TableEngine(Machine machine) {
+        _machine = machine;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Machine machine() {
+        return _machine;
+    }
+
+    /** Does nothing: my machine notices changes to its rotors and
+     *  plugboard itself. */
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void convert(int[] msg, int n) {
+        _machine.arena().convert(_machine, msg, n);
+    }
+
+    /** My name. */
+    static final String NAME = "table";
+
+    /** My machine. */
+    private final Machine _machine;
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -18,6 +19,55 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return a five-slot, three-pawl machine with all the naval rotors,
+     *  set up according to SETTING (a setting line without its "*"). */
+    static Machine navalMachine(String setting) {
+        Machine machine = new Machine(UPPER, 5, 3, navalRotors());
+        Main.setUp(machine, setting);
+        return machine;
+    }
+
+    /** Return the configuration of the machines made by
+     *  navalMachine. */
+    static Config navalConfig() {
+        return new Config(UPPER, 5, 3, navalRotors());
+    }
+
+    /** Return new copies of all the naval rotors. */
+    static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : NAVAL_NOTCHES.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            String notches = NAVAL_NOTCHES.get(name);
+            if (notches == null) {
+                rotors.add(new Reflector(name, perm));
+            } else if (notches.isEmpty()) {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new MovingRotor(name, perm, notches));
+            }
+        }
+        return rotors;
+    }
+
+    /** The notches of the naval rotors: empty for fixed rotors, and null
+     *  for reflectors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+        NAVAL_NOTCHES.put("Beta", "");
+        NAVAL_NOTCHES.put("Gamma", "");
+        NAVAL_NOTCHES.put("B", null);
+        NAVAL_NOTCHES.put("C", null);
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
@@ -0,0 +1,103 @@
+package enigma;
+
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/** Splits a string into whitespace-separated tokens, as a Scanner with
+ *  its default delimiter would, but without regular expressions, whose
+ *  classes take a noticeable part of the start-up time of short runs.
+ *  As with a Scanner, running out of tokens throws a
+ *  NoSuchElementException.
+ *  @author yuxinye
+ */
+class Tokenizer {
+
+    /** A tokenizer for TEXT. */
+    Tokenizer(String text) {
+        _text = text;
+        skipSpace();
+    }
+
+    /** Return true iff there is another token. */
+    boolean hasNext() {
+        return _posn < _text.length();
+    }
+
+    /** Return true iff the next token has the form of a permutation cycle:
+     *  an open parenthesis, possibly some characters, and a close
+     *  parenthesis. */
+    boolean hasNextCycle() {
+        int end = tokenEnd();
+        return end - _posn >= 2 && _text.charAt(_posn) == '('
+            && _text.charAt(end - 1) == ')';
+    }
+
+    /** Return and skip the next token. */
+    String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int end = tokenEnd();
+        String result = _text.substring(_posn, end);
+        _posn = end;
+        skipSpace();
+        return result;
+    }
+
+    /** Return and skip the next token, which must be a decimal
+     *  integer. */
+    int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int end = tokenEnd();
+        try {
+            int result = Integer.parseInt(_text, _posn, end, 10);
+            _posn = end;
+            skipSpace();
+            return result;
+        } catch (NumberFormatException excp) {
+            throw new InputMismatchException(_text.substring(_posn, end));
+        }
+    }
+
+    /** Return the index in my text of the start of the next token, or
+     *  its length if there is none. */
+    int position() {
+        return _posn;
+    }
+
+    /** Return the characters of my text from index START up to END. */
+    String text(int start, int end) {
+        return _text.substring(start, end);
+    }
+
+    /** Return the index just past the next token. */
+    private int tokenEnd() {
+        int end = _posn;
+        while (end < _text.length()) {
+            int cp = _text.codePointAt(end);
+            if (Character.isWhitespace(cp)) {
+                break;
+            }
+            end += Character.charCount(cp);
+        }
+        return end;
+    }
+
+    /** Advance past any whitespace. */
+    private void skipSpace() {
+        while (_posn < _text.length()) {
+            int cp = _text.codePointAt(_posn);
+            if (!Character.isWhitespace(cp)) {
+                break;
+            }
+            _posn += Character.charCount(cp);
+        }
+    }
+
+    /** The text being split. */
+    private final String _text;
+    /** Index of the start of the next token, or the length of _text. */
+    private int _posn;
+}
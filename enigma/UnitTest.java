@@ -13,7 +13,25 @@ public class UnitTest {
 
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      AlphabetTest.class,
+                                      ByteStreamCipherTest.class,
+                                      RingBufferTest.class,
+                                      PermutationAlgebraTest.class,
+                                      EngineTest.class,
+                                      BatchTest.class,
+                                      PlugboardClimberTest.class,
+                                      KeystreamTest.class,
+                                      CipherProcessorTest.class,
+                                      KeySearchTest.class,
+                                      ConfigRegistryTest.class,
+                                      RotorCatalogTest.class,
+                                      CribScannerTest.class,
+                                      SessionStoreTest.class,
+                                      ValidatorTest.class,
+                                      CompressionTest.class,
+                                      WiringArenaTest.class,
+                                      ParallelProcessorTest.class));
     }
 
 }
@@ -0,0 +1,279 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/** Checks the lines of an input for the errors that Main would stop at
+ *  when processing it, without enciphering anything, and reports all of
+ *  them rather than just the first.  A setting line is checked for
+ *  unknown, malformed, and repeated rotors, rotor and ring settings of
+ *  the wrong length or with characters outside the alphabet, and
+ *  malformed plugboard cycles; a message line for characters outside
+ *  the alphabet.  Each error becomes a Problem giving its line and
+ *  column, and since nothing is thrown, no stack traces are captured.
+ *  A validator keeps its working state from line to line, so that
+ *  checking a line allocates next to nothing.
+ *  @author yuxinye
+ */
+class Validator {
+
+    /** An error found in the input. */
+    static final class Problem {
+
+        /** An error described by MESSAGE at column COLUMN of line LINE,
+         *  both numbered from 1. */
+        Problem(long line, int column, String message) {
+            _line = line;
+            _column = column;
+            _message = message;
+        }
+
+        /** Return the number of my line, from 1. */
+        long line() {
+            return _line;
+        }
+
+        /** Return the number of my column, counting characters from
+         *  1. */
+        int column() {
+            return _column;
+        }
+
+        /** Return my error message, as Main would report it. */
+        String message() {
+            return _message;
+        }
+
+        @Override
+        public String toString() {
+            return _line + ":" + _column + ": " + _message;
+        }
+
+        /** My line. */
+        private final long _line;
+        /** My column. */
+        private final int _column;
+        /** My message. */
+        private final String _message;
+    }
+
+    /** A validator of input for the machines of CONFIG, passing each
+     *  problem it finds to PROBLEMS. */
+    Validator(Config config, Consumer<Problem> problems) {
+        _alphabet = config.alphabet();
+        _catalog = config.catalog();
+        _numRotors = config.numRotors();
+        _problems = problems;
+        _names = new String[_numRotors];
+        _marks = new int[_alphabet.size()];
+    }
+
+    /** Check every line of IN, then its end, and return the number of
+     *  problems found. */
+    long check(LineReader in) {
+        while (in.hasNextLine()) {
+            check(in.nextLine());
+        }
+        finish();
+        return _count;
+    }
+
+    /** Check LINE, the next line of input. */
+    void check(String line) {
+        _line += 1;
+        if (!_started) {
+            Tokenizer tokens = new Tokenizer(line);
+            if (tokens.hasNext()) {
+                _started = true;
+                int start = tokens.position();
+                if (!"*".equals(tokens.next())) {
+                    report(line, start, MISSING_STAR);
+                }
+            }
+        }
+        if (line.isEmpty()) {
+            return;
+        } else if (line.charAt(0) == '*') {
+            checkSetting(line);
+        } else {
+            checkMessage(line);
+        }
+    }
+
+    /** Note the end of the input. */
+    void finish() {
+        if (!_started) {
+            _started = true;
+            _problems.accept(new Problem(Math.max(_line, 1), 1,
+                                         MISSING_STAR));
+            _count += 1;
+        }
+    }
+
+    /** Return the number of problems found so far. */
+    long problems() {
+        return _count;
+    }
+
+    /** Check the setting line LINE, as Main.setUp would apply it. */
+    private void checkSetting(String line) {
+        Tokenizer tokens = new Tokenizer(line.substring(1));
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (!tokens.hasNext()) {
+                report(line, line.length(), "Missing rotor name");
+                return;
+            }
+            int start = 1 + tokens.position();
+            String name = tokens.next();
+            _names[i] = name;
+            String problem = rotorProblem(name);
+            if (problem != null) {
+                report(line, start, problem);
+            }
+            for (int j = 0; j < i; j += 1) {
+                if (name.equals(_names[j])) {
+                    report(line, start, "Rotor already in the slot");
+                    break;
+                }
+            }
+        }
+        if (!tokens.hasNext()) {
+            report(line, line.length(), "Missing rotor setting");
+            return;
+        }
+        checkSetting(line, 1 + tokens.position(), tokens.next(),
+                     "Rotor setting has wrong length",
+                     "No matching character in Alphabet");
+        if (tokens.hasNext() && !tokens.hasNextCycle()) {
+            checkSetting(line, 1 + tokens.position(), tokens.next(),
+                         "Ring setting has wrong length",
+                         "Ringsetting's character not in Alphabet");
+        }
+        _generation += 1;
+        while (tokens.hasNextCycle()) {
+            int start = 1 + tokens.position();
+            if (!checkCycle(line, start, tokens.next())) {
+                break;
+            }
+        }
+    }
+
+    /** Check SETTING, a rotor or ring setting that starts at index START
+     *  of LINE, reporting a setting of the wrong length with LENGTHERROR
+     *  and a character not in my alphabet with CHARERROR. */
+    private void checkSetting(String line, int start, String setting,
+                              String lengthError, String charError) {
+        if (setting.codePointCount(0, setting.length()) != _numRotors - 1) {
+            report(line, start, lengthError);
+        }
+        for (int i = 0; i < setting.length(); ) {
+            int cp = setting.codePointAt(i);
+            if (!_alphabet.containsCodePoint(cp)) {
+                report(line, start + i, charError);
+            }
+            i += Character.charCount(cp);
+        }
+    }
+
+    /** Check CYCLE, a plugboard cycle that starts at index START of LINE,
+     *  as the Permutation constructor would, counting characters marked
+     *  with the current generation as already used.  Return false iff the
+     *  rest of the plugboard can no longer be checked. */
+    private boolean checkCycle(String line, int start, String cycle) {
+        int len = -1;
+        for (int i = 0; i < cycle.length(); ) {
+            int cp = cycle.codePointAt(i);
+            int at = start + i;
+            i += Character.charCount(cp);
+            if (cp == '(' && len < 0) {
+                len = 0;
+            } else if (cp == ')' && len >= 0) {
+                len = -1;
+            } else if (len >= 0 && len < _marks.length) {
+                if (!_alphabet.containsCodePoint(cp)) {
+                    report(line, at, "Character is not in the alphabet");
+                } else {
+                    int k = _alphabet.toIndex(cp);
+                    if (_marks[k] == _generation) {
+                        report(line, at, "Character repeated in cycles");
+                    }
+                    _marks[k] = _generation;
+                }
+                len += 1;
+            } else {
+                report(line, at, "Malformed permutation cycles");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Check the message line LINE, reporting its first character that
+     *  is neither whitespace nor in my alphabet. */
+    private void checkMessage(String line) {
+        for (int i = 0; i < line.length(); ) {
+            int cp = line.codePointAt(i);
+            if (!Engine.isSpace(cp) && !_alphabet.containsCodePoint(cp)) {
+                report(line, i, "Character is not in the alphabet");
+                return;
+            }
+            i += Character.charCount(cp);
+        }
+    }
+
+    /** Return the error in using the rotor named NAME, or null if there
+     *  is none. */
+    private String rotorProblem(String name) {
+        if (!_catalog.contains(name)) {
+            return "Can't find the rotor";
+        }
+        if (!_rotorProblems.containsKey(name)) {
+            String problem = null;
+            try {
+                _catalog.get(name);
+            } catch (EnigmaException excp) {
+                problem = excp.getMessage();
+            }
+            _rotorProblems.put(name, problem);
+        }
+        return _rotorProblems.get(name);
+    }
+
+    /** Report the problem MESSAGE at index INDEX of LINE, the current
+     *  line. */
+    private void report(String line, int index, String message) {
+        _problems.accept(new Problem(_line,
+                                     line.codePointCount(0, index) + 1,
+                                     message));
+        _count += 1;
+    }
+
+    /** The error for input that does not start with a setting line. */
+    static final String MISSING_STAR =
+        "Missing *. Invalid start of the input.";
+
+    /** The alphabet of my machines. */
+    private final Alphabet _alphabet;
+    /** The rotors that setting lines may name. */
+    private final RotorCatalog _catalog;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Where problems go. */
+    private final Consumer<Problem> _problems;
+    /** The rotor names of the current setting line. */
+    private final String[] _names;
+    /** _marks[K] is _generation iff character K is already in the
+     *  plugboard of the current setting line. */
+    private final int[] _marks;
+    /** Number of the current plugboard. */
+    private int _generation;
+    /** The outcome of building each catalog rotor named so far: its
+     *  error message, or null if it was built. */
+    private final HashMap<String, String> _rotorProblems = new HashMap<>();
+    /** Number of the current line. */
+    private long _line;
+    /** True iff a token has been seen. */
+    private boolean _started;
+    /** Number of problems found. */
+    private long _count;
+}
@@ -0,0 +1,150 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The suite of all JUnit tests for the Validator class.
+ *  @author yuxinye
+ */
+public class ValidatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A small configuration, one of whose rotors is malformed. */
+    private static final String CONFIG =
+        "ABCD 3 1\n R R (AB) (CD)\n F N (ABCD)\n M MA (AC) (BD)\n"
+        + " G N (AB) (A!)\n";
+
+    /** Return the problems found in TEXT, as input for machines of
+     *  CONFIG. */
+    private static List<String> check(String text) {
+        Config config = Config.read(new Tokenizer(CONFIG));
+        List<String> result = new ArrayList<>();
+        Validator validator =
+            new Validator(config, p -> result.add(p.toString()));
+        LineReader in = new LineReader(
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)),
+            "UTF-8");
+        assertEquals(validator.check(in), result.size());
+        return result;
+    }
+
+    @Test
+    public void checkValidInput() {
+        assertEquals("[]", check("* R F M AA\nABCD ABCD DDD\n\n"
+                                 + "* R F M BC CD (AB)\nAAAAA\n\t\n"
+                                 + "*R M F DD (A) (BCD)\n").toString());
+    }
+
+    @Test
+    public void checkSettingLines() {
+        assertEquals("[1:5: Can't find the rotor, "
+                     + "2:7: Rotor already in the slot, "
+                     + "3:5: Character repeated in cycles, "
+                     + "4:9: Rotor setting has wrong length, "
+                     + "4:11: No matching character in Alphabet, "
+                     + "5:13: Ringsetting's character not in Alphabet, "
+                     + "6:18: Character repeated in cycles, "
+                     + "7:14: Character is not in the alphabet, "
+                     + "8:15: Malformed permutation cycles, "
+                     + "9:6: Missing rotor name, "
+                     + "10:8: Missing rotor setting]",
+                     check("* R X M AA\n* R M M AA\n* R G M AA\n"
+                           + "* R F M ABX\n* R F M AA AZ\n"
+                           + "* R F M AA (AB) (BC)\n* R F M AA (AX)\n"
+                           + "* R F M AA (A)B)\n* R F\n* R F M\n")
+                     .toString());
+    }
+
+    @Test
+    public void checkMessageLines() {
+        assertEquals("[2:6: Character is not in the alphabet, "
+                     + "4:1: Character is not in the alphabet]",
+                     check("* R F M AA\nABCD axc\nABCD\n\u00e9\u00e9\n")
+                     .toString());
+        assertEquals("[3:1: Character is not in the alphabet]",
+                     check("* R F M AA\n\n\ud83d\ude00 \u00e9\n")
+                     .toString());
+        assertEquals("[1:9: No matching character in Alphabet, "
+                     + "1:10: No matching character in Alphabet]",
+                     check("* R F M \ud83d\ude00\u00e9\n").toString());
+    }
+
+    @Test
+    public void checkStart() {
+        assertEquals("[3:1: " + Validator.MISSING_STAR + "]",
+                     check("\n \nABCD\n* R F M AA\n").toString());
+        assertEquals("[1:1: " + Validator.MISSING_STAR + "]",
+                     check("").toString());
+        assertEquals("[2:1: " + Validator.MISSING_STAR + "]",
+                     check("\n\t\n").toString());
+        assertEquals("[1:1: " + Validator.MISSING_STAR + "]",
+                     check("*R F M AA\nABCD\n").toString());
+    }
+
+    @Test
+    public void checkMatchesMain() {
+        Config config = Config.read(new Tokenizer(CONFIG));
+        String[] settings = {
+            "R X M AA", "R M M AA", "R G M AA", "R F M ABX", "R F M AX",
+            "R F M AA AZ", "R F M AA ABC", "R F M AA (AB) (BC)",
+            "R F M AA (AX)", "R F M AA (A)B)", "R F M AA (A(B)",
+        };
+        for (String setting : settings) {
+            List<String> problems = check("* " + setting + "\n");
+            try {
+                Main.setUp(config.newMachine(), setting);
+                fail("no error for " + setting);
+            } catch (EnigmaException excp) {
+                assertTrue(setting, problems.get(0)
+                           .endsWith(": " + excp.getMessage()));
+            }
+        }
+    }
+
+    @Test
+    public void checkMainOption() throws IOException {
+        Path dir = Files.createTempDirectory("validate");
+        Path conf = dir.resolve("a.conf"), in = dir.resolve("a.in"),
+            out = dir.resolve("a.out");
+        Files.write(conf, CONFIG.getBytes(StandardCharsets.UTF_8));
+        Files.write(in, "* R F M AA\nABCD\n* R X M AA\nABxD\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        String[] args = { "--validate", conf.toString(), in.toString(),
+                          out.toString() };
+        Main main = new Main(args);
+        try {
+            main.process();
+            fail("errors not reported");
+        } catch (EnigmaException excp) {
+            assertEquals("2 errors in the input", excp.getMessage());
+        } finally {
+            main.close();
+        }
+        assertEquals("3:5: Can't find the rotor\n"
+                     + "4:3: Character is not in the alphabet\n",
+                     new String(Files.readAllBytes(out),
+                                StandardCharsets.UTF_8));
+        Files.write(in, "* R F M AA\nABCD\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        main = new Main(args);
+        try {
+            main.process();
+        } finally {
+            main.close();
+        }
+        assertEquals(0, Files.size(out));
+    }
+}
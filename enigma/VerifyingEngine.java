@@ -0,0 +1,94 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static enigma.EnigmaException.*;
+
+/** An engine that converts with a candidate engine, but first runs a
+ *  random sample of messages through the reference engine as well, from
+ *  the same rotor positions, and reports an error if the two differ in
+ *  any character or in the final rotor positions.
+ *  @author yuxinye
+ */
+class VerifyingEngine implements Engine {
+
+    /** An engine that converts with CANDIDATE, checking a FRACTION
+     *  (0 < FRACTION <= 1) of messages, chosen pseudo-randomly from
+     *  SEED, against the reference engine. */
+    VerifyingEngine(Engine candidate, double fraction, long seed) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw error("verified fraction must be in (0, 1]");
+        }
+        _candidate = candidate;
+        _reference = new ReferenceEngine(candidate.machine());
+        _fraction = fraction;
+        _random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public String name() {
+        return _candidate.name();
+    }
+
+    @Override
+    public Machine machine() {
+        return _candidate.machine();
+    }
+
+    @Override
+    public void reset() {
+        _candidate.reset();
+        _reference.reset();
+    }
+
+    @Override
+    public void convert(int[] msg, int n) {
+        if (_fraction < 1 && _random.nextDouble() >= _fraction) {
+            _candidate.convert(msg, n);
+            return;
+        }
+        int[] before = positions();
+        int[] expected = Arrays.copyOf(msg, n);
+        _reference.convert(expected, n);
+        int[] after = positions();
+        setPositions(before);
+        _candidate.convert(msg, n);
+        int k = Arrays.mismatch(msg, 0, n, expected, 0, n);
+        if (k >= 0) {
+            throw error("engine %s diverged from the reference at "
+                        + "character %d of a message", name(), k);
+        }
+        if (!Arrays.equals(after, positions())) {
+            throw error("engine %s left the rotors at %s rather than %s",
+                        name(), Arrays.toString(positions()),
+                        Arrays.toString(after));
+        }
+    }
+
+    /** Return the positions of my machine's rotors. */
+    private int[] positions() {
+        Machine machine = machine();
+        int[] result = new int[machine.numRotors()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = machine.rotor(i).setting();
+        }
+        return result;
+    }
+
+    /** Set my machine's rotors to POSNS. */
+    private void setPositions(int[] posns) {
+        for (int i = 0; i < posns.length; i += 1) {
+            machine().rotor(i).set(posns[i]);
+        }
+    }
+
+    /** The engine being checked. */
+    private final Engine _candidate;
+    /** The engine it is checked against. */
+    private final Engine _reference;
+    /** Fraction of messages checked. */
+    private final double _fraction;
+    /** Source of the sample. */
+    private final SplittableRandom _random;
+}
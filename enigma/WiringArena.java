@@ -0,0 +1,133 @@
+package enigma;
+
+/** The wirings of a machine's plugboard and of the rotors in its slots,
+ *  copied into one table in the order in which a keypress passes
+ *  through them: the plugboard, the rotors from the rightmost slot to
+ *  the reflector, their inverses back from slot 1 to the rightmost, and
+ *  the plugboard's inverse.  Following the rotors themselves goes from
+ *  each Rotor to its Permutation to that permutation's table for every
+ *  pass; here all the passes of a keypress read one contiguous run of
+ *  memory, as narrow as the alphabet allows (an IndexTable), so that
+ *  the wirings of a whole machine take the fewest cache lines.
+ *
+ *  An arena reflects the rotors and plugboard in place when it was
+ *  made, not their positions or ring settings, which convert reads from
+ *  the machine.  Machine keeps one for its current rotors and plugboard
+ *  (see Machine.arena), which its bulk conversions and TableEngine use.
+ *  An arena has working storage of its own, so only one thread may use
+ *  it at a time, as with its machine.
+ *  @author yuxinye
+ */
+final class WiringArena {
+
+    /** An arena holding the wirings of the rotors and plugboard now in
+     *  MACHINE. */
+    WiringArena(Machine machine) {
+        int size = machine.alphabet().size();
+        int numRotors = machine.numRotors();
+        int last = numRotors - 1;
+        _size = size;
+        _numRotors = numRotors;
+        _table = IndexTable.create((2 * numRotors + 1) * size, size);
+        _notches = new boolean[numRotors * size];
+        _rotates = new boolean[numRotors];
+        _posn = new int[numRotors];
+        _shift = new int[numRotors];
+        Permutation plugboard = machine.plugboard();
+        for (int x = 0; x < size; x += 1) {
+            _table.set(x, plugboard.permute(x));
+            _table.set(2 * numRotors * size + x, plugboard.invert(x));
+        }
+        for (int i = 0; i < numRotors; i += 1) {
+            Rotor rotor = machine.rotor(i);
+            Permutation perm = rotor.permutation();
+            _rotates[i] = rotor.rotates();
+            int forward = (1 + last - i) * size,
+                backward = (numRotors + i) * size;
+            for (int x = 0; x < size; x += 1) {
+                _table.set(forward + x, perm.permute(x));
+                if (i > 0) {
+                    _table.set(backward + x, perm.invert(x));
+                }
+                _notches[i * size + x] = rotor.notchAt(x);
+            }
+        }
+    }
+
+    /** Convert the first N entries of MSG (indices in the alphabet) in
+     *  place, as N calls of MACHINE.convert(int) would, starting from
+     *  the positions and ring settings of MACHINE's rotors and storing
+     *  their positions back at the end.  MACHINE must still have the
+     *  rotors and plugboard I was made from. */
+    void convert(Machine machine, int[] msg, int n) {
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor rotor = machine.rotor(i);
+            _posn[i] = rotor.setting();
+            int d = _posn[i] - rotor.ringSetting();
+            _shift[i] = d < 0 ? d + _size : d;
+        }
+        IndexTable table = _table;
+        int last = _numRotors - 1, inverse = 2 * _numRotors * _size;
+        for (int k = 0; k < n; k += 1) {
+            advance();
+            int c = table.get(msg[k]), base = _size;
+            for (int i = last; i >= 0; i -= 1, base += _size) {
+                c = pass(table, base, i, c);
+            }
+            for (int i = 1; i <= last; i += 1, base += _size) {
+                c = pass(table, base, i, c);
+            }
+            msg[k] = table.get(inverse + c);
+        }
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (_rotates[i]) {
+                machine.rotor(i).set(_posn[i]);
+            }
+        }
+    }
+
+    /** Advance my rotors as for one keypress. */
+    private void advance() {
+        int last = _numRotors - 1;
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (_rotates[i]) {
+                if (i == last) {
+                    advance(i);
+                } else if (_notches[(i + 1) * _size + _posn[i + 1]]) {
+                    advance(i);
+                    advance(i + 1);
+                    i += 1;
+                }
+            }
+        }
+    }
+
+    /** Advance the rotor in slot I one position. */
+    private void advance(int i) {
+        _posn[i] = _posn[i] + 1 == _size ? 0 : _posn[i] + 1;
+        _shift[i] = _shift[i] + 1 == _size ? 0 : _shift[i] + 1;
+    }
+
+    /** Return the result of passing C through the wiring at BASE in
+     *  TABLE (my _table) at the current offset of slot I. */
+    private int pass(IndexTable table, int base, int i, int c) {
+        int d = _shift[i];
+        int x = c + d;
+        int y = table.get(base + (x >= _size ? x - _size : x)) - d;
+        return y < 0 ? y + _size : y;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of slots. */
+    private final int _numRotors;
+    /** The wirings, _size entries apiece, in the order of a keypress. */
+    private final IndexTable _table;
+    /** Whether each slot has a notch at each position. */
+    private final boolean[] _notches;
+    /** Whether each slot's rotor rotates. */
+    private final boolean[] _rotates;
+    /** Position and offset (position less ring setting) of each slot
+     *  during convert. */
+    private final int[] _posn, _shift;
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the WiringArena class and its use
+ *  by Machine.
+ *  @author yuxinye
+ */
+public class WiringArenaTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return the conversion of MSG by MACHINE, one character at a time
+     *  through Machine.convert(int). */
+    private static String convertSlowly(Machine machine, String msg) {
+        Alphabet alpha = machine.alphabet();
+        StringBuilder result = new StringBuilder();
+        msg.codePoints().forEach(cp -> result.appendCodePoint(
+            alpha.toCodePoint(machine.convert(alpha.toIndex(cp)))));
+        return result.toString();
+    }
+
+    /** Return the rotor positions of MACHINE. */
+    private static String positions(Machine machine) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < machine.numRotors(); i += 1) {
+            result.append(machine.rotor(i).setting()).append(' ');
+        }
+        return result.toString();
+    }
+
+    /** Check that two copies of a machine made by SETUP convert MSG in
+     *  the same way one character at a time and all at once, and leave
+     *  their rotors in the same positions. */
+    private static void checkSame(Supplier<Machine> setup,
+                                  String msg) {
+        Machine slow = setup.get(), fast = setup.get();
+        assertEquals(convertSlowly(slow, msg), fast.convert(msg));
+        assertEquals(positions(slow), positions(fast));
+        assertEquals(convertSlowly(slow, msg), fast.convert(msg));
+    }
+
+    @Test
+    public void checkNaval() {
+        String msg = Benchmark.randomMessage(UPPER, 20000, 5);
+        checkSame(() -> navalMachine("B Beta III IV I AXLE"), msg);
+        checkSame(() -> navalMachine("B Gamma VIII VI V QEVZ AZQL "
+                                     + "(HQ) (EX) (IP) (TR) (BY)"), msg);
+        checkSame(() -> navalMachine("C Beta II VII VI ZDRE BCZA "
+                                     + "(AF) (GK) (SU) (MZ) (NY)"), msg);
+    }
+
+    @Test
+    public void checkAlphabetSizes() {
+        for (int n : new int[] { 3, 5, 300, 70000 }) {
+            Alphabet alpha = Benchmark.alphabet(n);
+            String msg = Benchmark.randomMessage(alpha, 5000, n);
+            checkSame(() -> {
+                Random rand = new Random(n);
+                Machine machine = Benchmark.randomMachine(alpha, 5, 3, n);
+                for (int i = 1; i < 5; i += 1) {
+                    machine.rotor(i).setRing(rand.nextInt(n));
+                }
+                machine.setPlugboard(new Permutation(
+                    Benchmark.randomInvolution(n, rand), alpha));
+                return machine;
+            }, msg);
+        }
+    }
+
+    @Test
+    public void checkResettings() {
+        Machine machine = navalMachine("B Beta III IV I AXLE");
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        machine.convert(msg);
+        Main.setUp(machine, "C Gamma V II VI MNOP (AZ)");
+        assertEquals(navalMachine("C Gamma V II VI MNOP (AZ)")
+                     .convert(msg), machine.convert(msg));
+        machine.setPlugboard(new Permutation("(QU)", UPPER));
+        Machine expected = navalMachine("C Gamma V II VI MNOP (QU)");
+        for (int i = 1; i < 5; i += 1) {
+            expected.rotor(i).set(machine.rotor(i).setting());
+        }
+        assertEquals(convertSlowly(expected, msg), machine.convert(msg));
+    }
+
+    @Test
+    public void checkBytes() {
+        Alphabet alpha = Benchmark.alphabet(Machine.BYTE_ALPHABET_SIZE);
+        Machine slow = Benchmark.randomMachine(alpha, 5, 3, 9),
+            fast = Benchmark.randomMachine(alpha, 5, 3, 9);
+        byte[] data = new byte[10000];
+        new Random(9).nextBytes(data);
+        ByteBuffer out = ByteBuffer.allocate(data.length);
+        fast.convert(ByteBuffer.wrap(data), out);
+        for (int i = 0; i < data.length; i += 1) {
+            assertEquals(slow.convert(data[i] & 0xff), out.get(i) & 0xff);
+        }
+        assertEquals(positions(slow), positions(fast));
+    }
+}